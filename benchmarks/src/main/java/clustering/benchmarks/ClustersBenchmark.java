@@ -0,0 +1,55 @@
+package clustering.benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures turning the edges of a cut MST into clusters, both as compact labels and as the
+ * HashSets that Algorithms.clustersFromEdges returns. A random spanning tree stands in for the MST
+ * so that large inputs do not need one found first.
+ * @author Kurt Marcinkiewicz
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ClustersBenchmark {
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int nodes;
+
+  @Param({"7"})
+  public int clusters;
+
+  private ArrayList<?> edges;
+
+  @Setup
+  public void setUp() throws Throwable {
+    ArrayList<?> tree = (ArrayList<?>) Core.RANDOM_SPANNING_TREE.invokeExact(nodes, 1L);
+    edges = new ArrayList<>(tree.subList(0, Math.max(nodes - clusters, 0)));
+  }
+
+  @Benchmark
+  public Object labelsFromEdges() throws Throwable {
+    return (Object) Core.LABELS_FROM_EDGES.invokeExact(nodes, (ArrayList) edges);
+  }
+
+  @Benchmark
+  public ArrayList<?> clustersFromEdges() throws Throwable {
+    Object labels = (Object) Core.LABELS_FROM_EDGES.invokeExact(nodes, (ArrayList) edges);
+    return (ArrayList<?>) Core.TO_HASH_SETS.invokeExact(labels);
+  }
+}
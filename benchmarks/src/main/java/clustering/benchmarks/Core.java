@@ -0,0 +1,128 @@
+package clustering.benchmarks;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+
+/**
+ * Method handles onto the clustering code. The clustering classes live in the unnamed package,
+ * which Java code in a named package cannot import, and JMH does not allow benchmarks in the
+ * unnamed package, so the benchmarks reach the code through these handles instead. Every handle is
+ * a static final constant with every parameter and return type erased to Object (or a JDK type),
+ * so it is called with invokeExact and inlined by the JIT like a direct call.
+ * @author Kurt Marcinkiewicz
+ */
+final class Core {
+  /** (int rows, int dimensions, int clusters, double spread, long seed) -> FeatureMatrix */
+  static final MethodHandle GENERATE;
+  /** (int nodes, long seed) -> ArrayList of ImageSegmentEdge */
+  static final MethodHandle RANDOM_SPANNING_TREE;
+  /** (FeatureMatrix, File) -> void */
+  static final MethodHandle WRITE_ARFF;
+  /** (File) -> FeatureMatrix, through ArffByteParser */
+  static final MethodHandle PARSE;
+  /** (FeatureMatrix) -> EdgeList */
+  static final MethodHandle COMPLETE_GRAPH;
+  /** (EdgeList) -> void */
+  static final MethodHandle SORT;
+  /** (int size) -> UnionFind */
+  static final MethodHandle NEW_UNION_FIND;
+  /** (UnionFind, int, int) -> boolean */
+  static final MethodHandle UNION;
+  /** (UnionFind, int) -> int */
+  static final MethodHandle FIND;
+  /** (int nodes, ArrayList of ImageSegmentEdge) -> ClusterLabels */
+  static final MethodHandle LABELS_FROM_EDGES;
+  /** (ClusterLabels) -> ArrayList of HashSet of Integer */
+  static final MethodHandle TO_HASH_SETS;
+  /** (ArrayList of ImageSegmentEdge, int nodes) -> Dendrogram */
+  static final MethodHandle NEW_DENDROGRAM;
+  /** (Dendrogram, int k) -> ClusterLabels */
+  static final MethodHandle DENDROGRAM_LABELS;
+  /** (ClusterLabels, FeatureMatrix) -> double */
+  static final MethodHandle PURITY;
+
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      Class<?> matrix = Class.forName("FeatureMatrix");
+      Class<?> edgeList = Class.forName("EdgeList");
+      Class<?> unionFind = Class.forName("UnionFind");
+      Class<?> labels = Class.forName("ClusterLabels");
+      Class<?> dendrogram = Class.forName("Dendrogram");
+      Class<?> parser = Class.forName("ArffByteParser");
+      Class<?> dataset = Class.forName("SyntheticDataset");
+      Class<?> algorithms = Class.forName("Algorithms");
+
+      GENERATE = erase(lookup.findStatic(dataset, "generate", MethodType.methodType(
+          matrix, int.class, int.class, int.class, double.class, long.class)));
+      RANDOM_SPANNING_TREE = erase(lookup.findStatic(dataset, "randomSpanningTree",
+                                                     MethodType.methodType(ArrayList.class,
+                                                                           int.class, long.class)));
+      WRITE_ARFF = erase(lookup.findStatic(dataset, "writeArff",
+                                           MethodType.methodType(void.class, matrix, File.class)));
+      PARSE = erase(MethodHandles.filterReturnValue(
+          lookup.findConstructor(parser, MethodType.methodType(void.class, File.class)),
+          lookup.findVirtual(parser, "parse", MethodType.methodType(matrix))));
+      COMPLETE_GRAPH = erase(lookup.findStatic(edgeList, "completeGraph",
+                                               MethodType.methodType(edgeList, matrix)));
+      SORT = erase(lookup.findVirtual(edgeList, "sort", MethodType.methodType(void.class)));
+      NEW_UNION_FIND = erase(lookup.findConstructor(unionFind, MethodType.methodType(void.class,
+                                                                                     int.class)));
+      UNION = erase(lookup.findVirtual(unionFind, "union",
+                                       MethodType.methodType(boolean.class, int.class, int.class)));
+      FIND = erase(lookup.findVirtual(unionFind, "find", MethodType.methodType(int.class,
+                                                                              int.class)));
+      LABELS_FROM_EDGES = erase(lookup.findStatic(algorithms, "labelsFromEdges",
+                                                  MethodType.methodType(labels, int.class,
+                                                                        ArrayList.class)));
+      TO_HASH_SETS = erase(lookup.findVirtual(labels, "toHashSets",
+                                              MethodType.methodType(ArrayList.class)));
+      NEW_DENDROGRAM = erase(lookup.findConstructor(dendrogram, MethodType.methodType(
+          void.class, ArrayList.class, int.class)));
+      DENDROGRAM_LABELS = erase(lookup.findVirtual(dendrogram, "labels",
+                                                   MethodType.methodType(labels, int.class)));
+      PURITY = erase(lookup.findStatic(algorithms, "purityFromClusters",
+                                       MethodType.methodType(double.class, labels, matrix)));
+    }
+    catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private Core() { }
+
+  /**
+   * Replaces every clustering class in the type of a handle with Object.
+   */
+  private static MethodHandle erase(MethodHandle handle) {
+    MethodType type = handle.type();
+    for (int i = 0; i < type.parameterCount(); i++) {
+      if (isClusteringClass(type.parameterType(i))) {
+        type = type.changeParameterType(i, Object.class);
+      }
+    }
+    if (isClusteringClass(type.returnType())) {
+      type = type.changeReturnType(Object.class);
+    }
+    return handle.asType(type);
+  }
+
+  private static boolean isClusteringClass(Class<?> type) {
+    return !type.isPrimitive() && type.getPackageName().isEmpty();
+  }
+
+  /**
+   * Generates a dataset with the spread used by every benchmark.
+   */
+  static Object generate(int rows, int dimensions, int clusters, long seed) {
+    try {
+      return (Object) GENERATE.invokeExact(rows, dimensions, clusters, 0.5, seed);
+    }
+    catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
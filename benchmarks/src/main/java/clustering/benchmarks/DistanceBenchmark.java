@@ -0,0 +1,46 @@
+package clustering.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures computing the distances of the complete graph into an EdgeList. The graph has n(n-1)/2
+ * edges of 16 bytes each, which bounds the sizes that can be measured.
+ * @author Kurt Marcinkiewicz
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DistanceBenchmark {
+  @Param({"1000", "2000", "5000"})
+  public int rows;
+
+  @Param({"19"})
+  public int dimensions;
+
+  private Object matrix;
+
+  @Setup
+  public void setUp() {
+    matrix = Core.generate(rows, dimensions, 7, 1);
+  }
+
+  @Benchmark
+  public Object completeGraph() throws Throwable {
+    return (Object) Core.COMPLETE_GRAPH.invokeExact(matrix);
+  }
+}
@@ -0,0 +1,55 @@
+package clustering.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing an .arff file of synthetic data with ArffByteParser.
+ * @author Kurt Marcinkiewicz
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParseBenchmark {
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int rows;
+
+  @Param({"19"})
+  public int dimensions;
+
+  private File file;
+
+  @Setup
+  public void setUp() throws Throwable {
+    file = Files.createTempFile("parse-benchmark", ".arff").toFile();
+    Core.WRITE_ARFF.invokeExact(Core.generate(rows, dimensions, 7, 1), file);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file.toPath());
+  }
+
+  @Benchmark
+  public Object parse() throws Throwable {
+    return (Object) Core.PARSE.invokeExact(file);
+  }
+}
@@ -0,0 +1,53 @@
+package clustering.benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the purity of a clustering of synthetic data cut from a random spanning tree.
+ * @author Kurt Marcinkiewicz
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PurityBenchmark {
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int rows;
+
+  @Param({"4"})
+  public int dimensions;
+
+  @Param({"7", "500"})
+  public int clusters;
+
+  private Object matrix;
+  private Object labels;
+
+  @Setup
+  public void setUp() throws Throwable {
+    matrix = Core.generate(rows, dimensions, 7, 1);
+    ArrayList<?> tree = (ArrayList<?>) Core.RANDOM_SPANNING_TREE.invokeExact(rows, 1L);
+    Object dendrogram = (Object) Core.NEW_DENDROGRAM.invokeExact((ArrayList) tree, rows);
+    labels = (Object) Core.DENDROGRAM_LABELS.invokeExact(dendrogram, Math.min(clusters, rows));
+  }
+
+  @Benchmark
+  public double purity() throws Throwable {
+    return (double) Core.PURITY.invokeExact(labels, matrix);
+  }
+}
@@ -0,0 +1,54 @@
+package clustering.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the radix sort of the complete edge list. Every invocation sorts a freshly built,
+ * unsorted list.
+ * @author Kurt Marcinkiewicz
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SortBenchmark {
+  @Param({"1000", "2000", "5000"})
+  public int rows;
+
+  @Param({"19"})
+  public int dimensions;
+
+  private Object matrix;
+  private Object edges;
+
+  @Setup
+  public void setUp() {
+    matrix = Core.generate(rows, dimensions, 7, 1);
+  }
+
+  @Setup(Level.Invocation)
+  public void buildEdges() throws Throwable {
+    edges = (Object) Core.COMPLETE_GRAPH.invokeExact(matrix);
+  }
+
+  @Benchmark
+  public Object sort() throws Throwable {
+    Core.SORT.invokeExact(edges);
+    return edges;
+  }
+}
@@ -0,0 +1,59 @@
+package clustering.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures UnionFind with as many random unions as there are nodes followed by a find of every
+ * node, the pattern of Kruskal's algorithm.
+ * @author Kurt Marcinkiewicz
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UnionFindBenchmark {
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int nodes;
+
+  private int[] pairs;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(1);
+    pairs = new int[2 * nodes];
+    for (int i = 0; i < pairs.length; i++) {
+      pairs[i] = random.nextInt(nodes);
+    }
+  }
+
+  @Benchmark
+  public int unionThenFind() throws Throwable {
+    Object uf = (Object) Core.NEW_UNION_FIND.invokeExact(nodes);
+    int unions = 0;
+    for (int i = 0; i < pairs.length; i += 2) {
+      if ((boolean) Core.UNION.invokeExact(uf, pairs[i], pairs[i + 1])) {
+        unions++;
+      }
+    }
+    int roots = 0;
+    for (int i = 0; i < nodes; i++) {
+      roots += (int) Core.FIND.invokeExact(uf, i);
+    }
+    return unions + roots;
+  }
+}
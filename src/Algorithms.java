@@ -4,7 +4,6 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 /**
  * Functional Class wrapping the algorithms used in the single-link cluster algorithm
@@ -23,69 +22,183 @@ public class Algorithms {
    */
   public static ArrayList<ImageSegmentEdge> singleLinkCluster(ArrayList<ImageSegmentEdge> edges,
                                                               int nodes, int k) {
-    Collections.sort(edges);
-    int[] nodeIndexes = IntStream.range(0, nodes).toArray();
-    UnionFind uf = new UnionFind(nodeIndexes);
-
-    return edges.stream()
-        .filter(edge -> uf.union(edge.getA(), edge.getB()))
-        .limit(nodes - k)
-        .collect(Collectors.toCollection(ArrayList::new));
+    try (Instrumentation.Phase phase = Instrumentation.start("sort")) {
+      Collections.sort(edges);
+      phase.count("edges", edges.size());
+    }
+    try (Instrumentation.Phase phase = Instrumentation.start("union-find")) {
+      UnionFind uf = new UnionFind(nodes);
+      ArrayList<ImageSegmentEdge> mst = edges.stream()
+          .filter(edge -> uf.union(edge.getA(), edge.getB()))
+          .limit(nodes - k)
+          .collect(Collectors.toCollection(ArrayList::new));
+      phase.count("unions", mst.size());
+      return mst;
+    }
   }
 
   /**
-   * Identifies the trees developed in the single-link cluster algorithm. Uses a modified breadth-
-   * first search to find the tree that every node belongs to.
-   * @param nodes the nodes in the graph
-   * @param edges the edges connecting the trees within the graph
-   * @param k the number of clusters within the graph
-   * @return the list of clusters
+   * Creates single-link clusters in a graph whose edges are held in a primitive edge list. The
+   * edges are radix sorted in place, then filtered through a Union-Find as in
+   * {@link #singleLinkCluster(ArrayList, int, int)}.
+   * @param edges the edges to create the MST from
+   * @param nodes the number of nodes in the graph
+   * @param k the desired number of clusters
+   * @return the MST
    */
-  public static ArrayList<HashSet<Integer>> clustersFromEdges(ArrayList<ImageSegmentNode> nodes,
-                                                              ArrayList<ImageSegmentEdge> edges,
+  public static ArrayList<ImageSegmentEdge> singleLinkCluster(EdgeList edges, int nodes, int k) {
+    return sortAndUnion(edges, nodes, k);
+  }
+
+  /**
+   * Creates single-link clusters in a graph whose edges are held in a single-precision edge list,
+   * as {@link #singleLinkCluster(EdgeList, int, int)} does for a double-precision one.
+   * @param edges the edges to create the MST from
+   * @param nodes the number of nodes in the graph
+   * @param k the desired number of clusters
+   * @return the MST, with the weights widened to doubles
+   */
+  public static ArrayList<ImageSegmentEdge> singleLinkCluster(FloatEdgeList edges, int nodes,
                                                               int k) {
-    boolean[] inCluster = new boolean[nodes.size()];
-    Arrays.fill(inCluster, false);
+    return sortAndUnion(edges, nodes, k);
+  }
 
-    ArrayList<HashSet<Integer>> clusters = Stream.generate(HashSet<Integer>::new)
-        .limit(k)
-        .collect(Collectors.toCollection(ArrayList::new));
+  /**
+   * Sorts a primitive edge list in place, then filters it through a Union-Find until k clusters
+   * are left.
+   */
+  private static ArrayList<ImageSegmentEdge> sortAndUnion(SortableEdges edges, int nodes, int k) {
+    try (Instrumentation.Phase phase = Instrumentation.start("sort")) {
+      edges.sort();
+      phase.count("edges", edges.size());
+    }
+    try (Instrumentation.Phase phase = Instrumentation.start("union-find")) {
+      UnionFind uf = new UnionFind(nodes);
+      ArrayList<ImageSegmentEdge> mst = new ArrayList<>(Math.max(nodes - k, 0));
 
+      int i = 0;
+      for (; i < edges.size() && mst.size() < nodes - k; i++) {
+        if (uf.union(edges.getA(i), edges.getB(i))) {
+          mst.add(edges.getEdge(i));
+        }
+      }
+      phase.count("edges scanned", i).count("unions", mst.size());
+      return mst;
+    }
+  }
+
+  /**
+   * Finds the MST of the complete graph over the given nodes using the dense variant of Prim's
+   * algorithm. The nodes are copied into a {@link FeatureMatrix} first.
+   * @param nodes the nodes in the graph
+   * @return the MST
+   * @see #primMst(FeatureMatrix)
+   */
+  public static ArrayList<ImageSegmentEdge> primMst(ArrayList<ImageSegmentNode> nodes) {
+    return primMst(FeatureMatrix.fromNodes(nodes));
+  }
+
+  /**
+   * Finds the MST of the complete graph over the rows of a feature matrix using the dense variant of
+   * Prim's algorithm. Distances are computed on the fly from the features, so only O(n) memory is
+   * used instead of the O(n^2) needed to hold every edge. Edges of equal weight are compared by
+   * their larger node and then their smaller node, as in {@link BoruvkaMst}, so ties are broken in
+   * the order Kruskal's algorithm sees the edges and the same n-1 edges are found.
+   * @param matrix the feature matrix
+   * @return the MST
+   */
+  public static ArrayList<ImageSegmentEdge> primMst(FeatureMatrix matrix) {
+    return primMst(matrix, DistanceMetrics.EUCLIDEAN);
+  }
 
-    @SuppressWarnings("unchecked")
-    ArrayList<ImageSegmentEdge> edgeList = (ArrayList<ImageSegmentEdge>) edges.clone();
+  /**
+   * Finds the MST of the complete graph over the rows of a feature matrix using the dense variant of
+   * Prim's algorithm and the given distance metric.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @return the MST
+   */
+  public static ArrayList<ImageSegmentEdge> primMst(FeatureMatrix matrix, DistanceMetric metric) {
+    try (Instrumentation.Phase phase = Instrumentation.start("prim")) {
+      phase.count("rows", matrix.getRows());
+      return densePrim(matrix, metric);
+    }
+  }
 
-    int i = 0;
-    for (int j = 0; j < nodes.size(); j++) {
-      boolean incrementI = false;
-      ArrayList<Integer> queue = new ArrayList<>();
+  private static ArrayList<ImageSegmentEdge> densePrim(FeatureMatrix matrix,
+                                                       DistanceMetric metric) {
+    int n = matrix.getRows();
+    ArrayList<ImageSegmentEdge> mst = new ArrayList<>(Math.max(n - 1, 0));
+    if (n == 0) {
+      return mst;
+    }
 
-      if (!inCluster[j]) {
-        queue.add(j);
-        incrementI = true;
-      }
+    boolean[] inTree = new boolean[n];
+    double[] distances = new double[n];
+    int[] parents = new int[n];
+    Arrays.fill(distances, Double.POSITIVE_INFINITY);
 
-      while (!queue.isEmpty()) {
-        int node = queue.remove(0);
+    int current = 0;
+    inTree[current] = true;
 
-        if (!inCluster[node]) {
-          clusters.get(i).add(node);
-          inCluster[node] = true;
+    for (int added = 1; added < n; added++) {
+      int next = -1;
 
-          for (ImageSegmentEdge edgeTwo : edgeList) {
-            if (edgeTwo.getA() == node && !inCluster[edgeTwo.getB()]) {
-              queue.add(edgeTwo.getB());
-            } else if (edgeTwo.getB() == node && !inCluster[edgeTwo.getA()]) {
-              queue.add(edgeTwo.getA());
-            }
-          }
+      for (int i = 0; i < n; i++) {
+        if (inTree[i]) {
+          continue;
+        }
+        double distance = matrix.distance(i, current, metric);
+        if (BoruvkaMst.isCheaper(distance, i, current, distances[i], i, parents[i])) {
+          distances[i] = distance;
+          parents[i] = current;
+        }
+        if (next == -1
+            || BoruvkaMst.isCheaper(distances[i], i, parents[i], distances[next], next,
+                                    parents[next])) {
+          next = i;
         }
       }
-      if (incrementI) {
-        i++;
+
+      inTree[next] = true;
+      mst.add(new ImageSegmentEdge(next, parents[next], distances[next]));
+      current = next;
+    }
+    return mst;
+  }
+
+  /**
+   * Identifies the trees developed in the single-link cluster algorithm. Kept as an adapter over
+   * {@link #labelsFromEdges(int, ArrayList)} for callers that want each cluster as a HashSet.
+   * @param nodes the nodes in the graph
+   * @param edges the edges connecting the trees within the graph
+   * @param k the number of clusters within the graph
+   * @return the list of clusters
+   */
+  public static ArrayList<HashSet<Integer>> clustersFromEdges(ArrayList<ImageSegmentNode> nodes,
+                                                              ArrayList<ImageSegmentEdge> edges,
+                                                              int k) {
+    return labelsFromEdges(nodes.size(), edges).toHashSets();
+  }
+
+  /**
+   * Identifies the trees developed in the single-link cluster algorithm by unionizing the endpoints
+   * of every edge, then labelling every node by its root. Runs in O(n + E) time (up to the inverse
+   * Ackermann factor of the Union-Find).
+   * @param nodes the number of nodes in the graph
+   * @param edges the edges connecting the trees within the graph
+   * @return the cluster labels
+   */
+  public static ClusterLabels labelsFromEdges(int nodes, ArrayList<ImageSegmentEdge> edges) {
+    try (Instrumentation.Phase phase = Instrumentation.start("labels")) {
+      UnionFind uf = new UnionFind(nodes);
+      for (ImageSegmentEdge edge : edges) {
+        uf.union(edge.getA(), edge.getB());
       }
+      ClusterLabels labels = ClusterLabels.fromUnionFind(uf, nodes);
+      phase.count("clusters", labels.getClusterCount());
+      return labels;
     }
-    return clusters;
   }
 
   /**
@@ -98,21 +211,72 @@ public class Algorithms {
   public static double purityFromClusters(ArrayList<HashSet<Integer>> clusters,
                                           ArrayList<ImageSegmentNode> nodes) {
     int[] majorities = new int[clusters.size()];
+    int[] frequencies = new int[ImageSegmentNode.SegmentClass.values().length];
 
     for (int i = 0; i < clusters.size(); i++) {
-      HashSet<Integer> cluster = clusters.get(i);
+      Arrays.fill(frequencies, 0);
+      for (int nodeIndex : clusters.get(i)) {
+        majorities[i] = Math.max(majorities[i],
+                                 ++frequencies[nodes.get(nodeIndex).getSegmentClass().ordinal()]);
+      }
+    }
+
+    return (double) IntStream.of(majorities).sum() / nodes.size();
+  }
+
+  /**
+   * Calculates the purity of the clustering algorithm from compact cluster labels, counting the
+   * classes of every cluster in a single pass over the nodes.
+   * @param clusters the cluster labels
+   * @param nodes the nodes in the graph
+   * @return the clustering purity
+   */
+  public static double purityFromClusters(ClusterLabels clusters,
+                                          ArrayList<ImageSegmentNode> nodes) {
+    int classes = ImageSegmentNode.SegmentClass.values().length;
+    int[] frequencies = new int[clusters.getClusterCount() * classes];
+
+    for (int i = 0; i < nodes.size(); i++) {
+      frequencies[clusters.getLabel(i) * classes + nodes.get(i).getSegmentClass().ordinal()]++;
+    }
 
-      ArrayList<Integer> frequencies =
-          new ArrayList<>(Collections.nCopies(ImageSegmentNode.SegmentClass.values().length, 0));
+    int majorities = 0;
+    for (int i = 0; i < clusters.getClusterCount(); i++) {
+      int majority = 0;
+      for (int j = 0; j < classes; j++) {
+        majority = Math.max(majority, frequencies[i * classes + j]);
+      }
+      majorities += majority;
+    }
+    return (double) majorities / nodes.size();
+  }
 
-      for (Integer nodeIndex : cluster) {
-        ImageSegmentNode node = nodes.get(nodeIndex);
-        frequencies.set(node.getSegmentClass().ordinal(),
-                        frequencies.get(node.getSegmentClass().ordinal()) + 1);
+  /**
+   * Calculates the purity of the clustering algorithm from compact cluster labels and the classes
+   * of the rows of a feature matrix. Rows with an unknown class never count towards a majority.
+   * {@link ContingencyTable} gives the same purity along with chance-adjusted scores.
+   * @param clusters the cluster labels
+   * @param matrix the feature matrix
+   * @return the clustering purity
+   */
+  public static double purityFromClusters(ClusterLabels clusters, FeatureMatrix matrix) {
+    int classes = matrix.getClassCount();
+    int[] frequencies = new int[clusters.getClusterCount() * classes];
+
+    for (int i = 0; i < matrix.getRows(); i++) {
+      if (matrix.getLabel(i) >= 0) {
+        frequencies[clusters.getLabel(i) * classes + matrix.getLabel(i)]++;
       }
-      majorities[i] = Collections.max(frequencies);
     }
 
-    return (double) IntStream.of(majorities).sum() / nodes.size();
+    int majorities = 0;
+    for (int i = 0; i < clusters.getClusterCount(); i++) {
+      int majority = 0;
+      for (int j = 0; j < classes; j++) {
+        majority = Math.max(majority, frequencies[i * classes + j]);
+      }
+      majorities += majority;
+    }
+    return (double) majorities / matrix.getRows();
   }
 }
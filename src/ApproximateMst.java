@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Finds an approximate MST for inputs too large for an exact one. Kruskal's algorithm runs over a
+ * sparse k-nearest-neighbor graph from {@link NnDescent} instead of the complete graph, which gives
+ * a spanning forest if the graph falls apart into several components. The forest is then joined
+ * with exact bridges: Boruvka rounds over the complete graph that find the cheapest edge leaving
+ * each component, scanning only from the components other than the largest.
+ *
+ * Every MST edge that also lies in the k-NN graph is found, so the result tends towards the exact
+ * MST as the number of neighbors grows; {@link ApproximateMstReport} measures how close it is.
+ * @author Kurt Marcinkiewicz
+ */
+public class ApproximateMst {
+  /**
+   * The number of neighbors used when none is given.
+   */
+  public static final int DEFAULT_NEIGHBORS = 15;
+
+  /**
+   * The seed used when none is given.
+   */
+  public static final long DEFAULT_SEED = 42;
+
+  private static final int NONE = -1;
+
+  private ApproximateMst() { }
+
+  /**
+   * Finds an approximate MST with the default number of neighbors and seed.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @return the edges of the approximate MST
+   */
+  public static ArrayList<ImageSegmentEdge> minimumSpanningTree(FeatureMatrix matrix,
+                                                                DistanceMetric metric) {
+    return minimumSpanningTree(matrix, metric, DEFAULT_NEIGHBORS, DEFAULT_SEED);
+  }
+
+  /**
+   * Finds an approximate MST.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @param neighbors the number of neighbors of every row in the k-NN graph
+   * @param seed the seed of NN-Descent
+   * @return the edges of the approximate MST
+   */
+  public static ArrayList<ImageSegmentEdge> minimumSpanningTree(FeatureMatrix matrix,
+                                                                DistanceMetric metric,
+                                                                int neighbors, long seed) {
+    return fromGraph(matrix, metric, NnDescent.graph(matrix, metric, neighbors, seed));
+  }
+
+  /**
+   * Finds the spanning forest of a sparse graph over the rows of a feature matrix, then joins its
+   * trees with exact bridges.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @param graph the edges of the sparse graph, which are sorted in place
+   * @return the edges of the spanning tree
+   */
+  public static ArrayList<ImageSegmentEdge> fromGraph(FeatureMatrix matrix, DistanceMetric metric,
+                                                      EdgeList graph) {
+    ArrayList<ImageSegmentEdge> mst = Algorithms.singleLinkCluster(graph, matrix.getRows(), 1);
+    mst.addAll(bridge(matrix, metric, mst));
+    return mst;
+  }
+
+  /**
+   * Joins the trees of a spanning forest with the cheapest edges of the complete graph between
+   * them.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @param forest the edges of the forest
+   * @return the bridging edges
+   */
+  static ArrayList<ImageSegmentEdge> bridge(FeatureMatrix matrix, DistanceMetric metric,
+                                            ArrayList<ImageSegmentEdge> forest) {
+    int n = matrix.getRows();
+    ConcurrentUnionFind uf = new ConcurrentUnionFind(n);
+    for (ImageSegmentEdge edge : forest) {
+      uf.union(edge.getA(), edge.getB());
+    }
+
+    ArrayList<ImageSegmentEdge> bridges = new ArrayList<>();
+    int[] components = new int[n];
+    int[] sizes = new int[n];
+    int[] nearest = new int[n];
+    double[] nearestDistances = new double[n];
+    AtomicIntegerArray cheapest = new AtomicIntegerArray(n);
+
+    while (forest.size() + bridges.size() < n - 1) {
+      Arrays.fill(sizes, 0);
+      for (int v = 0; v < n; v++) {
+        components[v] = uf.find(v);
+        sizes[components[v]]++;
+        cheapest.set(v, NONE);
+      }
+      int largest = 0;
+      for (int v = 1; v < n; v++) {
+        if (sizes[v] > sizes[largest]) {
+          largest = v;
+        }
+      }
+
+      int skipped = largest;
+      IntStream.range(0, n).parallel()
+          .filter(v -> components[v] != skipped)
+          .forEach(v -> {
+            BoruvkaMst.findNearest(matrix, metric, components, v, nearest, nearestDistances);
+            BoruvkaMst.offerNode(nearest, nearestDistances, cheapest, components[v], v);
+          });
+
+      bridges.addAll(IntStream.range(0, n)
+                         .map(cheapest::get)
+                         .filter(v -> v != NONE && uf.union(v, nearest[v]))
+                         .mapToObj(v -> new ImageSegmentEdge(Math.max(v, nearest[v]),
+                                                             Math.min(v, nearest[v]),
+                                                             nearestDistances[v]))
+                         .collect(Collectors.toList()));
+    }
+    return bridges;
+  }
+}
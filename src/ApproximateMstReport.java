@@ -0,0 +1,105 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Measures the accuracy and speed of {@link ApproximateMst} against the exact MST of a dataset over
+ * a range of neighbor counts, so the trade-off between them can be chosen.
+ *
+ * Usage: java ApproximateMstReport [file] [neighbors,...] [seed]
+ *
+ * The file defaults to segment-full.arff and the neighbor counts to 5,10,15,20,30. For every
+ * neighbor count it prints the time taken, the share of exact MST edges found by the k-NN graph
+ * and by the approximate MST, the number of bridges needed to join the forest, the total weight
+ * relative to the exact MST and the purity at a few cluster counts next to the exact purity.
+ * @author Kurt Marcinkiewicz
+ */
+public class ApproximateMstReport {
+  private static final int[] CLUSTER_COUNTS = {7, 50, 500};
+
+  public static void main(String[] args) throws IOException {
+    File file = new File(args.length > 0 ? args[0] : "segment-full.arff");
+    String neighborList = args.length > 1 ? args[1] : "5,10,15,20,30";
+    long seed = args.length > 2 ? Long.parseLong(args[2]) : ApproximateMst.DEFAULT_SEED;
+    DistanceMetric metric = DistanceMetrics.EUCLIDEAN;
+
+    FeatureMatrix matrix = DatasetSnapshot.load(file);
+    int n = matrix.getRows();
+    System.out.println(matrix);
+
+    long start = System.nanoTime();
+    ArrayList<ImageSegmentEdge> exact = MstEngine.PRIM.minimumSpanningTree(matrix, metric);
+    long exactTime = System.nanoTime() - start;
+    HashSet<Long> exactEdges = Reports.edgeKeys(exact, n);
+    double exactWeight = Reports.totalWeight(exact);
+    Dendrogram exactDendrogram = new Dendrogram(exact, n);
+
+    StringBuilder header = new StringBuilder("neighbors, ms, graph recall, mst recall, bridges, "
+                                             + "weight ratio");
+    StringBuilder exactRow = new StringBuilder("exact, " + exactTime / 1000000 + ", 1.0, 1.0, 0, "
+                                               + "1.0");
+    for (int k : CLUSTER_COUNTS) {
+      if (k <= n) {
+        header.append(", purity@").append(k);
+        exactRow.append(", ").append(purity(exactDendrogram, matrix, k));
+      }
+    }
+    System.out.println(header);
+    System.out.println(exactRow);
+
+    for (String value : neighborList.split(",")) {
+      int neighbors = Integer.parseInt(value.trim());
+
+      start = System.nanoTime();
+      EdgeList graph = NnDescent.graph(matrix, metric, neighbors, seed);
+      HashSet<Long> graphEdges = new HashSet<>();
+      for (int i = 0; i < graph.size(); i++) {
+        graphEdges.add(Reports.edgeKey(graph.getA(i), graph.getB(i), n));
+      }
+      ArrayList<ImageSegmentEdge> approximate = ApproximateMst.fromGraph(matrix, metric, graph);
+      long time = System.nanoTime() - start;
+
+      int graphHits = 0;
+      for (Long edge : exactEdges) {
+        if (graphEdges.contains(edge)) {
+          graphHits++;
+        }
+      }
+      int mstHits = 0;
+      int bridges = 0;
+      for (ImageSegmentEdge edge : approximate) {
+        long key = Reports.edgeKey(edge.getA(), edge.getB(), n);
+        if (exactEdges.contains(key)) {
+          mstHits++;
+        }
+        if (!graphEdges.contains(key)) {
+          bridges++;
+        }
+      }
+
+      Dendrogram dendrogram = new Dendrogram(approximate, n);
+      StringBuilder row = new StringBuilder();
+      row.append(neighbors).append(", ").append(time / 1000000)
+          .append(", ").append(ratio(graphHits, exact.size()))
+          .append(", ").append(ratio(mstHits, exact.size()))
+          .append(", ").append(bridges)
+          .append(", ")
+          .append(exactWeight == 0 ? 1.0 : Reports.totalWeight(approximate) / exactWeight);
+      for (int k : CLUSTER_COUNTS) {
+        if (k <= n) {
+          row.append(", ").append(purity(dendrogram, matrix, k));
+        }
+      }
+      System.out.println(row);
+    }
+  }
+
+  private static double purity(Dendrogram dendrogram, FeatureMatrix matrix, int k) {
+    return Algorithms.purityFromClusters(dendrogram.labels(k), matrix);
+  }
+
+  private static double ratio(int hits, int total) {
+    return total == 0 ? 1.0 : (double) hits / total;
+  }
+}
@@ -0,0 +1,357 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A high-throughput .arff parser. The file is read through a FileChannel in large blocks and the
+ * numbers are parsed straight from the bytes, so no String is created per line or per value. The
+ * features of every row are written directly into the buffer of a {@link FeatureMatrix.Builder}.
+ * @author Kurt Marcinkiewicz
+ */
+public class ArffByteParser {
+  private static final int BLOCK_SIZE = 1 << 22;
+  private static final int MAX_FAST_DIGITS = 15;
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+      1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private final File file;
+  private FileChannel channel;
+  private byte[] buffer = new byte[BLOCK_SIZE];
+  private int position;
+  private int limit;
+  private boolean endOfFile;
+  private long lineNumber;
+
+  /**
+   * @param file the .arff file to parse
+   */
+  public ArffByteParser(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Parses the file into a feature matrix.
+   * @return the feature matrix
+   * @throws IOException if the file cannot be read or is not a valid numeric .arff file
+   */
+  public FeatureMatrix parse() throws IOException {
+    try (Instrumentation.Phase phase = Instrumentation.start("parse")) {
+      FeatureMatrix matrix = parseFile();
+      phase.count("bytes", file.length()).count("rows", matrix.getRows());
+      return matrix;
+    }
+  }
+
+  private FeatureMatrix parseFile() throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      channel = raf.getChannel();
+      position = 0;
+      limit = 0;
+      endOfFile = false;
+      lineNumber = 0;
+
+      ArffHeader header = new ArffHeader();
+      int end;
+      while ((end = nextLine()) >= 0) {
+        String line = new String(buffer, position, end - position, StandardCharsets.UTF_8);
+        position = end + 1;
+        if (header.readLine(line)) {
+          break;
+        }
+      }
+      if (!header.isDataReached()) {
+        throw new IOException("The file has no @data section");
+      }
+
+      return parseData(header);
+    }
+    finally {
+      channel = null;
+    }
+  }
+
+  /**
+   * Parses every row of the data section.
+   * @param header the header of the file
+   * @return the feature matrix
+   * @throws IOException if a row does not match the header
+   */
+  private FeatureMatrix parseData(ArffHeader header) throws IOException {
+    FeatureMatrix.Builder builder = new FeatureMatrix.Builder(header.getFeatures(),
+                                                              header.getClasses());
+    byte[][] classes = classBytes(header.getClasses());
+    int columns = header.getColumnCount();
+    int classColumn = header.getClassColumn();
+    int end;
+
+    while ((end = nextLine()) >= 0) {
+      int start = skipWhitespace(position, end);
+      int lineEnd = position = end + 1;
+      if (start == end || buffer[start] == '%' || buffer[start] == '\r') {
+        continue;
+      }
+
+      int label = -1;
+      int rowEnd = lineEnd - 1;
+      if (classColumn >= 0) {
+        label = findClass(start, rowEnd, classColumn, classes);
+      }
+      int offset = builder.startRow(label);
+      double[] data = builder.getData();
+
+      int p = start;
+      for (int column = 0; column < columns; column++) {
+        if (p > rowEnd) {
+          throw new IOException("Expected " + columns + " values on line " + lineNumber);
+        }
+        int tokenEnd = p;
+        while (tokenEnd < rowEnd && buffer[tokenEnd] != ',') {
+          tokenEnd++;
+        }
+        if (column != classColumn) {
+          data[offset++] = parseDouble(p, tokenEnd);
+        }
+        p = tokenEnd + 1;
+      }
+      if (p <= rowEnd) {
+        throw new IOException("Expected " + columns + " values on line " + lineNumber);
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Finds the class of a row by comparing the bytes of its class column with every class value.
+   * @param start the start of the row
+   * @param end the end of the row
+   * @param classColumn the column holding the class
+   * @param classes the bytes of every class value
+   * @return the index of the class, or -1 if it is missing
+   * @throws IOException if the class value is not declared in the header
+   */
+  private int findClass(int start, int end, int classColumn, byte[][] classes) throws IOException {
+    int p = start;
+    for (int column = 0; column < classColumn && p < end; p++) {
+      if (buffer[p] == ',') {
+        column++;
+      }
+    }
+    int tokenEnd = p;
+    while (tokenEnd < end && buffer[tokenEnd] != ',') {
+      tokenEnd++;
+    }
+
+    int tokenStart = skipWhitespace(p, tokenEnd);
+    while (tokenEnd > tokenStart && isWhitespace(buffer[tokenEnd - 1])) {
+      tokenEnd--;
+    }
+    if (tokenEnd - tokenStart >= 2 && (buffer[tokenStart] == '\'' || buffer[tokenStart] == '"')
+        && buffer[tokenEnd - 1] == buffer[tokenStart]) {
+      tokenStart++;
+      tokenEnd--;
+    }
+    if (tokenEnd - tokenStart == 1 && buffer[tokenStart] == '?') {
+      return -1;
+    }
+
+    for (int i = 0; i < classes.length; i++) {
+      if (Arrays.equals(buffer, tokenStart, tokenEnd, classes[i], 0, classes[i].length)) {
+        return i;
+      }
+    }
+    throw new IOException("Unknown class value '"
+                          + new String(buffer, tokenStart, tokenEnd - tokenStart,
+                                       StandardCharsets.UTF_8) + "' on line " + lineNumber);
+  }
+
+  /**
+   * Parses a double from the bytes of a token. Decimals with at most 15 significant digits and a
+   * small exponent are computed exactly from a long mantissa and a power of ten, which gives the
+   * same result as Double.parseDouble. Anything else falls back to Double.parseDouble.
+   * @param start the start of the token
+   * @param end the end of the token
+   * @return the double
+   * @throws IOException if the token is not a number
+   */
+  private double parseDouble(int start, int end) throws IOException {
+    start = skipWhitespace(start, end);
+    while (end > start && isWhitespace(buffer[end - 1])) {
+      end--;
+    }
+
+    int p = start;
+    boolean negative = false;
+    if (p < end && (buffer[p] == '-' || buffer[p] == '+')) {
+      negative = buffer[p++] == '-';
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean seenDigit = false;
+    while (p < end && buffer[p] >= '0' && buffer[p] <= '9') {
+      seenDigit = true;
+      if (mantissa != 0 || buffer[p] != '0') {
+        mantissa = mantissa * 10 + (buffer[p] - '0');
+        digits++;
+      }
+      p++;
+    }
+    if (p < end && buffer[p] == '.') {
+      p++;
+      while (p < end && buffer[p] >= '0' && buffer[p] <= '9') {
+        seenDigit = true;
+        if (mantissa != 0 || buffer[p] != '0') {
+          mantissa = mantissa * 10 + (buffer[p] - '0');
+          digits++;
+        }
+        exponent--;
+        p++;
+      }
+    }
+    if (p < end && (buffer[p] == 'e' || buffer[p] == 'E')) {
+      p++;
+      boolean negativeExponent = false;
+      if (p < end && (buffer[p] == '-' || buffer[p] == '+')) {
+        negativeExponent = buffer[p++] == '-';
+      }
+      int explicit = 0;
+      int exponentStart = p;
+      while (p < end && buffer[p] >= '0' && buffer[p] <= '9' && explicit < 100000) {
+        explicit = explicit * 10 + (buffer[p++] - '0');
+      }
+      if (p == exponentStart) {
+        return parseSlow(start, end);
+      }
+      exponent += negativeExponent ? -explicit : explicit;
+    }
+
+    if (!seenDigit || p != end || digits > MAX_FAST_DIGITS) {
+      return parseSlow(start, end);
+    }
+
+    double value;
+    if (mantissa == 0) {
+      value = 0;
+    }
+    else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+      value = mantissa * POWERS_OF_TEN[exponent];
+    }
+    else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+      value = mantissa / POWERS_OF_TEN[-exponent];
+    }
+    else {
+      return parseSlow(start, end);
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Parses a double from the bytes of a token with Double.parseDouble.
+   * @param start the start of the token
+   * @param end the end of the token
+   * @return the double
+   * @throws IOException if the token is not a number
+   */
+  private double parseSlow(int start, int end) throws IOException {
+    String token = new String(buffer, start, end - start, StandardCharsets.US_ASCII);
+    try {
+      return Double.parseDouble(token);
+    }
+    catch (NumberFormatException e) {
+      throw new IOException("Invalid or missing numeric value '" + token + "' on line "
+                            + lineNumber, e);
+    }
+  }
+
+  /**
+   * Finds the end of the next line, reading another block of the file into the buffer when the line
+   * is not complete. The line starts at {@link #position}.
+   * @return the index of the end of the line, or -1 once the whole file has been read
+   * @throws IOException if the file cannot be read
+   */
+  private int nextLine() throws IOException {
+    int scanned = position;
+    while (true) {
+      for (int i = scanned; i < limit; i++) {
+        if (buffer[i] == '\n') {
+          lineNumber++;
+          return i;
+        }
+      }
+      if (endOfFile) {
+        if (position < limit) {
+          lineNumber++;
+          if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length + 1);
+          }
+          buffer[limit] = '\n';
+          return limit++;
+        }
+        return -1;
+      }
+      scanned = limit - position;
+      fill();
+    }
+  }
+
+  /**
+   * Moves the unread bytes to the front of the buffer, growing it if a single line fills it, then
+   * reads as much of the file as fits after them.
+   * @throws IOException if the file cannot be read
+   */
+  private void fill() throws IOException {
+    int remaining = limit - position;
+    if (position == 0 && limit == buffer.length) {
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+    else {
+      System.arraycopy(buffer, position, buffer, 0, remaining);
+    }
+    position = 0;
+    limit = remaining;
+
+    ByteBuffer target = ByteBuffer.wrap(buffer, limit, buffer.length - limit);
+    while (target.hasRemaining()) {
+      if (channel.read(target) < 0) {
+        endOfFile = true;
+        break;
+      }
+    }
+    limit = target.position();
+  }
+
+  /**
+   * @param start the first byte to check
+   * @param end the end of the range
+   * @return the first byte in the range that is not whitespace, or end
+   */
+  private int skipWhitespace(int start, int end) {
+    while (start < end && isWhitespace(buffer[start])) {
+      start++;
+    }
+    return start;
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\r';
+  }
+
+  /**
+   * @param classes the class values
+   * @return the UTF-8 bytes of every class value
+   */
+  private static byte[][] classBytes(String[] classes) {
+    byte[][] bytes = new byte[classes.length][];
+    for (int i = 0; i < classes.length; i++) {
+      bytes[i] = classes[i].getBytes(StandardCharsets.UTF_8);
+    }
+    return bytes;
+  }
+}
@@ -23,20 +23,46 @@ public class ArffFileReader {
    * @throws IOException
    */
   public ImageSegmentGraph processLineByLine() throws IOException {
-    Scanner sc = new Scanner(file);
+    return processLineByLine(true);
+  }
 
-    while (sc.hasNextLine() && sc.hasNext("(%.*)|(@.*)")) {
-      sc.nextLine();
-    }
+  /**
+   * Processes an .arff file and builds a graph based off of the image segments, optionally without
+   * building the edges between them.
+   * @param materializeEdges whether or not to build the complete edge list
+   * @return the graph
+   * @throws IOException
+   */
+  public ImageSegmentGraph processLineByLine(boolean materializeEdges) throws IOException {
+    try (Instrumentation.Phase phase = Instrumentation.start("parse")) {
+      Scanner sc = new Scanner(file);
 
-    ImageSegmentGraph graph = new ImageSegmentGraph();
+      while (sc.hasNextLine() && sc.hasNext("(%.*)|(@.*)")) {
+        sc.nextLine();
+      }
 
-    while (sc.hasNextLine()) {
-      ImageSegmentNode node = processLine(sc.nextLine());
-      graph.addImageSegmentNode(node);
+      ImageSegmentGraph graph = new ImageSegmentGraph(materializeEdges);
+
+      while (sc.hasNextLine()) {
+        ImageSegmentNode node = processLine(sc.nextLine());
+        graph.addImageSegmentNode(node);
+      }
+
+      phase.count("rows", graph.getImageSegmentNodes().size())
+          .count("edges", graph.getImageSegmentEdges().size());
+      return graph;
     }
+  }
 
-    return graph;
+  /**
+   * Processes an .arff file into a feature matrix. The features are taken from the numeric
+   * attributes declared in the header, so any numeric dataset can be read, not just image segments.
+   * The file is parsed straight from its bytes by an {@link ArffByteParser}.
+   * @return the feature matrix
+   * @throws IOException if the file cannot be read or is not a valid numeric .arff file
+   */
+  public FeatureMatrix readFeatureMatrix() throws IOException {
+    return new ArffByteParser(file).parse();
   }
 
   /**
@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * The schema of an .arff file, read from its header one line at a time. Every numeric attribute
+ * becomes a feature, and a single nominal attribute may be declared as the class.
+ * @author Kurt Marcinkiewicz
+ */
+public class ArffHeader {
+  private String relation = "";
+  private final ArrayList<String> attributes = new ArrayList<>();
+  private final ArrayList<String> features = new ArrayList<>();
+  private final ArrayList<Boolean> numeric = new ArrayList<>();
+  private String[] classes = new String[0];
+  private int classColumn = -1;
+  private boolean dataReached;
+
+  /**
+   * Reads a line of the header.
+   * @param line the line to read
+   * @return true once the line starting the data section has been read
+   * @throws IOException if the line is not valid .arff header syntax, or describes an attribute
+   * that cannot be clustered
+   */
+  public boolean readLine(String line) throws IOException {
+    String trimmed = line.trim();
+    if (trimmed.isEmpty() || trimmed.startsWith("%")) {
+      return dataReached;
+    }
+
+    String lower = trimmed.toLowerCase(Locale.ROOT);
+    if (lower.startsWith("@relation")) {
+      relation = unquote(trimmed.substring("@relation".length()).trim());
+    }
+    else if (lower.startsWith("@attribute")) {
+      readAttribute(trimmed.substring("@attribute".length()).trim());
+    }
+    else if (lower.startsWith("@data")) {
+      if (features.isEmpty()) {
+        throw new IOException("The file has no numeric attributes to cluster on");
+      }
+      dataReached = true;
+    }
+    else {
+      throw new IOException("Unexpected line in .arff header: " + line);
+    }
+    return dataReached;
+  }
+
+  /**
+   * @return true once the line starting the data section has been read
+   */
+  public boolean isDataReached() {
+    return dataReached;
+  }
+
+  /**
+   * @return the name of the relation
+   */
+  public String getRelation() {
+    return relation;
+  }
+
+  /**
+   * @return the number of columns in every data row
+   */
+  public int getColumnCount() {
+    return attributes.size();
+  }
+
+  /**
+   * @param column the column
+   * @return true if the column is a numeric feature, false if it is the class
+   */
+  public boolean isFeature(int column) {
+    return numeric.get(column);
+  }
+
+  /**
+   * @return the column holding the class, or -1 if there is no class attribute
+   */
+  public int getClassColumn() {
+    return classColumn;
+  }
+
+  /**
+   * @return the names of the numeric features, in column order
+   */
+  public String[] getFeatures() {
+    return features.toArray(new String[0]);
+  }
+
+  /**
+   * @return the possible values of the class, in the order they are declared
+   */
+  public String[] getClasses() {
+    return classes.clone();
+  }
+
+  /**
+   * Finds the index of a class value.
+   * @param value the class value
+   * @return the index of the value within {@link #getClasses()}, or -1 if the value is missing
+   * @throws IOException if the value was not declared in the header
+   */
+  public int classIndex(String value) throws IOException {
+    String unquoted = unquote(value.trim());
+    if (unquoted.equals("?")) {
+      return -1;
+    }
+    for (int i = 0; i < classes.length; i++) {
+      if (classes[i].equals(unquoted)) {
+        return i;
+      }
+    }
+    throw new IOException("Unknown class value: " + value);
+  }
+
+  /**
+   * Reads the name and type of an attribute declaration.
+   * @param declaration the declaration, without the leading '@attribute'
+   * @throws IOException if the attribute cannot be clustered
+   */
+  private void readAttribute(String declaration) throws IOException {
+    String name;
+    String type;
+    if (declaration.startsWith("'") || declaration.startsWith("\"")) {
+      int end = declaration.indexOf(declaration.charAt(0), 1);
+      if (end < 0) {
+        throw new IOException("Unterminated attribute name: " + declaration);
+      }
+      name = declaration.substring(1, end);
+      type = declaration.substring(end + 1).trim();
+    }
+    else {
+      String[] parts = declaration.split("\\s+", 2);
+      if (parts.length < 2) {
+        throw new IOException("Attribute has no type: " + declaration);
+      }
+      name = parts[0];
+      type = parts[1].trim();
+    }
+
+    String lowerType = type.toLowerCase(Locale.ROOT);
+    if (lowerType.equals("real") || lowerType.equals("numeric") || lowerType.equals("integer")) {
+      attributes.add(name);
+      features.add(name);
+      numeric.add(true);
+    }
+    else if (type.startsWith("{") && type.endsWith("}")) {
+      if (classColumn >= 0) {
+        throw new IOException("Only one nominal (class) attribute is supported: " + name);
+      }
+      String[] values = type.substring(1, type.length() - 1).split(",");
+      classes = new String[values.length];
+      for (int i = 0; i < values.length; i++) {
+        classes[i] = unquote(values[i].trim());
+      }
+      classColumn = attributes.size();
+      attributes.add(name);
+      numeric.add(false);
+    }
+    else {
+      throw new IOException("Unsupported attribute type '" + type + "' for " + name);
+    }
+  }
+
+  /**
+   * Removes the quotes surrounding a value, if there are any.
+   * @param value the value
+   * @return the unquoted value
+   */
+  private static String unquote(String value) {
+    if (value.length() >= 2 && (value.startsWith("'") && value.endsWith("'")
+                                || value.startsWith("\"") && value.endsWith("\""))) {
+      return value.substring(1, value.length() - 1);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,129 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Measures how quickly {@link ClusterAssigner} labels new points. Every tenth row of a dataset is
+ * held out, the rest are clustered, and the held-out rows are then assigned to the clusters one at
+ * a time and as a parallel batch.
+ *
+ * Usage: java AssignmentReport [file] [k] [metric ...]
+ *
+ * The file defaults to segment-full.arff, k to 7 and the metrics to every named metric. For every
+ * metric it prints the index used, the time to build it, the median, 99th percentile and largest
+ * single-point latency in microseconds, the batch throughput, the share of held-out rows whose
+ * nearest row the index found exactly (checked against a linear scan) and the share assigned to a
+ * cluster whose majority class is their own.
+ * @author Kurt Marcinkiewicz
+ */
+public class AssignmentReport {
+  private static final int HOLD_OUT = 10;
+
+  public static void main(String[] args) throws IOException {
+    File file = new File(args.length > 0 ? args[0] : "segment-full.arff");
+    int k = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+    DistanceMetric[] metrics = DistanceMetrics.values();
+    if (args.length > 2) {
+      metrics = new DistanceMetric[args.length - 2];
+      for (int i = 2; i < args.length; i++) {
+        metrics[i - 2] = DistanceMetrics.forName(args[i]);
+      }
+    }
+
+    FeatureMatrix all = DatasetSnapshot.load(file);
+    FeatureMatrix.Builder training = new FeatureMatrix.Builder(all.getFeatures(), all.getClasses());
+    int dimensions = all.getDimensions();
+    int heldOut = (all.getRows() + HOLD_OUT - 1) / HOLD_OUT;
+    double[] points = new double[heldOut * dimensions];
+    int[] classes = new int[heldOut];
+    double[] row = new double[dimensions];
+    for (int i = 0; i < all.getRows(); i++) {
+      System.arraycopy(all.getData(), i * dimensions, row, 0, dimensions);
+      if (i % HOLD_OUT == 0) {
+        System.arraycopy(row, 0, points, i / HOLD_OUT * dimensions, dimensions);
+        classes[i / HOLD_OUT] = all.getLabel(i);
+      }
+      else {
+        training.addRow(row, all.getLabel(i));
+      }
+    }
+    FeatureMatrix matrix = training.build();
+    System.out.println(matrix + ", " + heldOut + " held out, k = " + k);
+    System.out.println("metric, index, build ms, p50 us, p99 us, max us, batch points/s, exact, "
+                       + "majority");
+
+    for (DistanceMetric metric : metrics) {
+      MstEngine engine = KdTree.supports(metric) ? MstEngine.KD_TREE_BORUVKA : MstEngine.BORUVKA;
+      ClusterLabels clusters = new Dendrogram(engine.minimumSpanningTree(matrix, metric),
+                                              matrix.getRows()).labels(k);
+      int[] majorities = majorityClasses(clusters, matrix);
+
+      long start = System.nanoTime();
+      ClusterAssigner assigner = new ClusterAssigner(matrix, clusters, metric);
+      long buildNanos = System.nanoTime() - start;
+
+      long[] latencies = new long[heldOut];
+      int exact = 0;
+      int majority = 0;
+      double[] point = new double[dimensions];
+      for (int i = 0; i < heldOut; i++) {
+        System.arraycopy(points, i * dimensions, point, 0, dimensions);
+        start = System.nanoTime();
+        int cluster = assigner.assign(point);
+        latencies[i] = System.nanoTime() - start;
+
+        if (distanceTo(matrix, metric, point, assigner.nearest(point))
+            == distanceTo(matrix, metric, point, linearNearest(matrix, metric, point))) {
+          exact++;
+        }
+        if (cluster >= 0 && majorities[cluster] == classes[i]) {
+          majority++;
+        }
+      }
+
+      start = System.nanoTime();
+      assigner.assignAll(points, null);
+      double seconds = (System.nanoTime() - start) / 1e9;
+
+      Arrays.sort(latencies);
+      System.out.printf(Locale.ROOT, "%s, %s, %.1f, %.1f, %.1f, %.1f, %.0f, %.4f, %.4f%n",
+                        metric.getName(), assigner.getIndexType(), buildNanos / 1e6,
+                        latencies[heldOut / 2] / 1e3, latencies[heldOut * 99 / 100] / 1e3,
+                        latencies[heldOut - 1] / 1e3, heldOut / seconds,
+                        (double) exact / heldOut, (double) majority / heldOut);
+    }
+  }
+
+  private static int[] majorityClasses(ClusterLabels clusters, FeatureMatrix matrix) {
+    int[] majorities = new int[clusters.getClusterCount()];
+    ContingencyTable table = new ContingencyTable(clusters, matrix);
+    for (int cluster = 0; cluster < majorities.length; cluster++) {
+      for (int c = 1; c < matrix.getClassCount(); c++) {
+        if (table.getCount(cluster, c) > table.getCount(cluster, majorities[cluster])) {
+          majorities[cluster] = c;
+        }
+      }
+    }
+    return majorities;
+  }
+
+  private static int linearNearest(FeatureMatrix matrix, DistanceMetric metric, double[] point) {
+    double best = Double.POSITIVE_INFINITY;
+    int bestRow = -1;
+    for (int i = 0; i < matrix.getRows(); i++) {
+      double distance = distanceTo(matrix, metric, point, i);
+      if (distance < best) {
+        best = distance;
+        bestRow = i;
+      }
+    }
+    return bestRow;
+  }
+
+  private static double distanceTo(FeatureMatrix matrix, DistanceMetric metric, double[] point,
+                                   int row) {
+    return metric.distance(point, 0, matrix.getData(), row * matrix.getDimensions(),
+                           matrix.getDimensions());
+  }
+}
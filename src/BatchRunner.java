@@ -0,0 +1,424 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Clusters many datasets in one JVM, in the same way {@link ClusterCli} clusters one. Datasets are
+ * parsed on virtual threads when the JVM has them (Java 21 and later) and on a pool of platform
+ * threads otherwise, since parsing mostly waits on the disk. The MSTs and cuts are CPU bound, so
+ * they run on a fork-join pool with one thread per core, which also runs the parallel streams
+ * inside the MST engines. Before a parsed dataset may start, the heap its engine is estimated to
+ * need is reserved from a memory budget, so several large graphs never build at once; a dataset
+ * estimated to need more than the whole budget waits until it can run alone. The number of
+ * datasets parsed but not yet finished is bounded as well, so parsed datasets do not pile up while
+ * they wait.
+ *
+ * Usage: java BatchRunner --input DIR|MANIFEST --output DIR (--k LIST | --threshold LIST)...
+ * [--memory MB] [options]
+ *
+ * The input is either a directory, whose .arff files are all clustered, or a manifest listing one
+ * file per line, relative to the manifest, with blank lines and lines starting with # ignored.
+ * Every other option is the same as for {@link ClusterCli}, with --threads sizing the fork-join
+ * pool. The results of every dataset are written to a file of the same name in the output
+ * directory, and the timings of every dataset to batch.csv there.
+ * @author Kurt Marcinkiewicz
+ */
+public class BatchRunner {
+  private static final String USAGE =
+      "Usage: java BatchRunner --input DIR|MANIFEST --output DIR (--k LIST | --threshold LIST)... "
+      + "[options]\n"
+      + "  --input DIR|MANIFEST   a directory of .arff files, or a file listing one per line\n"
+      + "  --output DIR           the directory for the results of every file and batch.csv\n"
+      + "  --memory MB            the heap the running files may be estimated to need at once\n"
+      + "                         (default three quarters of the maximum heap)\n"
+      + "  --threads N            the number of threads clustering at once (default every "
+      + "processor)\n"
+      + "Every other option is as for java Main; see java Main --help.";
+  private static final String SUMMARY = "batch.csv";
+  /** the files that may be parsed or waiting to run at once, for every clustering thread */
+  private static final int QUEUED_PER_THREAD = 3;
+
+  private final ClusterCli.Options options;
+  private final File outputDirectory;
+  private final int memoryKb;
+  private final Semaphore memory;
+  private final Semaphore queued;
+  private final ForkJoinPool cpuPool;
+  private final ExecutorService ioExecutor;
+  private final boolean virtualThreads;
+
+  /**
+   * @param options the options every file is clustered with, whose input and output are ignored
+   * @param outputDirectory the directory to write the results to, which must exist
+   * @param memoryBudget the number of bytes the running files may be estimated to need at once
+   */
+  BatchRunner(ClusterCli.Options options, File outputDirectory, long memoryBudget) {
+    int threads = options.getThreads();
+    this.options = options;
+    this.outputDirectory = outputDirectory;
+    this.memoryKb = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudget / 1024));
+    this.memory = new Semaphore(memoryKb, true);
+    this.queued = new Semaphore(threads * QUEUED_PER_THREAD);
+    this.cpuPool = new ForkJoinPool(threads);
+    ExecutorService virtual = virtualThreadExecutor();
+    this.virtualThreads = virtual != null;
+    this.ioExecutor = virtual != null ? virtual
+                      : Executors.newFixedThreadPool(threads * QUEUED_PER_THREAD);
+  }
+
+  /**
+   * Runs the batch, exiting with status 2 if the arguments are invalid and 1 if any file fails.
+   * @param args the command line arguments
+   */
+  public static void main(String[] args) {
+    if (args.length == 1 && ("--help".equals(args[0]) || "-h".equals(args[0]))) {
+      System.out.println(USAGE);
+      return;
+    }
+
+    File input = null;
+    File output = null;
+    long memoryBudget = Runtime.getRuntime().maxMemory() / 4 * 3;
+    List<File> datasets;
+    ClusterCli.Options options;
+    try {
+      ArrayList<String> rest = new ArrayList<>();
+      for (int i = 0; i < args.length; i++) {
+        String flag = args[i];
+        boolean batchFlag = "--input".equals(flag) || "--output".equals(flag)
+                            || "--memory".equals(flag);
+        if (!batchFlag) {
+          rest.add(flag);
+          if (!"--labels".equals(flag) && i + 1 < args.length) {
+            rest.add(args[++i]);
+          }
+          continue;
+        }
+        if (i + 1 == args.length) {
+          throw new IllegalArgumentException("Missing value for " + flag);
+        }
+        String value = args[++i];
+        if ("--input".equals(flag)) {
+          input = new File(value);
+        }
+        else if ("--output".equals(flag)) {
+          output = new File(value);
+        }
+        else {
+          memoryBudget = parseMegabytes(value);
+        }
+      }
+      if (input == null || output == null) {
+        throw new IllegalArgumentException("--input and --output are required");
+      }
+      if (output.isFile()) {
+        throw new IllegalArgumentException(output + " is not a directory");
+      }
+      options = ClusterCli.Options.parse(rest.toArray(new String[0]), false);
+      datasets = datasets(input);
+    }
+    catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(2);
+      return;
+    }
+    catch (IOException e) {
+      System.err.println("Could not read " + input + ": " + e.getMessage());
+      System.exit(2);
+      return;
+    }
+
+    try {
+      Files.createDirectories(output.toPath());
+      BatchRunner runner = new BatchRunner(options, output, memoryBudget);
+      long start = System.nanoTime();
+      List<Job> jobs = runner.run(datasets);
+      double seconds = (System.nanoTime() - start) / 1e9;
+
+      int failed = 0;
+      for (Job job : jobs) {
+        if (job.error != null) {
+          failed++;
+          System.err.println(job.input + ": " + job.error);
+        }
+      }
+      System.out.printf(Locale.ROOT, "%d files (%d failed) in %.1f s, %.2f files/s, parsed on %s%n",
+                        jobs.size(), failed, seconds, jobs.size() / seconds,
+                        runner.virtualThreads ? "virtual threads" : "platform threads");
+      if (failed > 0) {
+        System.exit(1);
+      }
+    }
+    catch (IOException e) {
+      System.err.println("Could not write to " + output + ": " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Lists the datasets of a batch.
+   * @param input a directory, whose .arff files are listed in name order, or a manifest
+   * @return the datasets
+   * @throws IOException if the directory or manifest cannot be read
+   * @throws IllegalArgumentException if there are no datasets
+   */
+  public static List<File> datasets(File input) throws IOException {
+    ArrayList<File> datasets = new ArrayList<>();
+    if (input.isDirectory()) {
+      File[] files = input.listFiles((directory, name) ->
+          name.toLowerCase(Locale.ROOT).endsWith(".arff"));
+      if (files == null) {
+        throw new IOException("Cannot list " + input);
+      }
+      Arrays.sort(files);
+      datasets.addAll(Arrays.asList(files));
+    }
+    else {
+      File base = input.getAbsoluteFile().getParentFile();
+      for (String line : Files.readAllLines(input.toPath(), StandardCharsets.UTF_8)) {
+        String path = line.trim();
+        if (path.isEmpty() || path.startsWith("#")) {
+          continue;
+        }
+        File file = new File(path);
+        datasets.add(file.isAbsolute() ? file : new File(base, path));
+      }
+    }
+    if (datasets.isEmpty()) {
+      throw new IllegalArgumentException("No datasets in " + input);
+    }
+    return datasets;
+  }
+
+  /**
+   * Clusters every dataset and writes the timings of each to batch.csv in the output directory, in
+   * the order the datasets were given. A dataset that fails is recorded and does not stop the
+   * others.
+   * @param datasets the datasets
+   * @return the outcome of every dataset, in the same order
+   * @throws IOException if the timings cannot be written
+   */
+  public List<Job> run(List<File> datasets) throws IOException {
+    ArrayList<Job> jobs = new ArrayList<>(datasets.size());
+    HashSet<String> names = new HashSet<>();
+    for (File dataset : datasets) {
+      jobs.add(new Job(dataset, new File(outputDirectory, outputName(dataset, names))));
+    }
+
+    File summary = new File(outputDirectory, SUMMARY);
+    try (Writer writer = Files.newBufferedWriter(summary.toPath(), StandardCharsets.UTF_8)) {
+      writer.write("file,status,rows,dimensions,estimated_bytes,load_millis,wait_millis,"
+                   + "cluster_millis,total_millis,output,error\n");
+      ArrayList<Future<?>> futures = new ArrayList<>(jobs.size());
+      int next = 0;
+      for (Job job : jobs) {
+        queued.acquireUninterruptibly();
+        futures.add(ioExecutor.submit(() -> {
+          try {
+            run(job);
+          }
+          finally {
+            queued.release();
+          }
+        }));
+        for (; next < futures.size() && futures.get(next).isDone(); next++) {
+          writer.write(jobs.get(next).toCsv());
+          writer.flush();
+        }
+      }
+      for (; next < futures.size(); next++) {
+        futures.get(next).get();
+        writer.write(jobs.get(next).toCsv());
+        writer.flush();
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted", e);
+    }
+    catch (ExecutionException e) {
+      throw new IOException("A file could not be run", e.getCause());
+    }
+    finally {
+      ioExecutor.shutdownNow();
+      cpuPool.shutdownNow();
+    }
+    return jobs;
+  }
+
+  /**
+   * Parses a dataset on the calling thread, waits for its memory, and clusters it on the fork-join
+   * pool, recording the outcome in the job.
+   * @param job the job
+   */
+  private void run(Job job) {
+    long start = System.nanoTime();
+    ClusterCli.Options jobOptions = options.withFiles(job.input, job.output);
+    try {
+      FeatureMatrix matrix = ClusterCli.load(jobOptions);
+      long loadNanos = System.nanoTime() - start;
+      job.loadNanos = loadNanos;
+      job.rows = matrix.getRows();
+      job.dimensions = matrix.getDimensions();
+      job.estimatedBytes = (long) job.rows * (job.dimensions * Double.BYTES + Integer.BYTES)
+                           + options.getEngine().estimateMemory(job.rows, job.dimensions,
+                                                                options.getExternalBudget());
+
+      int permits = (int) Math.min(memoryKb, (job.estimatedBytes + 1023) / 1024);
+      long waitStart = System.nanoTime();
+      memory.acquire(permits);
+      try {
+        long clusterStart = System.nanoTime();
+        job.waitNanos = clusterStart - waitStart;
+        cpuPool.submit(() -> {
+          ClusterCli.run(jobOptions, matrix, loadNanos, Runnable::run);
+          return null;
+        }).get();
+        job.clusterNanos = System.nanoTime() - clusterStart;
+      }
+      finally {
+        memory.release(permits);
+      }
+    }
+    catch (ExecutionException e) {
+      job.error = describe(e.getCause());
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      job.error = "Interrupted";
+    }
+    catch (IOException | RuntimeException e) {
+      job.error = describe(e);
+    }
+    job.totalNanos = System.nanoTime() - start;
+  }
+
+  /**
+   * Names the results of a dataset after it, adding a number if another dataset of the batch has
+   * the same name.
+   * @param dataset the dataset
+   * @param names the names already taken, to which the new one is added
+   * @return the name
+   */
+  private String outputName(File dataset, HashSet<String> names) {
+    String name = dataset.getName();
+    if (name.toLowerCase(Locale.ROOT).endsWith(".arff")) {
+      name = name.substring(0, name.length() - ".arff".length());
+    }
+    String extension = options.isJson() ? ".json" : ".csv";
+    String unique = name + extension;
+    for (int i = 2; unique.equals(SUMMARY) || !names.add(unique); i++) {
+      unique = name + "-" + i + extension;
+    }
+    return unique;
+  }
+
+  private static long parseMegabytes(String value) {
+    try {
+      long megabytes = Long.parseLong(value.trim());
+      if (megabytes < 1) {
+        throw new IllegalArgumentException("--memory must be positive");
+      }
+      return megabytes << 20;
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException("--memory expects whole megabytes, not '" + value + "'");
+    }
+  }
+
+  /**
+   * Creates an executor that starts a virtual thread for every task, through reflection so this
+   * still compiles and runs on JVMs without virtual threads.
+   * @return the executor, or null if the JVM has no virtual threads
+   */
+  private static ExecutorService virtualThreadExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    }
+    catch (ReflectiveOperationException | UnsupportedOperationException e) {
+      return null;
+    }
+  }
+
+  private static String describe(Throwable e) {
+    return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+  }
+
+  /**
+   * The outcome and timings of one dataset of a batch.
+   */
+  public static final class Job {
+    private final File input;
+    private final File output;
+    private int rows;
+    private int dimensions;
+    private long estimatedBytes;
+    private long loadNanos;
+    private long waitNanos;
+    private long clusterNanos;
+    private long totalNanos;
+    private String error;
+
+    Job(File input, File output) {
+      this.input = input;
+      this.output = output;
+    }
+
+    /**
+     * @return the dataset
+     */
+    public File getInput() {
+      return input;
+    }
+
+    /**
+     * @return the file the results were written to
+     */
+    public File getOutput() {
+      return output;
+    }
+
+    /**
+     * @return why the dataset failed, or null if it succeeded
+     */
+    public String getError() {
+      return error;
+    }
+
+    /**
+     * @return the time taken from the start of parsing to the last result, in nanoseconds
+     */
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+
+    private String toCsv() {
+      return Quoting.csvString(input.getPath()) + ',' + (error == null ? "ok" : "failed")
+             + ',' + rows + ',' + dimensions + ',' + estimatedBytes
+             + ',' + millis(loadNanos) + ',' + millis(waitNanos) + ',' + millis(clusterNanos)
+             + ',' + millis(totalNanos)
+             + ',' + (error == null ? Quoting.csvString(output.getName()) : "")
+             + ',' + (error == null ? "" : Quoting.csvString(error)) + '\n';
+    }
+  }
+}
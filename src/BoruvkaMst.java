@@ -0,0 +1,211 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Finds MSTs with Boruvka's algorithm, spreading every round over the fork-join pool. Each round
+ * finds the cheapest edge leaving every component in parallel, then contracts the components along
+ * those edges with a {@link ConcurrentUnionFind}. There are at most log2(n) rounds.
+ *
+ * Ties are broken by node: of two edges of equal weight, the one with the smaller (larger node,
+ * smaller node) pair is considered cheaper. That is the order {@link EdgeList#sort()} and
+ * {@link ImageSegmentEdge#KRUSKAL_ORDER} give Kruskal's algorithm, so the MST is the same one
+ * Kruskal's algorithm finds, for any edge list and not only the complete graph.
+ * @author Kurt Marcinkiewicz
+ */
+public class BoruvkaMst {
+  private static final int NONE = -1;
+
+  private BoruvkaMst() { }
+
+  /**
+   * Finds the MST (or spanning forest) of a graph held in an edge list.
+   * @param edges the edges of the graph
+   * @param nodes the number of nodes in the graph
+   * @return the edges of the MST
+   */
+  public static ArrayList<ImageSegmentEdge> minimumSpanningTree(EdgeList edges, int nodes) {
+    ConcurrentUnionFind uf = new ConcurrentUnionFind(nodes);
+    AtomicIntegerArray cheapest = new AtomicIntegerArray(nodes);
+    ArrayList<ImageSegmentEdge> mst = new ArrayList<>(Math.max(nodes - 1, 0));
+    int[] live = IntStream.range(0, edges.size()).toArray();
+
+    while (live.length > 0) {
+      for (int i = 0; i < nodes; i++) {
+        cheapest.set(i, NONE);
+      }
+
+      int[] candidates = live;
+      IntStream.of(candidates).parallel().forEach(e -> {
+        int componentA = uf.find(edges.getA(e));
+        int componentB = uf.find(edges.getB(e));
+        if (componentA != componentB) {
+          offerEdge(edges, cheapest, componentA, e);
+          offerEdge(edges, cheapest, componentB, e);
+        }
+      });
+
+      int[] chosen = IntStream.range(0, nodes).parallel()
+          .map(cheapest::get)
+          .filter(e -> e != NONE)
+          .distinct()
+          .sorted()
+          .toArray();
+      if (chosen.length == 0) {
+        break;
+      }
+      mst.addAll(IntStream.of(chosen).parallel()
+                     .filter(e -> uf.union(edges.getA(e), edges.getB(e)))
+                     .mapToObj(edges::getEdge)
+                     .collect(Collectors.toList()));
+
+      live = IntStream.of(candidates).parallel()
+          .filter(e -> uf.find(edges.getA(e)) != uf.find(edges.getB(e)))
+          .toArray();
+    }
+    return mst;
+  }
+
+  /**
+   * Finds the MST of the complete graph over the rows of a feature matrix without building any
+   * edges. Every node remembers its nearest node outside its own component, which stays correct
+   * for as long as that node remains outside the component, so most nodes skip their O(n) scan in
+   * later rounds.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @return the edges of the MST
+   */
+  public static ArrayList<ImageSegmentEdge> minimumSpanningTree(FeatureMatrix matrix,
+                                                                DistanceMetric metric) {
+    int n = matrix.getRows();
+    ConcurrentUnionFind uf = new ConcurrentUnionFind(n);
+    AtomicIntegerArray cheapest = new AtomicIntegerArray(n);
+    int[] components = new int[n];
+    int[] nearest = new int[n];
+    double[] nearestDistances = new double[n];
+    ArrayList<ImageSegmentEdge> mst = new ArrayList<>(Math.max(n - 1, 0));
+    Arrays.fill(nearest, NONE);
+
+    while (mst.size() < n - 1) {
+      for (int i = 0; i < n; i++) {
+        cheapest.set(i, NONE);
+      }
+
+      IntStream.range(0, n).parallel().forEach(v -> components[v] = uf.find(v));
+      IntStream.range(0, n).parallel().forEach(v -> {
+        if (nearest[v] == NONE || components[nearest[v]] == components[v]) {
+          findNearest(matrix, metric, components, v, nearest, nearestDistances);
+        }
+        offerNode(nearest, nearestDistances, cheapest, components[v], v);
+      });
+
+      int before = mst.size();
+      mst.addAll(IntStream.range(0, n).parallel()
+                     .map(cheapest::get)
+                     .filter(v -> v != NONE && uf.union(v, nearest[v]))
+                     .mapToObj(v -> new ImageSegmentEdge(Math.max(v, nearest[v]),
+                                                         Math.min(v, nearest[v]),
+                                                         nearestDistances[v]))
+                     .collect(Collectors.toList()));
+      if (mst.size() == before) {
+        break;
+      }
+    }
+    return mst;
+  }
+
+  /**
+   * Scans every node outside the component of v for the one nearest to v, breaking ties in the
+   * order of {@link #isCheaper(double, int, int, double, int, int)}.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @param components the component of every node
+   * @param v the node
+   * @param nearest receives the nearest node at index v, or -1 if every node is in its component
+   * @param nearestDistances receives the distance to the nearest node at index v
+   */
+  static void findNearest(FeatureMatrix matrix, DistanceMetric metric, int[] components,
+                                  int v, int[] nearest, double[] nearestDistances) {
+    int best = NONE;
+    double bestDistance = Double.POSITIVE_INFINITY;
+    int component = components[v];
+
+    for (int u = 0; u < matrix.getRows(); u++) {
+      if (components[u] == component) {
+        continue;
+      }
+      double distance = matrix.distance(v, u, metric);
+      if (best == NONE || isCheaper(distance, v, u, bestDistance, v, best)) {
+        best = u;
+        bestDistance = distance;
+      }
+    }
+    nearest[v] = best;
+    nearestDistances[v] = bestDistance;
+  }
+
+  /**
+   * Records an edge as the cheapest leaving a component if it is cheaper than the current one, in
+   * the order of {@link #isCheaper(double, int, int, double, int, int)}.
+   */
+  private static void offerEdge(EdgeList edges, AtomicIntegerArray cheapest, int component,
+                                int e) {
+    while (true) {
+      int current = cheapest.get(component);
+      if (current != NONE && !isCheaper(edges.getWeight(e), edges.getA(e), edges.getB(e),
+                                        edges.getWeight(current), edges.getA(current),
+                                        edges.getB(current))) {
+        return;
+      }
+      if (cheapest.compareAndSet(component, current, e)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Records the edge from a node to its nearest node as the cheapest leaving the component of the
+   * node if it is cheaper than the current one, in the order of
+   * {@link #isCheaper(double, int, int, double, int, int)}. Safe to call from several threads.
+   * @param nearest the nearest node outside its component of every node, or -1 if none
+   * @param nearestDistances the distance from every node to its nearest node
+   * @param cheapest the node whose edge is the cheapest leaving every component so far, or -1
+   * @param component the component of the node
+   * @param v the node
+   */
+  static void offerNode(int[] nearest, double[] nearestDistances,
+                                AtomicIntegerArray cheapest, int component, int v) {
+    if (nearest[v] == NONE) {
+      return;
+    }
+    while (true) {
+      int current = cheapest.get(component);
+      if (current != NONE && !isCheaper(nearestDistances[v], v, nearest[v],
+                                        nearestDistances[current], current, nearest[current])) {
+        return;
+      }
+      if (cheapest.compareAndSet(component, current, v)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Compares two edges of the complete graph by weight, then by their larger node, then by their
+   * smaller node, the order in which Kruskal's algorithm sees them.
+   * @return true if the edge (a1, b1) is cheaper than the edge (a2, b2)
+   */
+  static boolean isCheaper(double weight1, int a1, int b1, double weight2, int a2, int b2) {
+    if (weight1 != weight2) {
+      return weight1 < weight2;
+    }
+    int high1 = Math.max(a1, b1);
+    int high2 = Math.max(a2, b2);
+    if (high1 != high2) {
+      return high1 < high2;
+    }
+    return Math.min(a1, b1) < Math.min(a2, b2);
+  }
+}
@@ -0,0 +1,143 @@
+import java.util.stream.IntStream;
+
+/**
+ * Assigns new points to existing single-link clusters without clustering again. A new point joins
+ * the cluster of its nearest clustered row, which is the cluster single-link clustering would merge
+ * it into first. The nearest row is found through an index built once over the clustered rows: a
+ * {@link KdTree} in low dimensions, where its boxes prune well, a {@link VpTree} otherwise or for
+ * metrics the k-d tree does not support, and a linear scan for the cosine distance, which neither
+ * can search with. On the 19 features of the image segments the vp-tree answers several times
+ * faster than the k-d tree.
+ *
+ * Points must be given in the same feature space as the clustered rows, so if the rows were
+ * normalized the points must be normalized the same way. An assigner is safe to use from many
+ * threads at once.
+ * @author Kurt Marcinkiewicz
+ */
+public class ClusterAssigner {
+  private static final int KD_TREE_MAX_DIMENSIONS = 8;
+
+  private final FeatureMatrix matrix;
+  private final int[] labels;
+  private final DistanceMetric metric;
+  private final KdTree kdTree;
+  private final VpTree vpTree;
+
+  /**
+   * Builds the index over the clustered rows.
+   * @param matrix the clustered rows
+   * @param clusters the cluster of every row
+   * @param metric the distance metric the rows were clustered with
+   * @throws IllegalArgumentException if the clusters do not label every row, or the metric cannot
+   * measure the rows
+   */
+  public ClusterAssigner(FeatureMatrix matrix, ClusterLabels clusters, DistanceMetric metric) {
+    metric.checkDimensions(matrix.getDimensions());
+    if (clusters.getNodeCount() != matrix.getRows()) {
+      throw new IllegalArgumentException("There are " + clusters.getNodeCount() + " labels for "
+                                         + matrix.getRows() + " rows");
+    }
+    this.matrix = matrix;
+    this.labels = clusters.getLabels();
+    this.metric = metric;
+    boolean lowDimensional = matrix.getDimensions() <= KD_TREE_MAX_DIMENSIONS;
+    this.vpTree = VpTree.supports(metric) && !(lowDimensional && KdTree.supports(metric))
+                  ? new VpTree(matrix, metric) : null;
+    this.kdTree = vpTree == null && KdTree.supports(metric) ? new KdTree(matrix) : null;
+  }
+
+  /**
+   * Finds the clustered row nearest to a point.
+   * @param features the features of the point
+   * @return the nearest row, or -1 if there are no rows
+   * @throws IllegalArgumentException if the point has the wrong number of features
+   */
+  public int nearest(double[] features) {
+    if (features.length != matrix.getDimensions()) {
+      throw new IllegalArgumentException("Expected " + matrix.getDimensions()
+                                         + " features but found " + features.length);
+    }
+    return nearest(features, 0);
+  }
+
+  /**
+   * Finds the cluster a point belongs to.
+   * @param features the features of the point
+   * @return the cluster of the nearest clustered row, or -1 if there are no rows
+   * @throws IllegalArgumentException if the point has the wrong number of features
+   */
+  public int assign(double[] features) {
+    int row = nearest(features);
+    return row < 0 ? -1 : labels[row];
+  }
+
+  /**
+   * Finds the cluster an image segment belongs to.
+   * @param node the image segment
+   * @return the cluster of the nearest clustered row, or -1 if there are no rows
+   */
+  public int assign(ImageSegmentNode node) {
+    return assign(node.getFeatures());
+  }
+
+  /**
+   * Finds the clusters of a batch of points in parallel across the common fork-join pool.
+   * @param points the features of every point, one point after another
+   * @param nanos if not null, receives the time taken to assign every point in nanoseconds
+   * @return the cluster of every point
+   * @throws IllegalArgumentException if the length of the batch is not a multiple of the number of
+   * features, or nanos is too short
+   */
+  public int[] assignAll(double[] points, long[] nanos) {
+    int dimensions = matrix.getDimensions();
+    if (dimensions == 0 || points.length % dimensions != 0) {
+      throw new IllegalArgumentException("The batch does not hold whole points of " + dimensions
+                                         + " features");
+    }
+    int count = points.length / dimensions;
+    if (nanos != null && nanos.length < count) {
+      throw new IllegalArgumentException("Room for " + nanos.length + " timings but there are "
+                                         + count + " points");
+    }
+
+    int[] clusters = new int[count];
+    IntStream.range(0, count).parallel().forEach(i -> {
+      long start = nanos == null ? 0 : System.nanoTime();
+      int row = nearest(points, i * dimensions);
+      clusters[i] = row < 0 ? -1 : labels[row];
+      if (nanos != null) {
+        nanos[i] = System.nanoTime() - start;
+      }
+    });
+    return clusters;
+  }
+
+  /**
+   * @return the kind of index searched: "k-d tree", "vp-tree" or "linear scan"
+   */
+  public String getIndexType() {
+    return kdTree != null ? "k-d tree" : vpTree != null ? "vp-tree" : "linear scan";
+  }
+
+  private int nearest(double[] query, int offset) {
+    if (kdTree != null) {
+      return kdTree.nearest(query, offset, metric);
+    }
+    else if (vpTree != null) {
+      return vpTree.nearest(query, offset);
+    }
+
+    double[] data = matrix.getData();
+    int dimensions = matrix.getDimensions();
+    double best = Double.POSITIVE_INFINITY;
+    int bestRow = -1;
+    for (int row = 0; row < matrix.getRows(); row++) {
+      double distance = metric.distance(query, offset, data, row * dimensions, dimensions);
+      if (distance < best) {
+        best = distance;
+        bestRow = row;
+      }
+    }
+    return bestRow;
+  }
+}
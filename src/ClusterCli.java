@@ -0,0 +1,608 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The non-interactive counterpart of {@link Main}, for scripted runs. Every choice is given as a
+ * flag and checked before any work starts, the MST and dendrogram are built once, and the
+ * requested cuts are evaluated concurrently against the shared, read-only dendrogram. Results are
+ * written as CSV or JSON in the order the cuts were given, each as soon as it and every cut before
+ * it are done, so a long sweep can be followed (or piped) while it runs.
+ *
+ * Usage: java Main --input file.arff [--k 7,50,100:500:100] [--threshold 0.5,1.5] [options]
+ * @author Kurt Marcinkiewicz
+ */
+public class ClusterCli {
+  private static final String USAGE =
+      "Usage: java Main --input FILE (--k LIST | --threshold LIST)... [options]\n"
+      + "  --input FILE           the .arff file to cluster\n"
+      + "  --k LIST               cluster counts, as comma separated numbers or FROM:TO[:STEP] "
+      + "ranges\n"
+      + "  --threshold LIST       comma separated distances to cut the dendrogram at\n"
+      + "  --metric NAME          the distance metric (default euclidean)\n"
+      + "  --engine NAME          the MST engine (default prim)\n"
+      + "  --external-budget MB   the heap the edges of external-kruskal may take up (default a "
+      + "quarter\n"
+      + "                         of the maximum heap)\n"
+      + "  --normalization NAME   none, zscore or minmax (default none)\n"
+      + "  --output FILE          the file to write to (default standard output)\n"
+      + "  --format csv|json      the output format (default json for .json files, csv otherwise)\n"
+      + "  --labels               include the cluster label of every row\n"
+      + "  --threads N            the number of cuts evaluated at once (default every processor)";
+
+  private ClusterCli() { }
+
+  /**
+   * Runs the command line, exiting with status 2 if the arguments are invalid and 1 if the run
+   * fails.
+   * @param args the command line arguments
+   */
+  public static void main(String[] args) {
+    if (args.length == 1 && ("--help".equals(args[0]) || "-h".equals(args[0]))) {
+      System.out.println(USAGE);
+      return;
+    }
+
+    Options options;
+    try {
+      options = Options.parse(args);
+    }
+    catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(2);
+      return;
+    }
+
+    try {
+      run(options);
+    }
+    catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.exit(2);
+    }
+    catch (IOException e) {
+      System.err.println("Could not cluster " + options.input + ": " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Loads the dataset, builds the dendrogram and writes the result of every cut.
+   * @param options the parsed options
+   * @throws IllegalArgumentException if a cut asks for more clusters than the dataset has rows
+   * @throws IOException if the input cannot be read or the output cannot be written
+   */
+  static void run(Options options) throws IOException {
+    long start = System.nanoTime();
+    FeatureMatrix matrix = load(options);
+    long loadNanos = System.nanoTime() - start;
+
+    ExecutorService executor = Executors.newFixedThreadPool(options.threads);
+    try {
+      run(options, matrix, loadNanos, executor);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Loads and normalizes the dataset named by the options, and checks the options against it
+   * before any distance is computed.
+   * @param options the parsed options
+   * @return the feature matrix
+   * @throws IllegalArgumentException if a cut asks for more clusters than the dataset has rows, or
+   * the metric cannot measure its rows
+   * @throws IOException if the input cannot be read
+   */
+  static FeatureMatrix load(Options options) throws IOException {
+    FeatureMatrix matrix = options.normalization.apply(DatasetSnapshot.load(options.input));
+    options.check(matrix);
+    return matrix;
+  }
+
+  /**
+   * Builds the dendrogram of a loaded dataset and writes the result of every cut.
+   * @param options the parsed options
+   * @param matrix the loaded dataset
+   * @param loadNanos the time taken to load the dataset, for the output
+   * @param executor evaluates the cuts, at most twice the thread count at a time
+   * @throws IllegalArgumentException if a cut asks for more clusters than the dataset has rows, or
+   * the metric cannot measure its rows
+   * @throws IOException if the output cannot be written
+   */
+  static void run(Options options, FeatureMatrix matrix, long loadNanos, Executor executor)
+      throws IOException {
+    options.check(matrix);
+    int rows = matrix.getRows();
+
+    long start = System.nanoTime();
+    ArrayList<ImageSegmentEdge> mst = options.engine.minimumSpanningTree(matrix, options.metric,
+                                                                         options.externalBudget);
+    Dendrogram dendrogram = new Dendrogram(mst, rows);
+    long mstNanos = System.nanoTime() - start;
+
+    boolean toFile = options.output != null;
+    Writer writer = toFile
+        ? Files.newBufferedWriter(options.output.toPath(), StandardCharsets.UTF_8)
+        : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+    ResultWriter results = options.json ? new JsonWriter(writer) : new CsvWriter(writer);
+
+    try {
+      results.begin(options, matrix, loadNanos, mstNanos);
+
+      ArrayList<Cut> cuts = options.cuts();
+      ArrayDeque<Future<Result>> pending = new ArrayDeque<>();
+      int window = options.threads * 2;
+      for (int i = 0; i < cuts.size() || !pending.isEmpty(); ) {
+        while (i < cuts.size() && pending.size() < window) {
+          Cut cut = cuts.get(i++);
+          FutureTask<Result> task =
+              new FutureTask<>(() -> cut.evaluate(dendrogram, matrix, options.labels));
+          executor.execute(task);
+          pending.add(task);
+        }
+        results.write(pending.remove().get());
+      }
+      results.end();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted", e);
+    }
+    catch (ExecutionException e) {
+      throw new IOException("A cut failed", e.getCause());
+    }
+    finally {
+      if (toFile) {
+        writer.close();
+      }
+      else {
+        writer.flush();
+      }
+    }
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+  }
+
+  /**
+   * The command line options, validated as they are parsed.
+   */
+  static final class Options {
+    private File input;
+    /** every --k as a {from, to, step} range, expanded only once the rows are known */
+    private final ArrayList<int[]> kRanges = new ArrayList<>();
+    private final ArrayList<Double> thresholds = new ArrayList<>();
+    private DistanceMetric metric = DistanceMetrics.EUCLIDEAN;
+    private MstEngine engine = MstEngine.PRIM;
+    private long externalBudget = ExternalKruskal.DEFAULT_MEMORY_BUDGET;
+    private Normalization normalization = Normalization.NONE;
+    private File output;
+    private boolean json;
+    private boolean labels;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private Options() { }
+
+    /**
+     * Copies the options of another run, with a different input and output.
+     */
+    private Options(Options options, File input, File output) {
+      this.input = input;
+      this.kRanges.addAll(options.kRanges);
+      this.thresholds.addAll(options.thresholds);
+      this.metric = options.metric;
+      this.engine = options.engine;
+      this.externalBudget = options.externalBudget;
+      this.normalization = options.normalization;
+      this.output = output;
+      this.json = options.json;
+      this.labels = options.labels;
+      this.threads = options.threads;
+    }
+
+    /**
+     * @param args the command line arguments
+     * @return the options
+     * @throws IllegalArgumentException if any argument is unknown, missing its value or invalid,
+     * if the input is not a readable file, or if no cut is given
+     */
+    static Options parse(String[] args) {
+      return parse(args, true);
+    }
+
+    /**
+     * @param args the command line arguments
+     * @param requireInput whether --input must name a readable file, as it need not when the
+     * options are a template for {@link #withFiles(File, File)}
+     * @return the options
+     * @throws IllegalArgumentException if any argument is unknown, missing its value or invalid,
+     * if the input is required but not a readable file, or if no cut is given
+     */
+    static Options parse(String[] args, boolean requireInput) {
+      Options options = new Options();
+      String format = null;
+
+      for (int i = 0; i < args.length; i++) {
+        String flag = args[i];
+        if ("--labels".equals(flag)) {
+          options.labels = true;
+          continue;
+        }
+        if (i + 1 == args.length) {
+          throw new IllegalArgumentException("Missing value for " + flag);
+        }
+        String value = args[++i];
+        switch (flag) {
+          case "--input":
+            options.input = new File(value);
+            break;
+          case "--k":
+            for (String part : value.split(",")) {
+              options.addKs(part.trim());
+            }
+            break;
+          case "--threshold":
+            for (String part : value.split(",")) {
+              double threshold = parseDouble(flag, part.trim());
+              if (!(threshold >= 0) || Double.isInfinite(threshold)) {
+                throw new IllegalArgumentException("Thresholds must be finite and not negative: "
+                                                   + part);
+              }
+              options.thresholds.add(threshold);
+            }
+            break;
+          case "--metric":
+            options.metric = DistanceMetrics.forName(value);
+            break;
+          case "--engine":
+            options.engine = MstEngine.forName(value);
+            break;
+          case "--external-budget":
+            int megabytes = parseInt(flag, value);
+            if (megabytes < 1) {
+              throw new IllegalArgumentException("--external-budget must be at least 1 MB");
+            }
+            options.externalBudget = (long) megabytes << 20;
+            break;
+          case "--normalization":
+            options.normalization = Normalization.get(value);
+            break;
+          case "--output":
+            options.output = new File(value);
+            break;
+          case "--format":
+            format = value.toLowerCase(Locale.ROOT);
+            if (!"csv".equals(format) && !"json".equals(format)) {
+              throw new IllegalArgumentException("Unknown format: " + value);
+            }
+            break;
+          case "--threads":
+            options.threads = parseInt(flag, value);
+            if (options.threads < 1) {
+              throw new IllegalArgumentException("--threads must be positive");
+            }
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option: " + flag);
+        }
+      }
+
+      if (requireInput && options.input == null) {
+        throw new IllegalArgumentException("--input is required");
+      }
+      if (requireInput && (!options.input.isFile() || !options.input.canRead())) {
+        throw new IllegalArgumentException("Cannot read " + options.input);
+      }
+      if (options.kRanges.isEmpty() && options.thresholds.isEmpty()) {
+        throw new IllegalArgumentException("At least one --k or --threshold is required");
+      }
+      if (options.output != null && options.output.isDirectory()) {
+        throw new IllegalArgumentException(options.output + " is a directory");
+      }
+      options.json = format == null
+                     ? options.output != null
+                       && options.output.getName().toLowerCase(Locale.ROOT).endsWith(".json")
+                     : "json".equals(format);
+      return options;
+    }
+
+    /**
+     * @param input the .arff file to cluster
+     * @param output the file to write to, or null for standard output
+     * @return a copy of these options for another input and output, keeping the output format
+     */
+    Options withFiles(File input, File output) {
+      return new Options(this, input, output);
+    }
+
+    /**
+     * @return the MST engine
+     */
+    MstEngine getEngine() {
+      return engine;
+    }
+
+    /**
+     * @return the number of bytes of heap the edges of EXTERNAL_KRUSKAL may take up at once
+     */
+    long getExternalBudget() {
+      return externalBudget;
+    }
+
+    /**
+     * @return true if the results are written as JSON, false for CSV
+     */
+    boolean isJson() {
+      return json;
+    }
+
+    /**
+     * @return the number of threads asked for
+     */
+    int getThreads() {
+      return threads;
+    }
+
+    /**
+     * Adds a single k, or a FROM:TO[:STEP] range of them.
+     */
+    private void addKs(String part) {
+      String[] bounds = part.split(":");
+      if (bounds.length > 3) {
+        throw new IllegalArgumentException("Invalid k range: " + part);
+      }
+      int from = parseInt("--k", bounds[0]);
+      int to = bounds.length > 1 ? parseInt("--k", bounds[1]) : from;
+      int step = bounds.length > 2 ? parseInt("--k", bounds[2]) : 1;
+      if (from < 1 || to < from || step < 1) {
+        throw new IllegalArgumentException("k must be positive and ranges must ascend with a "
+                                           + "positive step: " + part);
+      }
+      kRanges.add(new int[] {from, to, step});
+    }
+
+    /**
+     * @param range a {from, to, step} range
+     * @return the largest k of the range
+     */
+    private static int last(int[] range) {
+      return range[1] - (range[1] - range[0]) % range[2];
+    }
+
+    /**
+     * Checks the options against a loaded dataset.
+     * @param matrix the dataset
+     * @throws IllegalArgumentException if a cut asks for more clusters than the dataset has
+     * rows, or the metric cannot measure its rows
+     */
+    private void check(FeatureMatrix matrix) {
+      int rows = matrix.getRows();
+      for (int[] range : kRanges) {
+        if (last(range) > rows) {
+          throw new IllegalArgumentException("Cannot make " + last(range) + " clusters from " + rows
+                                             + " rows");
+        }
+      }
+      metric.checkDimensions(matrix.getDimensions());
+    }
+
+    private static int parseInt(String flag, String value) {
+      try {
+        return Integer.parseInt(value.trim());
+      }
+      catch (NumberFormatException e) {
+        throw new IllegalArgumentException(flag + " expects whole numbers, not '" + value + "'");
+      }
+    }
+
+    private static double parseDouble(String flag, String value) {
+      try {
+        return Double.parseDouble(value);
+      }
+      catch (NumberFormatException e) {
+        throw new IllegalArgumentException(flag + " expects numbers, not '" + value + "'");
+      }
+    }
+
+    /**
+     * @return every requested cut, the cluster counts first, in the order they were given, which
+     * must have been checked with {@link #check(FeatureMatrix)} so that the ranges are bounded by
+     * the rows
+     */
+    private ArrayList<Cut> cuts() {
+      ArrayList<Cut> cuts = new ArrayList<>();
+      for (int[] range : kRanges) {
+        for (long k = range[0]; k <= last(range); k += range[2]) {
+          cuts.add(new Cut((int) k, Double.NaN));
+        }
+      }
+      for (double threshold : thresholds) {
+        cuts.add(new Cut(0, threshold));
+      }
+      return cuts;
+    }
+  }
+
+  /**
+   * A requested cut of the dendrogram, either into k clusters or at a distance threshold.
+   */
+  private static final class Cut {
+    private final int k;
+    private final double threshold;
+
+    Cut(int k, double threshold) {
+      this.k = k;
+      this.threshold = threshold;
+    }
+
+    Result evaluate(Dendrogram dendrogram, FeatureMatrix matrix, boolean keepLabels) {
+      long start = System.nanoTime();
+      int clusters = Double.isNaN(threshold) ? k : dendrogram.clustersAtThreshold(threshold);
+      ClusterLabels labels = dendrogram.labels(clusters);
+      ClusterEvaluation evaluation = new ContingencyTable(labels, matrix).evaluate();
+      return new Result(this, evaluation, System.nanoTime() - start,
+                        keepLabels ? labels.getLabels() : null);
+    }
+  }
+
+  /**
+   * The outcome of a cut.
+   */
+  private static final class Result {
+    private final Cut cut;
+    private final ClusterEvaluation evaluation;
+    private final long nanos;
+    private final int[] labels;
+
+    Result(Cut cut, ClusterEvaluation evaluation, long nanos, int[] labels) {
+      this.cut = cut;
+      this.evaluation = evaluation;
+      this.nanos = nanos;
+      this.labels = labels;
+    }
+  }
+
+  /**
+   * Streams results in one output format, flushing after every result.
+   */
+  private abstract static class ResultWriter {
+    protected final Writer writer;
+
+    ResultWriter(Writer writer) {
+      this.writer = writer;
+    }
+
+    abstract void begin(Options options, FeatureMatrix matrix, long loadNanos, long mstNanos)
+        throws IOException;
+
+    abstract void write(Result result) throws IOException;
+
+    abstract void end() throws IOException;
+  }
+
+  /**
+   * One line per cut. The labels, when asked for, are a single space separated column.
+   */
+  private static final class CsvWriter extends ResultWriter {
+    private boolean labels;
+
+    CsvWriter(Writer writer) {
+      super(writer);
+    }
+
+    @Override
+    void begin(Options options, FeatureMatrix matrix, long loadNanos, long mstNanos)
+        throws IOException {
+      labels = options.labels;
+      writer.write("k,threshold,clusters,purity,ari,nmi,homogeneity,completeness,v_measure,millis"
+                   + (labels ? ",labels\n" : "\n"));
+      writer.flush();
+    }
+
+    @Override
+    void write(Result result) throws IOException {
+      StringBuilder sb = new StringBuilder();
+      sb.append(Double.isNaN(result.cut.threshold) ? String.valueOf(result.cut.k) : "")
+          .append(',').append(Double.isNaN(result.cut.threshold) ? "" : result.cut.threshold)
+          .append(',').append(result.evaluation.getClusters())
+          .append(',').append(result.evaluation.getPurity())
+          .append(',').append(result.evaluation.getAdjustedRandIndex())
+          .append(',').append(result.evaluation.getNormalizedMutualInformation())
+          .append(',').append(result.evaluation.getHomogeneity())
+          .append(',').append(result.evaluation.getCompleteness())
+          .append(',').append(result.evaluation.getVMeasure())
+          .append(',').append(millis(result.nanos));
+      if (labels) {
+        sb.append(',');
+        for (int i = 0; i < result.labels.length; i++) {
+          sb.append(i == 0 ? "" : " ").append(result.labels[i]);
+        }
+      }
+      writer.write(sb.append('\n').toString());
+      writer.flush();
+    }
+
+    @Override
+    void end() throws IOException {
+      writer.flush();
+    }
+  }
+
+  /**
+   * A single JSON object describing the run, whose results array grows one cut at a time.
+   */
+  private static final class JsonWriter extends ResultWriter {
+    private boolean first = true;
+
+    JsonWriter(Writer writer) {
+      super(writer);
+    }
+
+    @Override
+    void begin(Options options, FeatureMatrix matrix, long loadNanos, long mstNanos)
+        throws IOException {
+      writer.write("{\"input\": " + Quoting.jsonString(options.input.getPath())
+                   + ", \"rows\": " + matrix.getRows()
+                   + ", \"dimensions\": " + matrix.getDimensions()
+                   + ", \"metric\": " + Quoting.jsonString(options.metric.getName())
+                   + ", \"engine\": " + Quoting.jsonString(options.engine.name())
+                   + ", \"normalization\": " + Quoting.jsonString(options.normalization.getValue())
+                   + ", \"loadMillis\": " + millis(loadNanos)
+                   + ", \"mstMillis\": " + millis(mstNanos)
+                   + ", \"results\": [");
+      writer.flush();
+    }
+
+    @Override
+    void write(Result result) throws IOException {
+      StringBuilder sb = new StringBuilder(first ? "\n  {" : ",\n  {");
+      first = false;
+      if (Double.isNaN(result.cut.threshold)) {
+        sb.append("\"k\": ").append(result.cut.k);
+      }
+      else {
+        sb.append("\"threshold\": ").append(result.cut.threshold);
+      }
+      sb.append(", \"clusters\": ").append(result.evaluation.getClusters())
+          .append(", \"purity\": ").append(result.evaluation.getPurity())
+          .append(", \"ari\": ").append(result.evaluation.getAdjustedRandIndex())
+          .append(", \"nmi\": ").append(result.evaluation.getNormalizedMutualInformation())
+          .append(", \"homogeneity\": ").append(result.evaluation.getHomogeneity())
+          .append(", \"completeness\": ").append(result.evaluation.getCompleteness())
+          .append(", \"vMeasure\": ").append(result.evaluation.getVMeasure())
+          .append(", \"millis\": ").append(millis(result.nanos));
+      if (result.labels != null) {
+        sb.append(", \"labels\": [");
+        for (int i = 0; i < result.labels.length; i++) {
+          sb.append(i == 0 ? "" : ",").append(result.labels[i]);
+        }
+        sb.append(']');
+      }
+      writer.write(sb.append('}').toString());
+      writer.flush();
+    }
+
+    @Override
+    void end() throws IOException {
+      writer.write(first ? "]}\n" : "\n]}\n");
+      writer.flush();
+    }
+  }
+}
@@ -0,0 +1,93 @@
+import java.util.Locale;
+
+/**
+ * The scores of a clustering against the known classes of its rows, as computed by a
+ * {@link ContingencyTable}.
+ * @author Kurt Marcinkiewicz
+ */
+public class ClusterEvaluation {
+  private final int clusters;
+  private final double purity;
+  private final double adjustedRandIndex;
+  private final double normalizedMutualInformation;
+  private final double homogeneity;
+  private final double completeness;
+  private final double vMeasure;
+
+  /**
+   * @param clusters the number of clusters
+   * @param purity the purity
+   * @param adjustedRandIndex the adjusted Rand index
+   * @param normalizedMutualInformation the normalized mutual information
+   * @param homogeneity the homogeneity
+   * @param completeness the completeness
+   * @param vMeasure the V-measure
+   */
+  public ClusterEvaluation(int clusters, double purity, double adjustedRandIndex,
+                           double normalizedMutualInformation, double homogeneity,
+                           double completeness, double vMeasure) {
+    this.clusters = clusters;
+    this.purity = purity;
+    this.adjustedRandIndex = adjustedRandIndex;
+    this.normalizedMutualInformation = normalizedMutualInformation;
+    this.homogeneity = homogeneity;
+    this.completeness = completeness;
+    this.vMeasure = vMeasure;
+  }
+
+  /**
+   * @return the number of clusters
+   */
+  public int getClusters() {
+    return clusters;
+  }
+
+  /**
+   * @return the share of rows in the majority class of their cluster
+   */
+  public double getPurity() {
+    return purity;
+  }
+
+  /**
+   * @return the adjusted Rand index
+   */
+  public double getAdjustedRandIndex() {
+    return adjustedRandIndex;
+  }
+
+  /**
+   * @return the normalized mutual information
+   */
+  public double getNormalizedMutualInformation() {
+    return normalizedMutualInformation;
+  }
+
+  /**
+   * @return the homogeneity
+   */
+  public double getHomogeneity() {
+    return homogeneity;
+  }
+
+  /**
+   * @return the completeness
+   */
+  public double getCompleteness() {
+    return completeness;
+  }
+
+  /**
+   * @return the V-measure
+   */
+  public double getVMeasure() {
+    return vMeasure;
+  }
+
+  public String toString() {
+    return String.format(Locale.ROOT, "ClusterEvaluation{clusters=%d, purity=%.6f, ari=%.6f, "
+                                      + "nmi=%.6f, homogeneity=%.6f, completeness=%.6f, "
+                                      + "v=%.6f}", clusters, purity, adjustedRandIndex,
+                         normalizedMutualInformation, homogeneity, completeness, vMeasure);
+  }
+}
@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * A compact assignment of nodes to clusters. Every node has an int label, and the members of each
+ * cluster are stored contiguously in a single array, found through the cluster offsets. Clusters are
+ * numbered in order of their smallest node, the same order as
+ * {@link Algorithms#clustersFromEdges(ArrayList, ArrayList, int)}.
+ * @author Kurt Marcinkiewicz
+ */
+public class ClusterLabels {
+  private final int[] labels;
+  private final int[] offsets;
+  private final int[] members;
+
+  /**
+   * @param labels the cluster of every node, numbered 0 to clusters - 1
+   * @param clusters the number of clusters
+   */
+  public ClusterLabels(int[] labels, int clusters) {
+    this.labels = labels;
+    this.offsets = new int[clusters + 1];
+    this.members = new int[labels.length];
+
+    for (int label : labels) {
+      offsets[label + 1]++;
+    }
+    for (int i = 0; i < clusters; i++) {
+      offsets[i + 1] += offsets[i];
+    }
+    int[] positions = offsets.clone();
+    for (int i = 0; i < labels.length; i++) {
+      members[positions[labels[i]]++] = i;
+    }
+  }
+
+  /**
+   * Labels the nodes by the roots of a Union-Find, numbering clusters in order of their smallest
+   * node.
+   * @param uf the Union-Find holding the clusters
+   * @param nodes the number of nodes
+   * @return the cluster labels
+   */
+  static ClusterLabels fromUnionFind(UnionFind uf, int nodes) {
+    int[] labels = new int[nodes];
+    int[] rootLabels = new int[nodes];
+    int clusters = 0;
+
+    for (int i = 0; i < nodes; i++) {
+      int root = uf.find(i);
+      if (rootLabels[root] == 0) {
+        rootLabels[root] = ++clusters;
+      }
+      labels[i] = rootLabels[root] - 1;
+    }
+    return new ClusterLabels(labels, clusters);
+  }
+
+  /**
+   * @return the number of nodes
+   */
+  public int getNodeCount() {
+    return labels.length;
+  }
+
+  /**
+   * @return the number of clusters
+   */
+  public int getClusterCount() {
+    return offsets.length - 1;
+  }
+
+  /**
+   * @param node the node
+   * @return the cluster the node belongs to
+   */
+  public int getLabel(int node) {
+    return labels[node];
+  }
+
+  /**
+   * @return the cluster of every node. The array is shared, not copied
+   */
+  public int[] getLabels() {
+    return labels;
+  }
+
+  /**
+   * @return the start of every cluster within {@link #getMembers()}, followed by the number of
+   * nodes. The array is shared, not copied
+   */
+  public int[] getOffsets() {
+    return offsets;
+  }
+
+  /**
+   * @return the nodes of every cluster, stored one cluster after another. The array is shared, not
+   * copied
+   */
+  public int[] getMembers() {
+    return members;
+  }
+
+  /**
+   * @param cluster the cluster
+   * @return the number of nodes in the cluster
+   */
+  public int clusterSize(int cluster) {
+    return offsets[cluster + 1] - offsets[cluster];
+  }
+
+  /**
+   * Converts the labels into the list of HashSets used by the original cluster extraction.
+   * @return the list of clusters
+   */
+  public ArrayList<HashSet<Integer>> toHashSets() {
+    ArrayList<HashSet<Integer>> clusters = new ArrayList<>(getClusterCount());
+
+    for (int i = 0; i < getClusterCount(); i++) {
+      HashSet<Integer> cluster = new HashSet<>(clusterSize(i) * 2);
+      for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+        cluster.add(members[j]);
+      }
+      clusters.add(cluster);
+    }
+    return clusters;
+  }
+}
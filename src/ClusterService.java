@@ -0,0 +1,330 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long-lived local HTTP service that keeps parsed datasets and their dendrograms in memory, so
+ * that asking for the clusters of a dataset at another k or threshold costs a cut of the dendrogram
+ * instead of a parse and an MST. Datasets are cached by the SHA-256 hash of the file contents (and
+ * normalization), and dendrograms additionally by metric and engine, in one {@link ModelCache}
+ * with a memory budget. The hash of a file is only recomputed when its size or modification time
+ * changes.
+ *
+ * The service only listens on the loopback address, since it reads whatever local file it is
+ * asked for. Endpoints:
+ *
+ * <pre>
+ * GET /clusters?file=PATH&amp;k=7            (or threshold=DISTANCE instead of k)
+ *               [&amp;metric=euclidean] [&amp;engine=prim] [&amp;normalization=none] [&amp;labels=true]
+ * GET /stats                                the cache size, budget, hits, misses and evictions
+ * POST /clear                               empties the cache
+ * </pre>
+ *
+ * Usage: java ClusterService [port] [budget in MB]
+ * @author Kurt Marcinkiewicz
+ */
+public class ClusterService {
+  /**
+   * The port listened on when none is given.
+   */
+  public static final int DEFAULT_PORT = 8377;
+
+  private static final int CHUNK_SIZE = 1 << 30;
+  /**
+   * the estimated heap taken up by every merge of a dendrogram: its edge object and list slot, plus
+   * the merge arrays
+   */
+  private static final int DENDROGRAM_BYTES_PER_MERGE = 64;
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final ModelCache cache;
+  private final ConcurrentHashMap<String, FileHash> hashes = new ConcurrentHashMap<>();
+
+  /**
+   * Creates the service, listening on the loopback address. The service must be started.
+   * @param port the port to listen on, or 0 for any free port
+   * @param budget the number of bytes the cached datasets and dendrograms may take up
+   * @throws IOException if the port cannot be bound
+   */
+  public ClusterService(int port, long budget) throws IOException {
+    this.cache = new ModelCache(budget);
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                                    0);
+    this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    server.setExecutor(executor);
+    server.createContext("/clusters", exchange -> handle(exchange, "GET", this::clusters));
+    server.createContext("/stats", exchange -> handle(exchange, "GET", query -> stats()));
+    server.createContext("/clear", exchange -> handle(exchange, "POST", query -> {
+      cache.clear();
+      hashes.clear();
+      return stats();
+    }));
+  }
+
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+    long budget = args.length > 1 ? Long.parseLong(args[1]) << 20
+                                   : Runtime.getRuntime().maxMemory() / 2;
+    ClusterService service = new ClusterService(port, budget);
+    service.start();
+    System.out.println("Listening on http://localhost:" + service.getPort() + "/ with a "
+                       + (budget >> 20) + " MB cache");
+  }
+
+  /**
+   * Starts answering requests.
+   */
+  public void start() {
+    server.start();
+  }
+
+  /**
+   * Stops answering requests, waiting up to a second for those in progress.
+   */
+  public void stop() {
+    server.stop(1);
+    executor.shutdownNow();
+  }
+
+  /**
+   * @return the port the service listens on
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * @return the cache of datasets and dendrograms
+   */
+  public ModelCache getCache() {
+    return cache;
+  }
+
+  /**
+   * Answers a request for clusters.
+   * @param query the query parameters
+   * @return the JSON response
+   */
+  private String clusters(Map<String, String> query) throws Exception {
+    long start = System.nanoTime();
+    String path = query.get("file");
+    if (path == null) {
+      throw new IllegalArgumentException("The file parameter is required");
+    }
+    File file = new File(path);
+    if (!file.isFile()) {
+      throw new FileNotFoundException("No such file: " + path);
+    }
+    DistanceMetric metric = DistanceMetrics.forName(query.getOrDefault("metric", "euclidean"));
+    MstEngine engine = MstEngine.forName(query.getOrDefault("engine", "prim"));
+    Normalization normalization = Normalization.get(query.getOrDefault("normalization", "none"));
+    boolean includeLabels = Boolean.parseBoolean(query.get("labels"));
+    if (query.containsKey("k") == query.containsKey("threshold")) {
+      throw new IllegalArgumentException("Exactly one of k and threshold is required");
+    }
+
+    String dataKey = hash(file) + "/" + normalization.getValue();
+    String modelKey = dataKey + "/" + metric.getName() + "/" + engine.name();
+    boolean cached = cache.contains(modelKey);
+    FeatureMatrix matrix = cache.get(dataKey,
+                                     () -> normalization.apply(DatasetSnapshot.load(file)),
+                                     m -> (long) m.getData().length * Double.BYTES
+                                          + (long) m.getRows() * Integer.BYTES);
+    Dendrogram dendrogram = cache.get(modelKey,
+                                      () -> new Dendrogram(engine.minimumSpanningTree(matrix,
+                                                                                      metric),
+                                                           matrix.getRows()),
+                                      d -> (long) d.getMergeCount() * DENDROGRAM_BYTES_PER_MERGE);
+
+    int k;
+    if (query.containsKey("k")) {
+      k = parseInt("k", query.get("k"));
+    }
+    else {
+      double threshold = parseDouble("threshold", query.get("threshold"));
+      if (!(threshold >= 0)) {
+        throw new IllegalArgumentException("The threshold must not be negative");
+      }
+      k = dendrogram.clustersAtThreshold(threshold);
+    }
+    ClusterLabels labels = dendrogram.labels(k);
+    ClusterEvaluation evaluation = new ContingencyTable(labels, matrix).evaluate();
+
+    StringBuilder sb = new StringBuilder("{\"file\": ").append(Quoting.jsonString(path))
+        .append(", \"rows\": ").append(matrix.getRows())
+        .append(", \"metric\": ").append(Quoting.jsonString(metric.getName()))
+        .append(", \"engine\": ").append(Quoting.jsonString(engine.name()))
+        .append(", \"cached\": ").append(cached)
+        .append(", \"clusters\": ").append(evaluation.getClusters())
+        .append(", \"purity\": ").append(evaluation.getPurity())
+        .append(", \"ari\": ").append(evaluation.getAdjustedRandIndex())
+        .append(", \"nmi\": ").append(evaluation.getNormalizedMutualInformation())
+        .append(", \"homogeneity\": ").append(evaluation.getHomogeneity())
+        .append(", \"completeness\": ").append(evaluation.getCompleteness())
+        .append(", \"vMeasure\": ").append(evaluation.getVMeasure());
+    if (includeLabels) {
+      sb.append(", \"labels\": [");
+      for (int i = 0; i < labels.getNodeCount(); i++) {
+        sb.append(i == 0 ? "" : ",").append(labels.getLabel(i));
+      }
+      sb.append(']');
+    }
+    return sb.append(", \"millis\": ")
+        .append(String.format(Locale.ROOT, "%.3f", (System.nanoTime() - start) / 1e6))
+        .append("}\n").toString();
+  }
+
+  private String stats() {
+    return "{\"entries\": " + cache.size() + ", \"usedBytes\": " + cache.getUsedBytes()
+           + ", \"budgetBytes\": " + cache.getBudget() + ", \"hits\": " + cache.getHits()
+           + ", \"misses\": " + cache.getMisses() + ", \"evictions\": " + cache.getEvictions()
+           + "}\n";
+  }
+
+  /**
+   * Runs a handler and sends its response, or an error with a fitting status: 400 for invalid
+   * parameters, 404 for a missing file, 405 for the wrong method and 500 for anything else.
+   */
+  private static void handle(HttpExchange exchange, String method, Handler handler)
+      throws IOException {
+    int status = 200;
+    String body;
+    try {
+      if (!method.equals(exchange.getRequestMethod())) {
+        status = 405;
+        body = "{\"error\": \"Use " + method + "\"}\n";
+      }
+      else {
+        body = handler.handle(parseQuery(exchange.getRequestURI().getRawQuery()));
+      }
+    }
+    catch (IllegalArgumentException e) {
+      status = 400;
+      body = "{\"error\": " + Quoting.jsonString(String.valueOf(e.getMessage())) + "}\n";
+    }
+    catch (FileNotFoundException e) {
+      status = 404;
+      body = "{\"error\": " + Quoting.jsonString(String.valueOf(e.getMessage())) + "}\n";
+    }
+    catch (Exception e) {
+      status = 500;
+      body = "{\"error\": " + Quoting.jsonString(String.valueOf(e)) + "}\n";
+    }
+
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static Map<String, String> parseQuery(String query) {
+    HashMap<String, String> parameters = new HashMap<>();
+    if (query == null || query.isEmpty()) {
+      return parameters;
+    }
+    for (String pair : query.split("&")) {
+      int equals = pair.indexOf('=');
+      String name = equals < 0 ? pair : pair.substring(0, equals);
+      String value = equals < 0 ? "" : pair.substring(equals + 1);
+      parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                     URLDecoder.decode(value, StandardCharsets.UTF_8));
+    }
+    return parameters;
+  }
+
+  private static int parseInt(String name, String value) {
+    try {
+      return Integer.parseInt(value.trim());
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException(name + " must be a whole number, not '" + value + "'");
+    }
+  }
+
+  private static double parseDouble(String name, String value) {
+    try {
+      return Double.parseDouble(value.trim());
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException(name + " must be a number, not '" + value + "'");
+    }
+  }
+
+  /**
+   * Finds the SHA-256 hash of the contents of a file, reusing the last hash of the file if its
+   * size and modification time have not changed.
+   * @param file the file
+   * @return the hash in hexadecimal
+   * @throws IOException if the file cannot be read
+   */
+  private String hash(File file) throws IOException {
+    String path = file.getCanonicalPath();
+    long length = file.length();
+    long modified = file.lastModified();
+    FileHash known = hashes.get(path);
+    if (known != null && known.length == length && known.modified == modified) {
+      return known.hash;
+    }
+
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      FileChannel channel = raf.getChannel();
+      long size = channel.size();
+      for (long position = 0; position < size; position += CHUNK_SIZE) {
+        digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                                  Math.min(CHUNK_SIZE, size - position)));
+      }
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(String.format(Locale.ROOT, "%02x", b));
+    }
+    hashes.put(path, new FileHash(length, modified, hex.toString()));
+    return hex.toString();
+  }
+
+  /**
+   * Answers a request from its query parameters with a JSON body.
+   */
+  private interface Handler {
+    String handle(Map<String, String> query) throws Exception;
+  }
+
+  private static final class FileHash {
+    private final long length;
+    private final long modified;
+    private final String hash;
+
+    FileHash(long length, long modified, String hash) {
+      this.length = length;
+      this.modified = modified;
+      this.hash = hash;
+    }
+  }
+}
@@ -0,0 +1,363 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Writes the cluster of every row to a file, streamed through a large buffer straight into a file
+ * channel, so millions of rows take seconds and no text is built per row beyond the numbers
+ * themselves. Rows are written in order, with their clusters numbered as in {@link ClusterLabels}.
+ * Three formats are available:
+ * <ul>
+ *   <li>CSV, one line per row of its index, cluster and optionally class and distance to the
+ *   medoid of its cluster</li>
+ *   <li>ARFF, the dataset itself with a nominal cluster attribute, and optionally the distance to
+ *   the medoid, added after its features and class, so it can be opened again in Weka</li>
+ *   <li>binary, the cluster of every row as a little-endian 32-bit int and nothing else, so it can
+ *   be read back as an int[] with a single read</li>
+ * </ul>
+ * @author Kurt Marcinkiewicz
+ */
+public class ClusterWriter {
+  private static final int BUFFER_SIZE = 1 << 20;
+  /**
+   * the most members of a cluster its medoid is searched among; the medoids of larger clusters are
+   * picked from, and measured against, a fixed random sample of this many members
+   */
+  private static final int MEDOID_SAMPLE = 1024;
+  private static final long SEED = 42;
+
+  /**
+   * The formats the clusters can be written in.
+   */
+  public enum Format {
+    CSV,
+    ARFF,
+    BINARY;
+
+    /**
+     * Picks the format of a file from its name: .csv files are CSV, .arff files are ARFF and any
+     * other file is binary.
+     * @param file the file
+     * @return the format
+     */
+    public static Format forFile(File file) {
+      String name = file.getName().toLowerCase(Locale.ROOT);
+      return name.endsWith(".csv") ? CSV : name.endsWith(".arff") ? ARFF : BINARY;
+    }
+  }
+
+  private ClusterWriter() { }
+
+  /**
+   * Writes the cluster of every row to a file in the format its name implies.
+   * @param file the file to write
+   * @param clusters the cluster of every row
+   * @param matrix the clustered rows
+   * @param includeClass whether to write the class of every row, which ARFF always does
+   * @param medoidMetric if not null, the metric to measure the distance from every row to the
+   * medoid of its cluster with
+   * @throws IOException if the file cannot be written
+   * @throws IllegalArgumentException if the clusters do not label every row, or a binary file is
+   * asked for the class or medoid distance
+   * @see #write(File, Format, ClusterLabels, FeatureMatrix, boolean, DistanceMetric)
+   */
+  public static void write(File file, ClusterLabels clusters, FeatureMatrix matrix,
+                           boolean includeClass, DistanceMetric medoidMetric) throws IOException {
+    write(file, Format.forFile(file), clusters, matrix, includeClass, medoidMetric);
+  }
+
+  /**
+   * Writes the cluster of every row to a file.
+   * @param file the file to write
+   * @param format the format to write in
+   * @param clusters the cluster of every row
+   * @param matrix the clustered rows
+   * @param includeClass whether to write the class of every row, which ARFF always does
+   * @param medoidMetric if not null, the metric to measure the distance from every row to the
+   * medoid of its cluster with
+   * @throws IOException if the file cannot be written
+   * @throws IllegalArgumentException if the clusters do not label every row, or a binary file is
+   * asked for the class or medoid distance
+   */
+  public static void write(File file, Format format, ClusterLabels clusters, FeatureMatrix matrix,
+                           boolean includeClass, DistanceMetric medoidMetric) throws IOException {
+    if (clusters.getNodeCount() != matrix.getRows()) {
+      throw new IllegalArgumentException("There are " + clusters.getNodeCount() + " labels for "
+                                         + matrix.getRows() + " rows");
+    }
+    if (format == Format.BINARY && (includeClass || medoidMetric != null)) {
+      throw new IllegalArgumentException("Binary files hold only the cluster of every row");
+    }
+
+    try (Instrumentation.Phase phase = Instrumentation.start("write clusters");
+         Output out = new Output(file)) {
+      double[] distances = medoidMetric == null ? null
+                           : medoidDistances(clusters, matrix, medoidMetric);
+      switch (format) {
+        case CSV:
+          writeCsv(out, clusters, matrix, includeClass, distances);
+          break;
+        case ARFF:
+          writeArff(out, clusters, matrix, distances);
+          break;
+        default:
+          out.binaryInts(clusters.getLabels());
+      }
+      phase.count("rows", matrix.getRows());
+    }
+  }
+
+  /**
+   * Finds the medoid of every cluster: the member with the smallest total distance to the other
+   * members. Clusters of more than 1024 members have their medoid estimated from a fixed random
+   * sample of their members, as CLARA does. The clusters are searched in parallel.
+   * @param clusters the clusters
+   * @param matrix the clustered rows
+   * @param metric the distance metric
+   * @return the row that is the medoid of every cluster
+   * @throws IllegalArgumentException if the metric cannot measure the rows
+   */
+  public static int[] medoids(ClusterLabels clusters, FeatureMatrix matrix, DistanceMetric metric) {
+    metric.checkDimensions(matrix.getDimensions());
+    int[] offsets = clusters.getOffsets();
+    int[] members = clusters.getMembers();
+    int[] medoids = new int[clusters.getClusterCount()];
+    IntStream.range(0, medoids.length).parallel().forEach(cluster ->
+        medoids[cluster] = medoid(members, offsets[cluster], offsets[cluster + 1], matrix, metric));
+    return medoids;
+  }
+
+  private static int medoid(int[] members, int start, int end, FeatureMatrix matrix,
+                            DistanceMetric metric) {
+    int[] sample = Arrays.copyOfRange(members, start, end);
+    if (sample.length > MEDOID_SAMPLE) {
+      Random random = new Random(SEED + start);
+      for (int i = 0; i < MEDOID_SAMPLE; i++) {
+        int j = i + random.nextInt(sample.length - i);
+        int member = sample[i];
+        sample[i] = sample[j];
+        sample[j] = member;
+      }
+      sample = Arrays.copyOf(sample, MEDOID_SAMPLE);
+      Arrays.sort(sample);
+    }
+
+    int best = sample[0];
+    double bestTotal = Double.POSITIVE_INFINITY;
+    for (int candidate : sample) {
+      double total = 0;
+      for (int i = 0; i < sample.length && total < bestTotal; i++) {
+        total += matrix.distance(candidate, sample[i], metric);
+      }
+      if (total < bestTotal) {
+        bestTotal = total;
+        best = candidate;
+      }
+    }
+    return best;
+  }
+
+  private static double[] medoidDistances(ClusterLabels clusters, FeatureMatrix matrix,
+                                          DistanceMetric metric) {
+    int[] medoids = medoids(clusters, matrix, metric);
+    int[] labels = clusters.getLabels();
+    double[] distances = new double[labels.length];
+    IntStream.range(0, labels.length).parallel().forEach(row ->
+        distances[row] = matrix.distance(row, medoids[labels[row]], metric));
+    return distances;
+  }
+
+  private static void writeCsv(Output out, ClusterLabels clusters, FeatureMatrix matrix,
+                               boolean includeClass, double[] distances) throws IOException {
+    String[] classes = matrix.getClasses();
+    byte[][] classNames = new byte[classes.length][];
+    for (int i = 0; i < classes.length; i++) {
+      classNames[i] = Quoting.csvString(classes[i]).getBytes(StandardCharsets.UTF_8);
+    }
+    out.text("row,cluster" + (includeClass ? ",class" : "")
+             + (distances != null ? ",medoid_distance\n" : "\n"));
+
+    int[] labels = clusters.getLabels();
+    for (int row = 0; row < labels.length; row++) {
+      out.decimal(row).ascii(',').decimal(labels[row]);
+      if (includeClass) {
+        int label = matrix.getLabel(row);
+        out.ascii(',');
+        if (label >= 0) {
+          out.bytes(classNames[label]);
+        }
+      }
+      if (distances != null) {
+        out.ascii(',').text(Double.toString(distances[row]));
+      }
+      out.ascii('\n');
+    }
+  }
+
+  private static void writeArff(Output out, ClusterLabels clusters, FeatureMatrix matrix,
+                                double[] distances) throws IOException {
+    String[] features = matrix.getFeatures();
+    String[] classes = matrix.getClasses();
+    int clusterCount = clusters.getClusterCount();
+    byte[][] classNames = new byte[classes.length][];
+    for (int i = 0; i < classes.length; i++) {
+      classNames[i] = arffName(classes[i]).getBytes(StandardCharsets.UTF_8);
+    }
+
+    out.text("@relation clusters\n\n");
+    for (String feature : features) {
+      out.text("@attribute " + arffName(feature) + " real\n");
+    }
+    if (classes.length > 0) {
+      out.text("@attribute class {");
+      for (int i = 0; i < classNames.length; i++) {
+        out.text(i == 0 ? "" : ",").bytes(classNames[i]);
+      }
+      out.text("}\n");
+    }
+    out.text("@attribute cluster {");
+    for (int i = 0; i < clusterCount; i++) {
+      out.text(i == 0 ? "" : ",").decimal(i);
+    }
+    out.text(distances != null ? "}\n@attribute medoid_distance real\n\n@data\n" : "}\n\n@data\n");
+
+    double[] data = matrix.getData();
+    int dimensions = matrix.getDimensions();
+    int[] labels = clusters.getLabels();
+    for (int row = 0; row < labels.length; row++) {
+      for (int i = row * dimensions; i < (row + 1) * dimensions; i++) {
+        out.text(Double.toString(data[i])).ascii(',');
+      }
+      if (classes.length > 0) {
+        int label = matrix.getLabel(row);
+        if (label >= 0) {
+          out.bytes(classNames[label]);
+        }
+        else {
+          out.ascii('?');
+        }
+        out.ascii(',');
+      }
+      out.decimal(labels[row]);
+      if (distances != null) {
+        out.ascii(',').text(Double.toString(distances[row]));
+      }
+      out.ascii('\n');
+    }
+  }
+
+  /**
+   * Quotes a name for an .arff header if it holds anything but letters, digits and the characters
+   * _ - and .
+   */
+  private static String arffName(String name) {
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.') {
+        return '\'' + name.replace("\\", "\\\\").replace("'", "\\'") + '\'';
+      }
+    }
+    return name.isEmpty() ? "''" : name;
+  }
+
+  /**
+   * A file channel written through a direct buffer, which is drained to the channel whenever it
+   * fills.
+   */
+  private static final class Output implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer =
+        ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[] digits = new byte[11];
+
+    Output(File file) throws IOException {
+      this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                      StandardOpenOption.WRITE,
+                                      StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    Output ascii(char c) throws IOException {
+      ensure(1);
+      buffer.put((byte) c);
+      return this;
+    }
+
+    Output text(String value) throws IOException {
+      return bytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    Output bytes(byte[] value) throws IOException {
+      for (int i = 0; i < value.length; ) {
+        ensure(1);
+        int count = Math.min(buffer.remaining(), value.length - i);
+        buffer.put(value, i, count);
+        i += count;
+      }
+      return this;
+    }
+
+    /**
+     * Writes an int in decimal without creating a String.
+     */
+    Output decimal(int value) throws IOException {
+      ensure(digits.length);
+      if (value < 0) {
+        buffer.put((byte) '-');
+      }
+      int i = digits.length;
+      long remaining = Math.abs((long) value);
+      do {
+        digits[--i] = (byte) ('0' + remaining % 10);
+        remaining /= 10;
+      } while (remaining > 0);
+      buffer.put(digits, i, digits.length - i);
+      return this;
+    }
+
+    /**
+     * Writes ints as little-endian binary, a buffer at a time.
+     */
+    void binaryInts(int[] values) throws IOException {
+      for (int i = 0; i < values.length; ) {
+        ensure(Integer.BYTES);
+        int count = Math.min(buffer.remaining() / Integer.BYTES, values.length - i);
+        buffer.asIntBuffer().put(values, i, count);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        i += count;
+      }
+    }
+
+    private void ensure(int bytes) throws IOException {
+      if (buffer.remaining() < bytes) {
+        drain();
+      }
+    }
+
+    private void drain() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        drain();
+      }
+      finally {
+        channel.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,86 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A lock-free union-find data structure that may be shared between threads, such as by the parallel
+ * MST algorithms. Parents are updated with compare-and-set only. Roots are always linked beneath the
+ * root with the larger index, which keeps the forest acyclic under contention without needing
+ * ranks, and finds halve the path to the root as they go.
+ * @author Kurt Marcinkiewicz
+ */
+public class ConcurrentUnionFind {
+  private final AtomicIntegerArray parents;
+
+  /**
+   * @param size the number of 'items' to be managed by Union-Find, represented by the ints 0 to
+   *             size - 1
+   */
+  public ConcurrentUnionFind(int size) {
+    this.parents = new AtomicIntegerArray(size);
+    for (int i = 0; i < size; i++) {
+      parents.set(i, i);
+    }
+  }
+
+  /**
+   * Retrieves the root of the component the given item belongs to. The root may change as soon as
+   * it is returned if other threads are unionizing components.
+   * @param i the item to retrieve the root of
+   * @return the root of the given item
+   */
+  public int find(int i) {
+    int parent = parents.get(i);
+    while (parent != i) {
+      int grandparent = parents.get(parent);
+      parents.compareAndSet(i, parent, grandparent);
+      i = grandparent;
+      parent = parents.get(i);
+    }
+    return i;
+  }
+
+  /**
+   * Unionizes two components together if the items are not already in the same component.
+   * @param a the item of the first component
+   * @param b the item of the second component
+   * @return true if the items were not in the same component and this call joined them
+   */
+  public boolean union(int a, int b) {
+    while (true) {
+      int componentA = find(a);
+      int componentB = find(b);
+
+      if (componentA == componentB) {
+        return false;
+      }
+      else if (componentA < componentB) {
+        if (parents.compareAndSet(componentA, componentA, componentB)) {
+          return true;
+        }
+      }
+      else if (parents.compareAndSet(componentB, componentB, componentA)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Determines whether or not two 'items' are in the same component. Retries if the root of the
+   * first item changes while checking, so the answer is exact at some point during the call.
+   * @param a the first item
+   * @param b the second item
+   * @return true if both items are in the same component
+   */
+  public boolean inSameComponent(int a, int b) {
+    while (true) {
+      int componentA = find(a);
+      int componentB = find(b);
+
+      if (componentA == componentB) {
+        return true;
+      }
+      else if (parents.get(componentA) == componentA) {
+        return false;
+      }
+    }
+  }
+}
@@ -0,0 +1,289 @@
+import java.util.Arrays;
+
+/**
+ * The contingency table between a clustering and the known classes of the rows: how many rows of
+ * every class fall in every cluster, held as one flat int array. The table is built in a single
+ * pass over the labels, and keeps the sums that purity, the adjusted Rand index and the entropy
+ * based scores are computed from, so every score is available in O(1) time.
+ *
+ * Clusters can be merged in O(classes) time, updating the sums as they go. Replaying the merges of
+ * a {@link Dendrogram} this way evaluates every cut of a k sweep for O(n * classes) work in total,
+ * rather than labelling and counting the rows again for every k; see
+ * {@link #sweep(Dendrogram, FeatureMatrix, int[])}.
+ *
+ * Rows with an unknown class are left out of the table. As in
+ * {@link Algorithms#purityFromClusters(ClusterLabels, FeatureMatrix)} they still count towards the
+ * total that purity is divided by, but every other score only looks at the rows with a class.
+ * @author Kurt Marcinkiewicz
+ */
+public class ContingencyTable {
+  private final int classes;
+  private final int rows;
+  private final int[] counts;
+  private final int[] clusterSizes;
+  private final int[] classSizes;
+  private final boolean[] merged;
+  private int clusterCount;
+  private int labelled;
+  private long majorities;
+  private long pairs;
+  private long clusterPairs;
+  private long classPairs;
+  private double plogp;
+  private double clusterPlogp;
+  private double classPlogp;
+
+  /**
+   * Builds the table of a clustering in one pass over the rows.
+   * @param clusters the cluster labels
+   * @param matrix the feature matrix holding the class of every row
+   * @throws IllegalArgumentException if the clustering and the matrix have different numbers of
+   * rows
+   */
+  public ContingencyTable(ClusterLabels clusters, FeatureMatrix matrix) {
+    this(clusters.getLabels(), clusters.getClusterCount(), matrix.getLabels(),
+         matrix.getClassCount());
+  }
+
+  /**
+   * Builds the table of a clustering in one pass over the rows.
+   * @param labels the cluster of every row, numbered 0 to clusters - 1
+   * @param clusters the number of clusters
+   * @param rowClasses the class of every row, numbered 0 to classes - 1, or -1 if unknown
+   * @param classes the number of classes
+   * @throws IllegalArgumentException if the label arrays differ in length
+   */
+  public ContingencyTable(int[] labels, int clusters, int[] rowClasses, int classes) {
+    if (labels.length != rowClasses.length) {
+      throw new IllegalArgumentException("There are " + labels.length + " cluster labels for "
+                                         + rowClasses.length + " rows");
+    }
+    this.classes = classes;
+    this.rows = labels.length;
+    this.counts = new int[Math.multiplyExact(clusters, classes)];
+    this.clusterSizes = new int[clusters];
+    this.classSizes = new int[classes];
+    this.merged = new boolean[clusters];
+    this.clusterCount = clusters;
+
+    for (int i = 0; i < labels.length; i++) {
+      if (rowClasses[i] >= 0) {
+        counts[labels[i] * classes + rowClasses[i]]++;
+        clusterSizes[labels[i]]++;
+        classSizes[rowClasses[i]]++;
+        labelled++;
+      }
+    }
+
+    for (int cluster = 0; cluster < clusters; cluster++) {
+      int majority = 0;
+      for (int c = cluster * classes; c < (cluster + 1) * classes; c++) {
+        majority = Math.max(majority, counts[c]);
+        pairs += pairs(counts[c]);
+        plogp += xlogx(counts[c]);
+      }
+      majorities += majority;
+      clusterPairs += pairs(clusterSizes[cluster]);
+      clusterPlogp += xlogx(clusterSizes[cluster]);
+    }
+    for (int size : classSizes) {
+      classPairs += pairs(size);
+      classPlogp += xlogx(size);
+    }
+  }
+
+  /**
+   * Evaluates the single-link clusters for several numbers of clusters by replaying the merges of
+   * a dendrogram through one table, starting from every row in its own cluster.
+   * @param dendrogram the dendrogram
+   * @param matrix the feature matrix holding the class of every row
+   * @param ks the numbers of clusters to evaluate, in any order
+   * @return the evaluation of every k, in the same order as ks
+   * @throws IllegalArgumentException if any k cannot be cut from the dendrogram
+   */
+  public static ClusterEvaluation[] sweep(Dendrogram dendrogram, FeatureMatrix matrix, int[] ks) {
+    int nodes = dendrogram.getNodeCount();
+    for (int k : ks) {
+      if (k < dendrogram.getMinClusters() || k > nodes) {
+        throw new IllegalArgumentException("k must be between " + dendrogram.getMinClusters()
+                                           + " and " + nodes);
+      }
+    }
+
+    long[] order = new long[ks.length];
+    for (int i = 0; i < ks.length; i++) {
+      order[i] = (long) (nodes - ks[i]) << 32 | i;
+    }
+    Arrays.sort(order);
+
+    int[] singletons = new int[nodes];
+    for (int i = 0; i < nodes; i++) {
+      singletons[i] = i;
+    }
+    ContingencyTable table = new ContingencyTable(singletons, nodes, matrix.getLabels(),
+                                                  matrix.getClassCount());
+    int[] slots = new int[nodes + dendrogram.getMergeCount()];
+    System.arraycopy(singletons, 0, slots, 0, nodes);
+
+    ClusterEvaluation[] evaluations = new ClusterEvaluation[ks.length];
+    int merge = 0;
+    for (long key : order) {
+      int i = (int) key;
+      for (; table.getClusterCount() > ks[i]; merge++) {
+        int into = slots[dendrogram.getLeft(merge)];
+        table.merge(into, slots[dendrogram.getRight(merge)]);
+        slots[nodes + merge] = into;
+      }
+      evaluations[i] = table.evaluate();
+    }
+    return evaluations;
+  }
+
+  /**
+   * Merges one cluster into another, updating every score.
+   * @param into the cluster that remains
+   * @param from the cluster that is emptied into it
+   * @throws IllegalArgumentException if the clusters are the same or either was already merged away
+   */
+  public void merge(int into, int from) {
+    if (into == from || merged[into] || merged[from]) {
+      throw new IllegalArgumentException("Cannot merge cluster " + from + " into " + into);
+    }
+    int majorityInto = 0;
+    int majorityFrom = 0;
+    int majority = 0;
+    for (int c = 0; c < classes; c++) {
+      int a = counts[into * classes + c];
+      int b = counts[from * classes + c];
+      majorityInto = Math.max(majorityInto, a);
+      majorityFrom = Math.max(majorityFrom, b);
+      majority = Math.max(majority, a + b);
+      if (a > 0 && b > 0) {
+        pairs += (long) a * b;
+        plogp += xlogx(a + b) - xlogx(a) - xlogx(b);
+      }
+      counts[into * classes + c] = a + b;
+      counts[from * classes + c] = 0;
+    }
+    majorities += majority - majorityInto - majorityFrom;
+
+    int a = clusterSizes[into];
+    int b = clusterSizes[from];
+    clusterPairs += (long) a * b;
+    clusterPlogp += xlogx(a + b) - xlogx(a) - xlogx(b);
+    clusterSizes[into] = a + b;
+    clusterSizes[from] = 0;
+    merged[from] = true;
+    clusterCount--;
+  }
+
+  /**
+   * @return the number of clusters that have not been merged away
+   */
+  public int getClusterCount() {
+    return clusterCount;
+  }
+
+  /**
+   * @param cluster the cluster
+   * @param c the class
+   * @return the number of rows of the class in the cluster
+   */
+  public int getCount(int cluster, int c) {
+    return counts[cluster * classes + c];
+  }
+
+  /**
+   * @return the share of rows that belong to the majority class of their cluster
+   */
+  public double purity() {
+    return rows == 0 ? 0 : (double) majorities / rows;
+  }
+
+  /**
+   * Computes the Rand index adjusted for chance (Hubert and Arabie): 1 for a clustering that
+   * matches the classes, around 0 for a random one.
+   * @return the adjusted Rand index
+   */
+  public double adjustedRandIndex() {
+    long total = pairs(labelled);
+    double expected = total == 0 ? 0 : (double) clusterPairs * classPairs / total;
+    double maximum = (clusterPairs + classPairs) / 2.0;
+    if (maximum == expected) {
+      return 1;
+    }
+    return (pairs - expected) / (maximum - expected);
+  }
+
+  /**
+   * @return the mutual information between the clusters and the classes, in nats
+   */
+  public double mutualInformation() {
+    if (labelled == 0) {
+      return 0;
+    }
+    return Math.max(0, (plogp - clusterPlogp - classPlogp) / labelled + Math.log(labelled));
+  }
+
+  /**
+   * @return the share of the class entropy explained by the clusters: 1 when every cluster holds a
+   * single class
+   */
+  public double homogeneity() {
+    double entropy = entropy(classPlogp);
+    return entropy == 0 ? 1 : mutualInformation() / entropy;
+  }
+
+  /**
+   * @return the share of the cluster entropy explained by the classes: 1 when every class lies in a
+   * single cluster
+   */
+  public double completeness() {
+    double entropy = entropy(clusterPlogp);
+    return entropy == 0 ? 1 : mutualInformation() / entropy;
+  }
+
+  /**
+   * @return the harmonic mean of homogeneity and completeness
+   */
+  public double vMeasure() {
+    double homogeneity = homogeneity();
+    double completeness = completeness();
+    return homogeneity + completeness == 0
+           ? 0 : 2 * homogeneity * completeness / (homogeneity + completeness);
+  }
+
+  /**
+   * @return the mutual information normalized by the arithmetic mean of the class and cluster
+   * entropies, which is 1 when both are 0
+   */
+  public double normalizedMutualInformation() {
+    double mean = (entropy(classPlogp) + entropy(clusterPlogp)) / 2;
+    return mean == 0 ? 1 : Math.min(1, mutualInformation() / mean);
+  }
+
+  /**
+   * @return every score of the clustering as it stands
+   */
+  public ClusterEvaluation evaluate() {
+    return new ClusterEvaluation(clusterCount, purity(), adjustedRandIndex(),
+                                 normalizedMutualInformation(), homogeneity(), completeness(),
+                                 vMeasure());
+  }
+
+  /**
+   * @param plogp the sum of size * log(size) over the clusters or classes
+   * @return the entropy of the clusters or classes, in nats
+   */
+  private double entropy(double plogp) {
+    return labelled == 0 ? 0 : Math.max(0, Math.log(labelled) - plogp / labelled);
+  }
+
+  private static long pairs(long n) {
+    return n * (n - 1) / 2;
+  }
+
+  private static double xlogx(int x) {
+    return x == 0 ? 0 : x * Math.log(x);
+  }
+}
@@ -0,0 +1,257 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32C;
+
+/**
+ * A compact binary snapshot of a parsed feature matrix, stored next to the .arff file it came from
+ * so that repeat runs can skip parsing the text. The snapshot holds a header with the schema, the
+ * class dictionary, the row count and the size and CRC32C checksum of the source file, followed by
+ * the row-major feature block and the label block, all little-endian. A snapshot whose checksum no
+ * longer matches the source is rebuilt automatically.
+ * @author Kurt Marcinkiewicz
+ */
+public class DatasetSnapshot {
+  /**
+   * the extension added to the name of the .arff file to name its snapshot
+   */
+  public static final String EXTENSION = ".snapshot";
+
+  private static final long MAGIC = 0x31304e5341534d46L;
+  private static final int CHUNK_SIZE = 1 << 30;
+
+  private DatasetSnapshot() { }
+
+  /**
+   * Loads the feature matrix of an .arff file from its snapshot, parsing the file and writing a new
+   * snapshot if there is none or the source has changed since it was written.
+   * @param arff the .arff file
+   * @return the feature matrix
+   * @throws IOException if the .arff file cannot be read or parsed
+   */
+  public static FeatureMatrix load(File arff) throws IOException {
+    try (Instrumentation.Phase phase = Instrumentation.start("load")) {
+      File snapshot = snapshotFile(arff);
+      long checksum = checksum(arff);
+
+      if (snapshot.isFile()) {
+        try {
+          FeatureMatrix matrix = read(snapshot, arff.length(), checksum);
+          if (matrix != null) {
+            phase.count("snapshot hits", 1).count("rows", matrix.getRows());
+            return matrix;
+          }
+        }
+        catch (IOException | RuntimeException e) {
+          // a corrupt snapshot is rebuilt just like a stale one
+        }
+      }
+
+      FeatureMatrix matrix = new ArffByteParser(arff).parse();
+      try {
+        write(matrix, snapshot, arff.length(), checksum);
+      }
+      catch (IOException e) {
+        // the snapshot is only a cache, so the matrix is still returned if it cannot be written
+      }
+      phase.count("snapshot misses", 1).count("rows", matrix.getRows());
+      return matrix;
+    }
+  }
+
+  /**
+   * @param arff the .arff file
+   * @return the file its snapshot is stored in
+   */
+  public static File snapshotFile(File arff) {
+    return new File(arff.getPath() + EXTENSION);
+  }
+
+  /**
+   * Writes a snapshot of a feature matrix. The snapshot is written to a uniquely named temporary
+   * file first and then moved into place, so a reader never sees a partially written snapshot, even
+   * while other threads or processes write the same one.
+   * @param matrix the feature matrix
+   * @param snapshot the file to write the snapshot to
+   * @param sourceLength the size of the .arff file the matrix was parsed from
+   * @param sourceChecksum the checksum of the .arff file the matrix was parsed from
+   * @throws IOException if the snapshot cannot be written
+   */
+  public static void write(FeatureMatrix matrix, File snapshot, long sourceLength,
+                           long sourceChecksum) throws IOException {
+    byte[][] features = encode(matrix.getFeatures());
+    byte[][] classes = encode(matrix.getClasses());
+    int headerSize = align(8 + 8 + 8 + 4 + 4 + 4 + stringsSize(features) + stringsSize(classes));
+
+    ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+    header.putLong(MAGIC);
+    header.putLong(sourceLength);
+    header.putLong(sourceChecksum);
+    header.putInt(matrix.getRows());
+    header.putInt(matrix.getDimensions());
+    header.putInt(classes.length);
+    putStrings(header, features);
+    putStrings(header, classes);
+    header.position(headerSize);
+    header.flip();
+
+    File directory = snapshot.getAbsoluteFile().getParentFile();
+    File temporary = Files.createTempFile(directory.toPath(), snapshot.getName() + ".", ".tmp")
+        .toFile();
+    try {
+      try (RandomAccessFile raf = new RandomAccessFile(temporary, "rw")) {
+        FileChannel channel = raf.getChannel();
+        while (header.hasRemaining()) {
+          channel.write(header);
+        }
+
+        double[] data = matrix.getData();
+        int[] labels = matrix.getLabels();
+        long position = headerSize;
+        for (int i = 0; i < data.length; i += CHUNK_SIZE / Double.BYTES) {
+          int count = Math.min(CHUNK_SIZE / Double.BYTES, data.length - i);
+          MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_WRITE, position,
+                                               (long) count * Double.BYTES);
+          block.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().put(data, i, count);
+          position += (long) count * Double.BYTES;
+        }
+        for (int i = 0; i < labels.length; i += CHUNK_SIZE / Integer.BYTES) {
+          int count = Math.min(CHUNK_SIZE / Integer.BYTES, labels.length - i);
+          MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_WRITE, position,
+                                               (long) count * Integer.BYTES);
+          block.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(labels, i, count);
+          position += (long) count * Integer.BYTES;
+        }
+        channel.force(false);
+      }
+      Files.move(temporary.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+    }
+    finally {
+      Files.deleteIfExists(temporary.toPath());
+    }
+  }
+
+  /**
+   * Reads a snapshot by memory-mapping it and bulk copying the feature and label blocks into the
+   * matrix.
+   * @param snapshot the snapshot file
+   * @param sourceLength the current size of the .arff file
+   * @param sourceChecksum the current checksum of the .arff file
+   * @return the feature matrix, or null if the snapshot was written for a different version of the
+   * .arff file
+   * @throws IOException if the snapshot cannot be read or is not a snapshot
+   */
+  public static FeatureMatrix read(File snapshot, long sourceLength, long sourceChecksum)
+      throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(snapshot, "r")) {
+      FileChannel channel = raf.getChannel();
+      MappedByteBuffer prefix = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                            Math.min(channel.size(), CHUNK_SIZE));
+      prefix.order(ByteOrder.LITTLE_ENDIAN);
+
+      if (prefix.getLong() != MAGIC) {
+        throw new IOException(snapshot + " is not a dataset snapshot");
+      }
+      if (prefix.getLong() != sourceLength || prefix.getLong() != sourceChecksum) {
+        return null;
+      }
+      int rows = prefix.getInt();
+      int dimensions = prefix.getInt();
+      int classCount = prefix.getInt();
+      String[] features = getStrings(prefix, dimensions);
+      String[] classes = getStrings(prefix, classCount);
+
+      long position = align(prefix.position());
+      double[] data = new double[Math.multiplyExact(rows, dimensions)];
+      int[] labels = new int[rows];
+      if (channel.size() != position + (long) data.length * Double.BYTES
+                            + (long) labels.length * Integer.BYTES) {
+        throw new IOException(snapshot + " is truncated");
+      }
+
+      for (int i = 0; i < data.length; i += CHUNK_SIZE / Double.BYTES) {
+        int count = Math.min(CHUNK_SIZE / Double.BYTES, data.length - i);
+        MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                                             (long) count * Double.BYTES);
+        block.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(data, i, count);
+        position += (long) count * Double.BYTES;
+      }
+      for (int i = 0; i < labels.length; i += CHUNK_SIZE / Integer.BYTES) {
+        int count = Math.min(CHUNK_SIZE / Integer.BYTES, labels.length - i);
+        MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                                             (long) count * Integer.BYTES);
+        block.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(labels, i, count);
+        position += (long) count * Integer.BYTES;
+      }
+      return new FeatureMatrix(features, classes, data, labels);
+    }
+  }
+
+  /**
+   * Calculates the CRC32C checksum of a file, reading it through memory-mapped blocks.
+   * @param file the file
+   * @return the checksum
+   * @throws IOException if the file cannot be read
+   */
+  public static long checksum(File file) throws IOException {
+    CRC32C crc = new CRC32C();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      FileChannel channel = raf.getChannel();
+      long size = channel.size();
+      for (long position = 0; position < size; position += CHUNK_SIZE) {
+        crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                               Math.min(CHUNK_SIZE, size - position)));
+      }
+    }
+    return crc.getValue();
+  }
+
+  private static byte[][] encode(String[] strings) {
+    byte[][] bytes = new byte[strings.length][];
+    for (int i = 0; i < strings.length; i++) {
+      bytes[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+    }
+    return bytes;
+  }
+
+  private static int stringsSize(byte[][] strings) {
+    int size = 0;
+    for (byte[] string : strings) {
+      size += Integer.BYTES + string.length;
+    }
+    return size;
+  }
+
+  private static void putStrings(ByteBuffer buffer, byte[][] strings) {
+    for (byte[] string : strings) {
+      buffer.putInt(string.length);
+      buffer.put(string);
+    }
+  }
+
+  private static String[] getStrings(ByteBuffer buffer, int count) {
+    String[] strings = new String[count];
+    for (int i = 0; i < count; i++) {
+      byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      strings[i] = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return strings;
+  }
+
+  /**
+   * @param size a size in bytes
+   * @return the size rounded up to a multiple of 8, so the feature block is aligned
+   */
+  private static int align(int size) {
+    return (size + 7) & ~7;
+  }
+}
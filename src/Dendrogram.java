@@ -0,0 +1,177 @@
+import java.util.ArrayList;
+
+/**
+ * A single-link dendrogram built once from the edges of an MST. Single-link clusters for any number
+ * of clusters, or any distance threshold, are found by cutting the dendrogram rather than running
+ * Kruskal's algorithm again.
+ * @author Kurt Marcinkiewicz
+ */
+public class Dendrogram {
+  private final int nodes;
+  private final ArrayList<ImageSegmentEdge> merges;
+  private final int[] left;
+  private final int[] right;
+  private final int[] sizes;
+  private final double[] heights;
+
+  /**
+   * Builds the dendrogram by sorting the MST edges into {@link ImageSegmentEdge#KRUSKAL_ORDER} and
+   * replaying them through a Union-Find, so the same MST edges give the same merges whichever
+   * engine found them and in whatever order. Merge i joins the clusters {@link #getLeft(int)} and
+   * {@link #getRight(int)} into the new cluster nodes + i, so leaves are numbered 0 to nodes - 1.
+   * @param mst the edges of the MST (or a spanning forest) of the graph
+   * @param nodes the number of nodes in the graph
+   */
+  public Dendrogram(ArrayList<ImageSegmentEdge> mst, int nodes) {
+    try (Instrumentation.Phase phase = Instrumentation.start("dendrogram")) {
+      this.nodes = nodes;
+      this.merges = new ArrayList<>(mst);
+      merges.sort(ImageSegmentEdge.KRUSKAL_ORDER);
+
+      int count = merges.size();
+      this.left = new int[count];
+      this.right = new int[count];
+      this.sizes = new int[count];
+      this.heights = new double[count];
+
+      UnionFind uf = new UnionFind(nodes);
+      int[] clusterIds = new int[nodes];
+      int[] clusterSizes = new int[nodes];
+      for (int i = 0; i < nodes; i++) {
+        clusterIds[i] = i;
+        clusterSizes[i] = 1;
+      }
+
+      for (int i = 0; i < count; i++) {
+        ImageSegmentEdge edge = merges.get(i);
+        int componentA = uf.find(edge.getA());
+        int componentB = uf.find(edge.getB());
+        if (!uf.union(edge.getA(), edge.getB())) {
+          throw new IllegalArgumentException("The edges contain a cycle and are not a spanning "
+                                             + "tree");
+        }
+
+        int merged = uf.find(edge.getA());
+        left[i] = clusterIds[componentA];
+        right[i] = clusterIds[componentB];
+        sizes[i] = clusterSizes[componentA] + clusterSizes[componentB];
+        heights[i] = edge.getWeight();
+        clusterIds[merged] = nodes + i;
+        clusterSizes[merged] = sizes[i];
+      }
+      phase.count("merges", count);
+    }
+  }
+
+  /**
+   * @return the number of nodes (leaves) in the dendrogram
+   */
+  public int getNodeCount() {
+    return nodes;
+  }
+
+  /**
+   * @return the number of merges in the dendrogram
+   */
+  public int getMergeCount() {
+    return merges.size();
+  }
+
+  /**
+   * @return the smallest number of clusters the dendrogram can be cut into
+   */
+  public int getMinClusters() {
+    return nodes - merges.size();
+  }
+
+  /**
+   * @param i the merge
+   * @return the first cluster joined by the merge
+   */
+  public int getLeft(int i) {
+    return left[i];
+  }
+
+  /**
+   * @param i the merge
+   * @return the second cluster joined by the merge
+   */
+  public int getRight(int i) {
+    return right[i];
+  }
+
+  /**
+   * @param i the merge
+   * @return the number of nodes in the cluster created by the merge
+   */
+  public int getSize(int i) {
+    return sizes[i];
+  }
+
+  /**
+   * @param i the merge
+   * @return the distance at which the merge happens
+   */
+  public double getHeight(int i) {
+    return heights[i];
+  }
+
+  /**
+   * Cuts the dendrogram into k clusters. Returns the same edges as
+   * {@link Algorithms#singleLinkCluster(ArrayList, int, int)} in O(n) time.
+   * @param k the desired number of clusters
+   * @return the edges connecting the trees of the k clusters
+   */
+  public ArrayList<ImageSegmentEdge> cut(int k) {
+    if (k < getMinClusters() || k > nodes) {
+      throw new IllegalArgumentException("k must be between " + getMinClusters() + " and " + nodes);
+    }
+    return new ArrayList<>(merges.subList(0, nodes - k));
+  }
+
+  /**
+   * Cuts the dendrogram into k clusters and labels every node with its cluster.
+   * @param k the desired number of clusters
+   * @return the cluster labels
+   */
+  public ClusterLabels labels(int k) {
+    if (k < getMinClusters() || k > nodes) {
+      throw new IllegalArgumentException("k must be between " + getMinClusters() + " and " + nodes);
+    }
+    UnionFind uf = new UnionFind(nodes);
+    for (int i = 0; i < nodes - k; i++) {
+      ImageSegmentEdge edge = merges.get(i);
+      uf.union(edge.getA(), edge.getB());
+    }
+    return ClusterLabels.fromUnionFind(uf, nodes);
+  }
+
+  /**
+   * Finds the number of clusters left when every merge at or below the threshold is applied.
+   * @param threshold the largest distance allowed within a cluster
+   * @return the number of clusters
+   */
+  public int clustersAtThreshold(double threshold) {
+    int low = 0;
+    int high = heights.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (heights[mid] <= threshold) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return nodes - low;
+  }
+
+  /**
+   * Cuts the dendrogram at a distance threshold.
+   * @param threshold the largest distance allowed within a cluster
+   * @return the edges connecting the trees of the clusters
+   */
+  public ArrayList<ImageSegmentEdge> cutAtThreshold(double threshold) {
+    return cut(clustersAtThreshold(threshold));
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * A measure of the distance between two rows of features. The hot loops of the MST engines ask for
+ * the distances from one row to a range of rows with
+ * {@link #distances(double[], int, int, int, int, double[])}. By default that calls the one-pair
+ * kernel for every row of the range; the Euclidean metrics override it with a loop that measures
+ * four rows at a time.
+ * @author Kurt Marcinkiewicz
+ * @see DistanceMetrics
+ */
+public interface DistanceMetric {
+
+  /**
+   * Calculates the distance between two rows of features.
+   * @param a the array holding the first row
+   * @param offsetA the start of the first row within a
+   * @param b the array holding the second row
+   * @param offsetB the start of the second row within b
+   * @param dimensions the number of features in a row
+   * @return the distance
+   */
+  double distance(double[] a, int offsetA, double[] b, int offsetB, int dimensions);
+
+  /**
+   * Calculates the distance from one row of a row-major matrix to each of a range of rows.
+   * @param data the matrix, one row after another
+   * @param dimensions the number of features in a row
+   * @param row the row to measure from
+   * @param start the first row to measure to
+   * @param end the end of the rows to measure to
+   * @param out the array to store the distance to row start + i at index i
+   */
+  default void distances(double[] data, int dimensions, int row, int start, int end,
+                         double[] out) {
+    int offset = row * dimensions;
+    for (int j = start; j < end; j++) {
+      out[j - start] = distance(data, offset, data, j * dimensions, dimensions);
+    }
+  }
+
+  /**
+   * Calculates the distance between two rows of single-precision features, in single precision.
+   * The default widens both rows to doubles and calls
+   * {@link #distance(double[], int, double[], int, int)}; the built-in metrics override it with a
+   * loop over the floats.
+   * @param a the array holding the first row
+   * @param offsetA the start of the first row within a
+   * @param b the array holding the second row
+   * @param offsetB the start of the second row within b
+   * @param dimensions the number of features in a row
+   * @return the distance
+   */
+  default float distance(float[] a, int offsetA, float[] b, int offsetB, int dimensions) {
+    double[] rows = new double[2 * dimensions];
+    for (int i = 0; i < dimensions; i++) {
+      rows[i] = a[offsetA + i];
+      rows[dimensions + i] = b[offsetB + i];
+    }
+    return (float) distance(rows, 0, rows, dimensions, dimensions);
+  }
+
+  /**
+   * Calculates the distance from one row of a row-major single-precision matrix to each of a range
+   * of rows.
+   * @param data the matrix, one row after another
+   * @param dimensions the number of features in a row
+   * @param row the row to measure from
+   * @param start the first row to measure to
+   * @param end the end of the rows to measure to
+   * @param out the array to store the distance to row start + i at index i
+   */
+  default void distances(float[] data, int dimensions, int row, int start, int end, float[] out) {
+    int offset = row * dimensions;
+    for (int j = start; j < end; j++) {
+      out[j - start] = distance(data, offset, data, j * dimensions, dimensions);
+    }
+  }
+
+  /**
+   * Checks that the metric can measure rows with the given number of features. The default accepts
+   * any number.
+   * @param dimensions the number of features in a row
+   * @throws IllegalArgumentException if the metric cannot measure such rows
+   */
+  default void checkDimensions(int dimensions) {
+  }
+
+  /**
+   * @return the name of the metric
+   */
+  String getName();
+}
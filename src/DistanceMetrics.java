@@ -0,0 +1,398 @@
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The distance metrics available for clustering. Every metric has its own allocation-free kernel;
+ * none of them branch on options in the inner loop. Rescaling the features is done once,
+ * beforehand, by a {@link Normalization}.
+ * @author Kurt Marcinkiewicz
+ */
+public final class DistanceMetrics {
+  /**
+   * the straight-line distance, as used by the original image segment graph
+   */
+  public static final DistanceMetric EUCLIDEAN = new Euclidean();
+
+  /**
+   * the square of the Euclidean distance. It orders pairs the same way as the Euclidean distance,
+   * so it gives the same MST without a square root per pair
+   */
+  public static final DistanceMetric SQUARED_EUCLIDEAN = new SquaredEuclidean();
+
+  /**
+   * the sum of the absolute differences of the features
+   */
+  public static final DistanceMetric MANHATTAN = new Manhattan();
+
+  /**
+   * the largest absolute difference of any feature
+   */
+  public static final DistanceMetric CHEBYSHEV = new Chebyshev();
+
+  /**
+   * one minus the cosine of the angle between the rows
+   */
+  public static final DistanceMetric COSINE = new Cosine();
+
+  private static final DistanceMetric[] NAMED = {
+      EUCLIDEAN, SQUARED_EUCLIDEAN, MANHATTAN, CHEBYSHEV, COSINE
+  };
+
+  private DistanceMetrics() { }
+
+  /**
+   * @return every metric that can be looked up by name
+   */
+  public static DistanceMetric[] values() {
+    return NAMED.clone();
+  }
+
+  /**
+   * Looks up a metric by name. A weighted Euclidean metric is written as 'weighted:' followed by a
+   * comma separated weight for every feature.
+   * @param name the name of the metric
+   * @return the metric
+   * @throws IllegalArgumentException if there is no metric with the name, or a weight is not a
+   * finite number at least 0
+   */
+  public static DistanceMetric forName(String name) {
+    String lower = name.trim().toLowerCase(Locale.ROOT);
+    for (DistanceMetric metric : NAMED) {
+      if (metric.getName().equals(lower)) {
+        return metric;
+      }
+    }
+    if (lower.startsWith("weighted:")) {
+      String[] parts = lower.substring("weighted:".length()).split(",");
+      double[] weights = new double[parts.length];
+      for (int i = 0; i < parts.length; i++) {
+        try {
+          weights[i] = Double.parseDouble(parts[i].trim());
+        }
+        catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Invalid weight '" + parts[i] + "' in " + name);
+        }
+      }
+      return new WeightedEuclidean(weights);
+    }
+    throw new IllegalArgumentException("Unknown distance metric: " + name);
+  }
+
+  /**
+   * Calculates the squared Euclidean distance from one row to a range of rows, four rows at a time
+   * with independent sums so the additions of different pairs overlap. Each sum is still taken in
+   * feature order, so the results match the one-pair kernel exactly.
+   */
+  private static void squaredEuclidean(double[] data, int dimensions, int row, int start, int end,
+                                       double[] out) {
+    int offset = row * dimensions;
+    int j = start;
+
+    for (; j + 3 < end; j += 4) {
+      int offsetJ = j * dimensions;
+      double sum0 = 0;
+      double sum1 = 0;
+      double sum2 = 0;
+      double sum3 = 0;
+      for (int d = 0; d < dimensions; d++) {
+        double value = data[offset + d];
+        double difference0 = value - data[offsetJ + d];
+        double difference1 = value - data[offsetJ + dimensions + d];
+        double difference2 = value - data[offsetJ + 2 * dimensions + d];
+        double difference3 = value - data[offsetJ + 3 * dimensions + d];
+        sum0 += difference0 * difference0;
+        sum1 += difference1 * difference1;
+        sum2 += difference2 * difference2;
+        sum3 += difference3 * difference3;
+      }
+      out[j - start] = sum0;
+      out[j - start + 1] = sum1;
+      out[j - start + 2] = sum2;
+      out[j - start + 3] = sum3;
+    }
+    for (; j < end; j++) {
+      out[j - start] = squaredEuclidean(data, offset, data, j * dimensions, dimensions);
+    }
+  }
+
+  private static double squaredEuclidean(double[] a, int offsetA, double[] b, int offsetB,
+                                         int dimensions) {
+    double sum = 0;
+    for (int i = 0; i < dimensions; i++) {
+      double difference = a[offsetA + i] - b[offsetB + i];
+      sum += difference * difference;
+    }
+    return sum;
+  }
+
+  /**
+   * The single-precision counterpart of
+   * {@link #squaredEuclidean(double[], int, int, int, int, double[])}.
+   */
+  private static void squaredEuclidean(float[] data, int dimensions, int row, int start, int end,
+                                       float[] out) {
+    int offset = row * dimensions;
+    int j = start;
+
+    for (; j + 3 < end; j += 4) {
+      int offsetJ = j * dimensions;
+      float sum0 = 0;
+      float sum1 = 0;
+      float sum2 = 0;
+      float sum3 = 0;
+      for (int d = 0; d < dimensions; d++) {
+        float value = data[offset + d];
+        float difference0 = value - data[offsetJ + d];
+        float difference1 = value - data[offsetJ + dimensions + d];
+        float difference2 = value - data[offsetJ + 2 * dimensions + d];
+        float difference3 = value - data[offsetJ + 3 * dimensions + d];
+        sum0 += difference0 * difference0;
+        sum1 += difference1 * difference1;
+        sum2 += difference2 * difference2;
+        sum3 += difference3 * difference3;
+      }
+      out[j - start] = sum0;
+      out[j - start + 1] = sum1;
+      out[j - start + 2] = sum2;
+      out[j - start + 3] = sum3;
+    }
+    for (; j < end; j++) {
+      out[j - start] = squaredEuclidean(data, offset, data, j * dimensions, dimensions);
+    }
+  }
+
+  private static float squaredEuclidean(float[] a, int offsetA, float[] b, int offsetB,
+                                        int dimensions) {
+    float sum = 0;
+    for (int i = 0; i < dimensions; i++) {
+      float difference = a[offsetA + i] - b[offsetB + i];
+      sum += difference * difference;
+    }
+    return sum;
+  }
+
+  /**
+   * The straight-line distance between two rows.
+   */
+  public static final class Euclidean implements DistanceMetric {
+    @Override
+    public double distance(double[] a, int offsetA, double[] b, int offsetB, int dimensions) {
+      return Math.sqrt(squaredEuclidean(a, offsetA, b, offsetB, dimensions));
+    }
+
+    @Override
+    public void distances(double[] data, int dimensions, int row, int start, int end,
+                          double[] out) {
+      squaredEuclidean(data, dimensions, row, start, end, out);
+      for (int j = 0; j < end - start; j++) {
+        out[j] = Math.sqrt(out[j]);
+      }
+    }
+
+    @Override
+    public float distance(float[] a, int offsetA, float[] b, int offsetB, int dimensions) {
+      return (float) Math.sqrt(squaredEuclidean(a, offsetA, b, offsetB, dimensions));
+    }
+
+    @Override
+    public void distances(float[] data, int dimensions, int row, int start, int end,
+                          float[] out) {
+      squaredEuclidean(data, dimensions, row, start, end, out);
+      for (int j = 0; j < end - start; j++) {
+        out[j] = (float) Math.sqrt(out[j]);
+      }
+    }
+
+    @Override
+    public String getName() {
+      return "euclidean";
+    }
+  }
+
+  /**
+   * The square of the straight-line distance between two rows.
+   */
+  public static final class SquaredEuclidean implements DistanceMetric {
+    @Override
+    public double distance(double[] a, int offsetA, double[] b, int offsetB, int dimensions) {
+      return squaredEuclidean(a, offsetA, b, offsetB, dimensions);
+    }
+
+    @Override
+    public void distances(double[] data, int dimensions, int row, int start, int end,
+                          double[] out) {
+      squaredEuclidean(data, dimensions, row, start, end, out);
+    }
+
+    @Override
+    public float distance(float[] a, int offsetA, float[] b, int offsetB, int dimensions) {
+      return squaredEuclidean(a, offsetA, b, offsetB, dimensions);
+    }
+
+    @Override
+    public void distances(float[] data, int dimensions, int row, int start, int end,
+                          float[] out) {
+      squaredEuclidean(data, dimensions, row, start, end, out);
+    }
+
+    @Override
+    public String getName() {
+      return "sqeuclidean";
+    }
+  }
+
+  /**
+   * The sum of the absolute differences of the features of two rows.
+   */
+  public static final class Manhattan implements DistanceMetric {
+    @Override
+    public double distance(double[] a, int offsetA, double[] b, int offsetB, int dimensions) {
+      double sum = 0;
+      for (int i = 0; i < dimensions; i++) {
+        sum += Math.abs(a[offsetA + i] - b[offsetB + i]);
+      }
+      return sum;
+    }
+
+    @Override
+    public float distance(float[] a, int offsetA, float[] b, int offsetB, int dimensions) {
+      float sum = 0;
+      for (int i = 0; i < dimensions; i++) {
+        sum += Math.abs(a[offsetA + i] - b[offsetB + i]);
+      }
+      return sum;
+    }
+
+    @Override
+    public String getName() {
+      return "manhattan";
+    }
+  }
+
+  /**
+   * The largest absolute difference of any feature of two rows.
+   */
+  public static final class Chebyshev implements DistanceMetric {
+    @Override
+    public double distance(double[] a, int offsetA, double[] b, int offsetB, int dimensions) {
+      double max = 0;
+      for (int i = 0; i < dimensions; i++) {
+        max = Math.max(max, Math.abs(a[offsetA + i] - b[offsetB + i]));
+      }
+      return max;
+    }
+
+    @Override
+    public float distance(float[] a, int offsetA, float[] b, int offsetB, int dimensions) {
+      float max = 0;
+      for (int i = 0; i < dimensions; i++) {
+        max = Math.max(max, Math.abs(a[offsetA + i] - b[offsetB + i]));
+      }
+      return max;
+    }
+
+    @Override
+    public String getName() {
+      return "chebyshev";
+    }
+  }
+
+  /**
+   * One minus the cosine similarity of two rows. A row of all zeros is treated as being at distance
+   * 1 from everything.
+   */
+  public static final class Cosine implements DistanceMetric {
+    @Override
+    public double distance(double[] a, int offsetA, double[] b, int offsetB, int dimensions) {
+      double dot = 0;
+      double normA = 0;
+      double normB = 0;
+      for (int i = 0; i < dimensions; i++) {
+        double valueA = a[offsetA + i];
+        double valueB = b[offsetB + i];
+        dot += valueA * valueB;
+        normA += valueA * valueA;
+        normB += valueB * valueB;
+      }
+      double norms = Math.sqrt(normA * normB);
+      return norms == 0 ? 1 : 1 - dot / norms;
+    }
+
+    @Override
+    public float distance(float[] a, int offsetA, float[] b, int offsetB, int dimensions) {
+      float dot = 0;
+      float normA = 0;
+      float normB = 0;
+      for (int i = 0; i < dimensions; i++) {
+        float valueA = a[offsetA + i];
+        float valueB = b[offsetB + i];
+        dot += valueA * valueB;
+        normA += valueA * valueA;
+        normB += valueB * valueB;
+      }
+      float norms = (float) Math.sqrt(normA * normB);
+      return norms == 0 ? 1 : 1 - dot / norms;
+    }
+
+    @Override
+    public String getName() {
+      return "cosine";
+    }
+  }
+
+  /**
+   * The Euclidean distance with every squared difference multiplied by a weight for its feature.
+   * The kernels do not check the number of features; callers check it once with
+   * {@link #checkDimensions(int)} before measuring any pair.
+   */
+  public static final class WeightedEuclidean implements DistanceMetric {
+    private final double[] weights;
+
+    /**
+     * @param weights the weight of every feature
+     * @throws IllegalArgumentException if any weight is negative, infinite or NaN, which would
+     * give NaN distances or break the triangle inequality
+     */
+    public WeightedEuclidean(double[] weights) {
+      for (double weight : weights) {
+        if (!(weight >= 0) || Double.isInfinite(weight)) {
+          throw new IllegalArgumentException("Weights must be finite and not negative: " + weight);
+        }
+      }
+      this.weights = weights.clone();
+    }
+
+    @Override
+    public double distance(double[] a, int offsetA, double[] b, int offsetB, int dimensions) {
+      double sum = 0;
+      for (int i = 0; i < dimensions; i++) {
+        double difference = a[offsetA + i] - b[offsetB + i];
+        sum += weights[i] * difference * difference;
+      }
+      return Math.sqrt(sum);
+    }
+
+    @Override
+    public float distance(float[] a, int offsetA, float[] b, int offsetB, int dimensions) {
+      float sum = 0;
+      for (int i = 0; i < dimensions; i++) {
+        float difference = a[offsetA + i] - b[offsetB + i];
+        sum += (float) weights[i] * difference * difference;
+      }
+      return (float) Math.sqrt(sum);
+    }
+
+    @Override
+    public void checkDimensions(int dimensions) {
+      if (dimensions != weights.length) {
+        throw new IllegalArgumentException("Expected " + weights.length + " weights but there are "
+                                           + dimensions + " features");
+      }
+    }
+
+    @Override
+    public String getName() {
+      return "weighted:" + Arrays.toString(weights).replaceAll("[\\[\\] ]", "");
+    }
+  }
+}
@@ -0,0 +1,315 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A compact list of weighted edges stored as parallel primitive arrays rather than as
+ * ImageSegmentEdge objects. Each edge costs 16 bytes, and the list is sorted in place with an MSD
+ * radix sort on the bit patterns of the weights instead of through compareTo.
+ * @author Kurt Marcinkiewicz
+ */
+public class EdgeList implements SortableEdges {
+  private static final int RADIX_BITS = 8;
+  private static final int RADIX = 1 << RADIX_BITS;
+  /** the bytes of a sort key: the weight followed by the larger and the smaller node */
+  private static final int KEY_BYTES = 2 * Long.BYTES;
+  /** the size below which a bucket is finished with an insertion sort */
+  private static final int INSERTION_SORT_SIZE = 32;
+
+  private int[] a;
+  private int[] b;
+  private double[] weights;
+  private int size;
+  private boolean sorted = true;
+
+  public EdgeList() {
+    this(16);
+  }
+
+  /**
+   * @param capacity the number of edges to allocate room for
+   */
+  public EdgeList(int capacity) {
+    this.a = new int[capacity];
+    this.b = new int[capacity];
+    this.weights = new double[capacity];
+  }
+
+  /**
+   * Builds the complete edge list between every pair of nodes, in the same order as
+   * {@link ImageSegmentGraph#addImageSegmentNode(ImageSegmentNode)} creates them.
+   * @param nodes the nodes in the graph
+   * @return the edge list
+   */
+  public static EdgeList completeGraph(ArrayList<ImageSegmentNode> nodes) {
+    EdgeList edges = new EdgeList(completeGraphSize(nodes.size()));
+
+    for (int i = 1; i < nodes.size(); i++) {
+      ImageSegmentNode node = nodes.get(i);
+      for (int j = 0; j < i; j++) {
+        edges.add(i, j, ImageSegmentGraph.distance(node, nodes.get(j)));
+      }
+    }
+    return edges;
+  }
+
+  /**
+   * Builds the complete edge list between every pair of rows of a feature matrix, in the same order
+   * as {@link #completeGraph(ArrayList)}. The distances are computed in parallel by
+   * {@link PairwiseDistances}.
+   * @param matrix the feature matrix
+   * @return the edge list
+   */
+  public static EdgeList completeGraph(FeatureMatrix matrix) {
+    return PairwiseDistances.completeGraph(matrix);
+  }
+
+  /**
+   * Builds the complete edge list between every pair of rows of a feature matrix with the given
+   * distance metric.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @return the edge list
+   */
+  public static EdgeList completeGraph(FeatureMatrix matrix, DistanceMetric metric) {
+    return PairwiseDistances.completeGraph(matrix, metric);
+  }
+
+  /**
+   * Creates a list holding the given number of edges, every one of which must be filled in with
+   * {@link #set(int, int, int, double)} before it is used.
+   * @param size the number of edges
+   * @return the edge list
+   */
+  static EdgeList ofSize(int size) {
+    EdgeList edges = new EdgeList(size);
+    edges.size = size;
+    edges.sorted = false;
+    return edges;
+  }
+
+  /**
+   * Finds the number of edges in a complete graph, checking that they fit in an array.
+   * @param nodes the number of nodes in the graph
+   * @return the number of edges
+   */
+  static int completeGraphSize(int nodes) {
+    long count = (long) nodes * (nodes - 1) / 2;
+    if (count > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("A complete graph of " + nodes + " nodes has too many edges"
+                                         + " to hold in memory");
+    }
+    return (int) count;
+  }
+
+  /**
+   * Adds an edge to the list.
+   * @param a the first node
+   * @param b the second node
+   * @param weight the edge weight
+   */
+  public void add(int a, int b, double weight) {
+    if (size == weights.length) {
+      grow();
+    }
+    this.a[size] = a;
+    this.b[size] = b;
+    this.weights[size] = weight;
+    size++;
+    sorted = false;
+  }
+
+  /**
+   * Replaces an edge in the list. Different edges may be set from different threads.
+   * @param i the edge
+   * @param a the first node
+   * @param b the second node
+   * @param weight the edge weight
+   */
+  void set(int i, int a, int b, double weight) {
+    this.a[i] = a;
+    this.b[i] = b;
+    this.weights[i] = weight;
+  }
+
+  /**
+   * @return the number of edges
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param i the edge
+   * @return the first node of the edge
+   */
+  @Override
+  public int getA(int i) {
+    return a[i];
+  }
+
+  /**
+   * @param i the edge
+   * @return the second node of the edge
+   */
+  @Override
+  public int getB(int i) {
+    return b[i];
+  }
+
+  /**
+   * @param i the edge
+   * @return the weight of the edge
+   */
+  public double getWeight(int i) {
+    return weights[i];
+  }
+
+  /**
+   * @param i the edge
+   * @return the edge as an ImageSegmentEdge
+   */
+  @Override
+  public ImageSegmentEdge getEdge(int i) {
+    return new ImageSegmentEdge(a[i], b[i], weights[i]);
+  }
+
+  /**
+   * Sorts the edges by increasing weight, breaking ties by the larger node and then the smaller,
+   * the order of {@link ImageSegmentEdge#KRUSKAL_ORDER}. For a complete graph, whose edges are
+   * added in that node order, this is the order a stable sort by weight gives. Uses an in-place MSD
+   * radix sort (American flag sort) over the IEEE-754 bit patterns of the weights and then the
+   * nodes, one byte at a time, finishing small buckets with an insertion sort. Besides two count
+   * tables per key byte it allocates nothing, so sorting takes no heap beyond the list itself.
+   */
+  @Override
+  public void sort() {
+    if (sorted) {
+      return;
+    }
+    sort(0, size, 0, new int[KEY_BYTES][RADIX], new int[KEY_BYTES][RADIX]);
+    sorted = true;
+  }
+
+  /**
+   * Sorts a range of the edges whose keys all share the bytes above the given one.
+   * @param from the first edge of the range
+   * @param to the end of the range
+   * @param level the key byte to sort by, counting from the most significant
+   * @param heads the next free position of every bucket, one table per key byte
+   * @param ends the end of every bucket, one table per key byte
+   */
+  private void sort(int from, int to, int level, int[][] heads, int[][] ends) {
+    while (to - from > INSERTION_SORT_SIZE && level < KEY_BYTES) {
+      int[] head = heads[level];
+      int[] end = ends[level];
+      Arrays.fill(end, 0);
+      for (int i = from; i < to; i++) {
+        end[digit(i, level)]++;
+      }
+      if (end[digit(from, level)] == to - from) {
+        level++;
+        continue;
+      }
+
+      for (int bucket = 0, offset = from; bucket < RADIX; bucket++) {
+        head[bucket] = offset;
+        offset += end[bucket];
+        end[bucket] = offset;
+      }
+      for (int bucket = 0; bucket < RADIX; bucket++) {
+        while (head[bucket] < end[bucket]) {
+          int digit = digit(head[bucket], level);
+          if (digit == bucket) {
+            head[bucket]++;
+          }
+          else {
+            swap(head[bucket], head[digit]++);
+          }
+        }
+      }
+      for (int bucket = 0, start = from; bucket < RADIX; bucket++) {
+        sort(start, end[bucket], level + 1, heads, ends);
+        start = end[bucket];
+      }
+      return;
+    }
+
+    for (int i = from + 1; i < to; i++) {
+      for (int j = i; j > from && precedes(j, j - 1); j--) {
+        swap(j, j - 1);
+      }
+    }
+  }
+
+  /**
+   * Finds one byte of the sort key of an edge: the sortable bits of its weight followed by its
+   * larger and then its smaller node.
+   * @param i the edge
+   * @param level the key byte, counting from the most significant
+   * @return the byte
+   */
+  private int digit(int i, int level) {
+    long key = level < Long.BYTES ? toSortableBits(weights[i])
+               : (long) Math.max(a[i], b[i]) << Integer.SIZE | Math.min(a[i], b[i]);
+    return (int) (key >>> (Long.SIZE - RADIX_BITS * (level % Long.BYTES + 1))) & (RADIX - 1);
+  }
+
+  /**
+   * @param i the first edge
+   * @param j the second edge
+   * @return true if the first edge comes before the second in sorted order
+   */
+  private boolean precedes(int i, int j) {
+    int order = Long.compareUnsigned(toSortableBits(weights[i]), toSortableBits(weights[j]));
+    if (order == 0) {
+      order = Integer.compare(Math.max(a[i], b[i]), Math.max(a[j], b[j]));
+    }
+    if (order == 0) {
+      order = Integer.compare(Math.min(a[i], b[i]), Math.min(a[j], b[j]));
+    }
+    return order < 0;
+  }
+
+  /**
+   * Exchanges two edges.
+   * @param i the first edge
+   * @param j the second edge
+   */
+  private void swap(int i, int j) {
+    int node = a[i];
+    a[i] = a[j];
+    a[j] = node;
+    node = b[i];
+    b[i] = b[j];
+    b[j] = node;
+    double weight = weights[i];
+    weights[i] = weights[j];
+    weights[j] = weight;
+  }
+
+  /**
+   * Converts a double into a long whose unsigned order matches the order of the doubles. Positive
+   * numbers have their sign bit flipped and negative numbers have every bit flipped.
+   * @param value the double
+   * @return the sortable bits
+   */
+  private static long toSortableBits(double value) {
+    long bits = Double.doubleToRawLongBits(value);
+    return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+  }
+
+  /**
+   * Doubles the capacity of the list.
+   */
+  private void grow() {
+    int capacity = Math.max(16, weights.length * 2);
+    a = Arrays.copyOf(a, capacity);
+    b = Arrays.copyOf(b, capacity);
+    weights = Arrays.copyOf(weights, capacity);
+  }
+
+  public String toString() {
+    return "EdgeList{size=" + size + '}';
+  }
+}
@@ -0,0 +1,61 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+
+/**
+ * Checks that every exact {@link MstEngine} gives the same clusters as Kruskal's algorithm over
+ * the complete edge list, at every number of clusters. The MST edge sets are compared, and then
+ * the labels of {@link Dendrogram#labels(int)} for every k from 1 to the number of rows, which
+ * also catches engines that find the same edges but break ties between them differently.
+ *
+ * Usage: java EngineAgreementReport [file] [metric ...]
+ *
+ * The file defaults to segment-full.arff and the metrics to every named metric. For every metric
+ * and engine it prints the number of MST edges missing from Kruskal's MST and the number of k
+ * whose labels differ, and it exits with status 1 if any engine disagrees.
+ * @author Kurt Marcinkiewicz
+ */
+public class EngineAgreementReport {
+  public static void main(String[] args) throws IOException {
+    File file = new File(args.length > 0 ? args[0] : "segment-full.arff");
+    DistanceMetric[] metrics = Reports.metrics(args, 1);
+
+    FeatureMatrix matrix = DatasetSnapshot.load(file);
+    int n = matrix.getRows();
+    System.out.println(matrix);
+    System.out.println("metric, engine, differing edges, differing k");
+
+    boolean agree = true;
+    for (DistanceMetric metric : metrics) {
+      ArrayList<ImageSegmentEdge> reference = MstEngine.KRUSKAL.minimumSpanningTree(matrix, metric);
+      HashSet<Long> referenceEdges = Reports.edgeKeys(reference, n);
+      Dendrogram referenceDendrogram = new Dendrogram(reference, n);
+
+      for (MstEngine engine : MstEngine.values()) {
+        if (engine == MstEngine.KRUSKAL || !engine.isExact()) {
+          continue;
+        }
+        ArrayList<ImageSegmentEdge> mst = engine.minimumSpanningTree(matrix, metric);
+        int differingEdges = Reports.missingEdges(mst, referenceEdges, n);
+        Dendrogram dendrogram = new Dendrogram(mst, n);
+        int differingKs = 0;
+        for (int k = Math.max(1, dendrogram.getMinClusters()); k <= n; k++) {
+          if (!Arrays.equals(referenceDendrogram.labels(k).getLabels(),
+                             dendrogram.labels(k).getLabels())) {
+            differingKs++;
+          }
+        }
+        agree &= differingEdges == 0 && differingKs == 0;
+        System.out.println(metric.getName() + ", " + engine.name().toLowerCase(Locale.ROOT) + ", "
+                           + differingEdges + ", " + differingKs);
+      }
+    }
+    if (!agree) {
+      System.out.println("Some engines disagree with Kruskal's algorithm.");
+      System.exit(1);
+    }
+  }
+}
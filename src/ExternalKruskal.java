@@ -0,0 +1,309 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.stream.IntStream;
+
+/**
+ * Kruskal's algorithm over complete graphs too large to hold in memory. The edges are generated in
+ * blocks small enough for the memory budget, each block is radix sorted and spilled to a temporary
+ * file as a sorted run, and the runs are then merged through memory-mapped windows straight into
+ * the Union-Find. The merge stops as soon as the clusters are formed, so the heaviest edges are
+ * never read back, and at no point are more edges held on the heap than fit in one block.
+ *
+ * Blocks are consecutive ranges of the edge order of {@link PairwiseDistances} and ties between
+ * runs go to the earlier run, so the edges come out in the same order as a stable sort of the
+ * whole edge list and the clusters are identical to those of
+ * {@link Algorithms#singleLinkCluster(EdgeList, int, int)}.
+ * @author Kurt Marcinkiewicz
+ */
+public class ExternalKruskal {
+  /**
+   * The memory budget used when none is given: a quarter of the maximum heap.
+   */
+  public static final long DEFAULT_MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 4;
+
+  private static final long MIN_MEMORY_BUDGET = 1 << 20;
+  /**
+   * the heap used per edge while a block is sorted, which is in place: just the edge list
+   */
+  private static final int SORT_BYTES_PER_EDGE = 16;
+  private static final int RECORD_BYTES = 16;
+  private static final int CHUNK_RECORDS = (1 << 30) / RECORD_BYTES;
+  private static final int MIN_WINDOW_RECORDS = 4096;
+
+  private final long memoryBudget;
+  private final File directory;
+  private int runCount;
+
+  /**
+   * @param memoryBudget the number of bytes of heap the edges may take up at once
+   * @param directory the directory to spill runs to, or null for the default temporary directory
+   * @throws IllegalArgumentException if the budget is below 1 MB
+   */
+  public ExternalKruskal(long memoryBudget, File directory) {
+    if (memoryBudget < MIN_MEMORY_BUDGET) {
+      throw new IllegalArgumentException("The memory budget must be at least " + MIN_MEMORY_BUDGET
+                                         + " bytes");
+    }
+    this.memoryBudget = memoryBudget;
+    this.directory = directory;
+  }
+
+  /**
+   * Creates single-link clusters over the complete graph between the rows of a feature matrix.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @param k the desired number of clusters
+   * @return the MST edges joining the k clusters
+   * @throws IOException if the runs cannot be spilled or read back
+   */
+  public ArrayList<ImageSegmentEdge> singleLinkCluster(FeatureMatrix matrix, DistanceMetric metric,
+                                                       int k) throws IOException {
+    int n = matrix.getRows();
+    long total = (long) n * (n - 1) / 2;
+    int blockEdges = (int) Math.min(Math.min(memoryBudget / SORT_BYTES_PER_EDGE, total),
+                                    Integer.MAX_VALUE - 8);
+    runCount = 0;
+
+    if (total == 0) {
+      return new ArrayList<>();
+    }
+    else if (blockEdges == total) {
+      EdgeList edges = generate(matrix, metric, 0, blockEdges);
+      return Algorithms.singleLinkCluster(edges, n, k);
+    }
+
+    ArrayList<File> runs = new ArrayList<>();
+    try {
+      for (long start = 0; start < total; start += blockEdges) {
+        EdgeList edges = generate(matrix, metric, start, (int) Math.min(blockEdges, total - start));
+        edges.sort();
+        runs.add(spill(edges));
+      }
+      runCount = runs.size();
+      return merge(runs, n, k);
+    }
+    finally {
+      for (File run : runs) {
+        if (!run.delete()) {
+          run.deleteOnExit();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the number of sorted runs spilled by the last call to
+   * {@link #singleLinkCluster(FeatureMatrix, DistanceMetric, int)}, or 0 if every edge fit in one
+   * block
+   */
+  public int getRunCount() {
+    return runCount;
+  }
+
+  /**
+   * Computes a consecutive range of the complete edge list in parallel, one row of the lower
+   * triangle at a time. Edge (i, j) with j &lt; i is at position i(i-1)/2 + j.
+   * @param start the position of the first edge
+   * @param count the number of edges
+   * @return the edges
+   */
+  private static EdgeList generate(FeatureMatrix matrix, DistanceMetric metric, long start,
+                                   int count) {
+    EdgeList edges = EdgeList.ofSize(count);
+    long end = start + count;
+    int firstRow = rowOf(start);
+    int lastRow = rowOf(end - 1);
+    double[] data = matrix.getData();
+    int dimensions = matrix.getDimensions();
+
+    IntStream.rangeClosed(firstRow, lastRow).parallel().forEach(i -> {
+      long rowStart = (long) i * (i - 1) / 2;
+      int fromJ = (int) Math.max(0, start - rowStart);
+      int toJ = (int) Math.min(i, end - rowStart);
+      double[] distances = new double[toJ - fromJ];
+      metric.distances(data, dimensions, i, fromJ, toJ, distances);
+      int offset = (int) (rowStart + fromJ - start);
+      for (int j = fromJ; j < toJ; j++) {
+        edges.set(offset + j - fromJ, i, j, distances[j - fromJ]);
+      }
+    });
+    return edges;
+  }
+
+  /**
+   * @param position the position of an edge in the complete edge list
+   * @return the larger node of the edge
+   */
+  private static int rowOf(long position) {
+    int i = (int) ((1 + Math.sqrt(1 + 8.0 * position)) / 2);
+    while ((long) i * (i - 1) / 2 > position) {
+      i--;
+    }
+    while ((long) (i + 1) * i / 2 <= position) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Writes a sorted block of edges to a new temporary file through memory-mapped chunks, as
+   * (weight, a, b) records.
+   * @return the file
+   */
+  private File spill(EdgeList edges) throws IOException {
+    File run = (directory == null ? Files.createTempFile("kruskal-run", ".bin")
+                                  : Files.createTempFile(directory.toPath(), "kruskal-run", ".bin"))
+        .toFile();
+    try (RandomAccessFile raf = new RandomAccessFile(run, "rw")) {
+      FileChannel channel = raf.getChannel();
+      for (int i = 0; i < edges.size(); i += CHUNK_RECORDS) {
+        int count = Math.min(CHUNK_RECORDS, edges.size() - i);
+        MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE,
+                                             (long) i * RECORD_BYTES, (long) count * RECORD_BYTES);
+        chunk.order(ByteOrder.LITTLE_ENDIAN);
+        for (int e = i; e < i + count; e++) {
+          chunk.putDouble(edges.getWeight(e));
+          chunk.putInt(edges.getA(e));
+          chunk.putInt(edges.getB(e));
+        }
+      }
+    }
+    return run;
+  }
+
+  /**
+   * Merges the sorted runs through a binary heap of their current edges, adding every edge that
+   * joins two components to the MST until k clusters are left.
+   */
+  private ArrayList<ImageSegmentEdge> merge(ArrayList<File> files, int nodes, int k)
+      throws IOException {
+    int windowRecords = (int) Math.max(MIN_WINDOW_RECORDS,
+                                       Math.min(CHUNK_RECORDS, memoryBudget / 2 / files.size()
+                                                               / RECORD_BYTES));
+    Run[] runs = new Run[files.size()];
+    int[] heap = new int[runs.length];
+    int heapSize = 0;
+    UnionFind uf = new UnionFind(nodes);
+    ArrayList<ImageSegmentEdge> mst = new ArrayList<>(Math.max(nodes - k, 0));
+
+    try {
+      for (int i = 0; i < runs.length; i++) {
+        runs[i] = new Run(files.get(i), windowRecords);
+        if (runs[i].advance()) {
+          heap[heapSize++] = i;
+          siftUp(runs, heap, heapSize - 1);
+        }
+      }
+
+      while (heapSize > 0 && mst.size() < nodes - k) {
+        Run run = runs[heap[0]];
+        if (uf.union(run.a, run.b)) {
+          mst.add(new ImageSegmentEdge(run.a, run.b, run.weight));
+        }
+        if (!run.advance()) {
+          heap[0] = heap[--heapSize];
+        }
+        siftDown(runs, heap, heapSize, 0);
+      }
+    }
+    finally {
+      for (Run run : runs) {
+        if (run != null) {
+          run.close();
+        }
+      }
+    }
+    return mst;
+  }
+
+  private static void siftUp(Run[] runs, int[] heap, int i) {
+    while (i > 0 && isBefore(runs, heap[i], heap[(i - 1) / 2])) {
+      int swap = heap[i];
+      heap[i] = heap[(i - 1) / 2];
+      heap[(i - 1) / 2] = swap;
+      i = (i - 1) / 2;
+    }
+  }
+
+  private static void siftDown(Run[] runs, int[] heap, int size, int i) {
+    while (true) {
+      int smallest = i;
+      int left = 2 * i + 1;
+      int right = left + 1;
+      if (left < size && isBefore(runs, heap[left], heap[smallest])) {
+        smallest = left;
+      }
+      if (right < size && isBefore(runs, heap[right], heap[smallest])) {
+        smallest = right;
+      }
+      if (smallest == i) {
+        return;
+      }
+      int swap = heap[i];
+      heap[i] = heap[smallest];
+      heap[smallest] = swap;
+      i = smallest;
+    }
+  }
+
+  /**
+   * @return true if the current edge of run x comes before that of run y, by weight and then run
+   */
+  private static boolean isBefore(Run[] runs, int x, int y) {
+    return runs[x].weight < runs[y].weight || runs[x].weight == runs[y].weight && x < y;
+  }
+
+  /**
+   * A sorted run read back through a memory-mapped window that slides along the file.
+   */
+  private static class Run {
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long records;
+    private final int windowRecords;
+    private MappedByteBuffer window;
+    private long next;
+    private double weight;
+    private int a;
+    private int b;
+
+    Run(File file, int windowRecords) throws IOException {
+      this.raf = new RandomAccessFile(file, "r");
+      this.channel = raf.getChannel();
+      this.records = channel.size() / RECORD_BYTES;
+      this.windowRecords = windowRecords;
+    }
+
+    /**
+     * Moves to the next edge of the run.
+     * @return false if the run is exhausted
+     */
+    boolean advance() throws IOException {
+      if (next == records) {
+        return false;
+      }
+      if (window == null || !window.hasRemaining()) {
+        long count = Math.min(windowRecords, records - next);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, next * RECORD_BYTES,
+                             count * RECORD_BYTES);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+      }
+      weight = window.getDouble();
+      a = window.getInt();
+      b = window.getInt();
+      next++;
+      return true;
+    }
+
+    void close() throws IOException {
+      window = null;
+      raf.close();
+    }
+  }
+}
@@ -0,0 +1,237 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A dataset stored as a dense, row-major matrix of features with the class of every row held in a
+ * parallel array. The number and names of the features come from the .arff header rather than
+ * being fixed, so any numeric dataset can be clustered.
+ * @author Kurt Marcinkiewicz
+ */
+public class FeatureMatrix {
+  private final String[] features;
+  private final String[] classes;
+  private final double[] data;
+  private final int[] labels;
+  private final int rows;
+  private final int dimensions;
+
+  /**
+   * @param features the names of the features
+   * @param classes the possible classes of a row
+   * @param data the features of every row, one row after another
+   * @param labels the index of the class of every row within classes, or -1 if it is unknown
+   */
+  public FeatureMatrix(String[] features, String[] classes, double[] data, int[] labels) {
+    if (features.length == 0 || data.length != labels.length * features.length) {
+      throw new IllegalArgumentException("Expected " + labels.length + " rows of " + features.length
+                                         + " features but found " + data.length + " values");
+    }
+    this.features = features;
+    this.classes = classes;
+    this.data = data;
+    this.labels = labels;
+    this.rows = labels.length;
+    this.dimensions = features.length;
+  }
+
+  /**
+   * Copies the features of image segment nodes into a matrix, using the attribute names and class
+   * order of the UCI segment data.
+   * @param nodes the nodes
+   * @return the matrix
+   */
+  public static FeatureMatrix fromNodes(ArrayList<ImageSegmentNode> nodes) {
+    ImageSegmentNode.SegmentClass[] segmentClasses = ImageSegmentNode.SegmentClass.values();
+    String[] classes = new String[segmentClasses.length];
+    for (int i = 0; i < classes.length; i++) {
+      classes[i] = segmentClasses[i].getValue();
+    }
+
+    Builder builder = new Builder(ImageSegmentNode.ATTRIBUTES, classes);
+    for (ImageSegmentNode node : nodes) {
+      builder.addRow(node.getFeatures(), node.getSegmentClass().ordinal());
+    }
+    return builder.build();
+  }
+
+  /**
+   * @return the number of rows
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * @return the number of features in every row
+   */
+  public int getDimensions() {
+    return dimensions;
+  }
+
+  /**
+   * @param row the row
+   * @param feature the feature
+   * @return the value of the feature in the row
+   */
+  public double get(int row, int feature) {
+    return data[row * dimensions + feature];
+  }
+
+  /**
+   * @return the features of every row, one row after another. The array is shared, not copied
+   */
+  public double[] getData() {
+    return data;
+  }
+
+  /**
+   * @param row the row
+   * @return the index of the class of the row, or -1 if it is unknown
+   */
+  public int getLabel(int row) {
+    return labels[row];
+  }
+
+  /**
+   * @return the class index of every row. The array is shared, not copied
+   */
+  public int[] getLabels() {
+    return labels;
+  }
+
+  /**
+   * @return the names of the features
+   */
+  public String[] getFeatures() {
+    return features.clone();
+  }
+
+  /**
+   * @return the possible classes of a row
+   */
+  public String[] getClasses() {
+    return classes.clone();
+  }
+
+  /**
+   * @return the number of possible classes
+   */
+  public int getClassCount() {
+    return classes.length;
+  }
+
+  /**
+   * Calculates the Euclidean distance between two rows.
+   * @param a the first row
+   * @param b the second row
+   * @return the distance
+   */
+  public double distance(int a, int b) {
+    int offsetA = a * dimensions;
+    int offsetB = b * dimensions;
+    double sum = 0;
+    for (int i = 0; i < dimensions; i++) {
+      double difference = data[offsetA + i] - data[offsetB + i];
+      sum += difference * difference;
+    }
+    return Math.sqrt(sum);
+  }
+
+  /**
+   * Calculates the distance between two rows with the given metric.
+   * @param a the first row
+   * @param b the second row
+   * @param metric the distance metric
+   * @return the distance
+   */
+  public double distance(int a, int b, DistanceMetric metric) {
+    return metric.distance(data, a * dimensions, data, b * dimensions, dimensions);
+  }
+
+  /**
+   * @param row the row
+   * @return the row in friendly format
+   */
+  public String rowToString(int row) {
+    StringBuilder sb = new StringBuilder("Row{");
+    for (int i = 0; i < dimensions; i++) {
+      sb.append(features[i]).append('=').append(get(row, i)).append(", ");
+    }
+    sb.append("class=").append(labels[row] < 0 ? "?" : classes[labels[row]]).append('}');
+    return sb.toString();
+  }
+
+  public String toString() {
+    return "ROWS: " + rows + " DIMENSIONS: " + dimensions;
+  }
+
+  /**
+   * Collects rows one at a time into a growing buffer before creating the matrix.
+   */
+  public static class Builder {
+    private final String[] features;
+    private final String[] classes;
+    private double[] data;
+    private int[] labels;
+    private int rows;
+
+    /**
+     * @param features the names of the features
+     * @param classes the possible classes of a row
+     */
+    public Builder(String[] features, String[] classes) {
+      this.features = features;
+      this.classes = classes;
+      this.data = new double[16 * features.length];
+      this.labels = new int[16];
+    }
+
+    /**
+     * Adds a row to the matrix.
+     * @param values the features of the row
+     * @param label the index of the class of the row, or -1 if it is unknown
+     */
+    public void addRow(double[] values, int label) {
+      int offset = startRow(label);
+      System.arraycopy(values, 0, data, offset, features.length);
+    }
+
+    /**
+     * Adds a row whose features are written directly into {@link #getData()}, avoiding an array per
+     * row.
+     * @param label the index of the class of the row, or -1 if it is unknown
+     * @return the offset within the data array to write the features of the row at
+     */
+    public int startRow(int label) {
+      if (rows == labels.length) {
+        labels = Arrays.copyOf(labels, rows * 2);
+        data = Arrays.copyOf(data, rows * 2 * features.length);
+      }
+      labels[rows] = label;
+      return rows++ * features.length;
+    }
+
+    /**
+     * @return the buffer rows are written to. Replaced whenever the buffer grows, so it must be
+     * fetched again after every {@link #startRow(int)}
+     */
+    public double[] getData() {
+      return data;
+    }
+
+    /**
+     * @return the number of rows added so far
+     */
+    public int getRows() {
+      return rows;
+    }
+
+    /**
+     * @return the matrix of every row added
+     */
+    public FeatureMatrix build() {
+      return new FeatureMatrix(features, classes, Arrays.copyOf(data, rows * features.length),
+                               Arrays.copyOf(labels, rows));
+    }
+  }
+}
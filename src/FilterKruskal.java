@@ -0,0 +1,157 @@
+import java.util.ArrayList;
+
+/**
+ * Kruskal's algorithm without sorting every edge. The edges are partitioned around a pivot as in
+ * quicksort, the light side is processed first, and the heavy side is then filtered against the
+ * Union-Find, dropping every edge that already lies inside a component, before it is partitioned
+ * in turn. Processing stops as soon as enough unions have been made, so the heavy edges that single
+ * link clustering never looks at are never sorted at all.
+ *
+ * Edges are ordered by weight and then by their position in the edge list. For the complete graph
+ * that is the (weight, larger node, smaller node) order {@link EdgeList#sort()} gives
+ * {@link Algorithms#singleLinkCluster(EdgeList, int, int)}, so the results are identical.
+ * @author Kurt Marcinkiewicz
+ */
+public class FilterKruskal {
+  private static final int INSERTION_SORT_SIZE = 32;
+
+  private final EdgeList edges;
+  private final int[] order;
+  private final UnionFind uf;
+  private final ArrayList<ImageSegmentEdge> mst;
+  private final int target;
+
+  private FilterKruskal(EdgeList edges, int nodes, int k) {
+    this.edges = edges;
+    this.order = new int[edges.size()];
+    this.uf = new UnionFind(nodes);
+    this.target = Math.max(nodes - k, 0);
+    this.mst = new ArrayList<>(target);
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+  }
+
+  /**
+   * Creates single-link clusters in a graph using Filter-Kruskal. The edge list is left unchanged.
+   * @param edges the edges to create the MST from
+   * @param nodes the number of nodes in the graph
+   * @param k the desired number of clusters
+   * @return the MST edges joining the k clusters
+   */
+  public static ArrayList<ImageSegmentEdge> singleLinkCluster(EdgeList edges, int nodes, int k) {
+    FilterKruskal filterKruskal = new FilterKruskal(edges, nodes, k);
+    filterKruskal.process(0, filterKruskal.order.length);
+    return filterKruskal.mst;
+  }
+
+  /**
+   * Adds the edges of a range of the order to the MST, lightest first.
+   * @param low the start of the range
+   * @param high the end of the range
+   */
+  private void process(int low, int high) {
+    while (high - low > INSERTION_SORT_SIZE && mst.size() < target) {
+      int pivot = medianOfThree(low, (low + high) >>> 1, high - 1);
+      int middle = partition(low, high, pivot);
+
+      process(low, middle);
+      if (mst.size() >= target) {
+        return;
+      }
+      addEdge(order[middle]);
+      low = middle + 1;
+      high = filter(low, high);
+    }
+    if (mst.size() < target) {
+      insertionSort(low, high);
+      for (int i = low; i < high && mst.size() < target; i++) {
+        addEdge(order[i]);
+      }
+    }
+  }
+
+  /**
+   * Moves every edge of a range lighter than the pivot to its front, followed by the pivot itself.
+   * @param low the start of the range
+   * @param high the end of the range
+   * @param pivot the edge to partition around
+   * @return the position of the pivot
+   */
+  private int partition(int low, int high, int pivot) {
+    int middle = low;
+    for (int i = low; i < high; i++) {
+      if (isLighter(order[i], pivot)) {
+        swap(i, middle++);
+      }
+    }
+    for (int i = middle; i < high; i++) {
+      if (order[i] == pivot) {
+        swap(i, middle);
+        break;
+      }
+    }
+    return middle;
+  }
+
+  /**
+   * Removes every edge that lies inside a single component from a range, keeping the order of the
+   * rest.
+   * @param low the start of the range
+   * @param high the end of the range
+   * @return the end of the remaining edges
+   */
+  private int filter(int low, int high) {
+    int end = low;
+    for (int i = low; i < high; i++) {
+      int edge = order[i];
+      if (uf.find(edges.getA(edge)) != uf.find(edges.getB(edge))) {
+        order[end++] = edge;
+      }
+    }
+    return end;
+  }
+
+  private void addEdge(int edge) {
+    if (uf.union(edges.getA(edge), edges.getB(edge))) {
+      mst.add(edges.getEdge(edge));
+    }
+  }
+
+  private void insertionSort(int low, int high) {
+    for (int i = low + 1; i < high; i++) {
+      int edge = order[i];
+      int j = i - 1;
+      while (j >= low && isLighter(edge, order[j])) {
+        order[j + 1] = order[j];
+        j--;
+      }
+      order[j + 1] = edge;
+    }
+  }
+
+  private int medianOfThree(int a, int b, int c) {
+    int edgeA = order[a];
+    int edgeB = order[b];
+    int edgeC = order[c];
+    if (isLighter(edgeA, edgeB)) {
+      return isLighter(edgeB, edgeC) ? edgeB : isLighter(edgeA, edgeC) ? edgeC : edgeA;
+    }
+    return isLighter(edgeA, edgeC) ? edgeA : isLighter(edgeB, edgeC) ? edgeC : edgeB;
+  }
+
+  /**
+   * @return true if edge a comes before edge b when ordered by weight, then position
+   */
+  private boolean isLighter(int a, int b) {
+    double weightA = edges.getWeight(a);
+    double weightB = edges.getWeight(b);
+    return weightA < weightB || weightA == weightB && a < b;
+  }
+
+  private void swap(int i, int j) {
+    int swap = order[i];
+    order[i] = order[j];
+    order[j] = swap;
+  }
+}
@@ -0,0 +1,273 @@
+import java.util.Arrays;
+
+/**
+ * The single-precision counterpart of {@link EdgeList}: weighted edges stored as parallel primitive
+ * arrays with 32-bit float weights. Each edge costs 12 bytes instead of 16, and the list is sorted
+ * in place with a radix sort whose weight keys are four bytes instead of eight.
+ * @author Kurt Marcinkiewicz
+ */
+public class FloatEdgeList implements SortableEdges {
+  private static final int RADIX_BITS = 8;
+  private static final int RADIX = 1 << RADIX_BITS;
+  /** the bytes of a sort key: the weight followed by the larger and the smaller node */
+  private static final int KEY_BYTES = Integer.BYTES + Long.BYTES;
+  /** the size below which a bucket is finished with an insertion sort */
+  private static final int INSERTION_SORT_SIZE = 32;
+
+  private int[] a;
+  private int[] b;
+  private float[] weights;
+  private int size;
+  private boolean sorted = true;
+
+  public FloatEdgeList() {
+    this(16);
+  }
+
+  /**
+   * @param capacity the number of edges to allocate room for
+   */
+  public FloatEdgeList(int capacity) {
+    this.a = new int[capacity];
+    this.b = new int[capacity];
+    this.weights = new float[capacity];
+  }
+
+  /**
+   * Builds the complete edge list between every pair of rows of a feature matrix, with the
+   * features and distances in single precision. The distances are computed in parallel by
+   * {@link PairwiseDistances}.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @return the edge list
+   */
+  public static FloatEdgeList completeGraph(FeatureMatrix matrix, DistanceMetric metric) {
+    return PairwiseDistances.completeFloatGraph(matrix, metric);
+  }
+
+  /**
+   * Creates a list holding the given number of edges, every one of which must be filled in with
+   * {@link #set(int, int, int, float)} before it is used.
+   * @param size the number of edges
+   * @return the edge list
+   */
+  static FloatEdgeList ofSize(int size) {
+    FloatEdgeList edges = new FloatEdgeList(size);
+    edges.size = size;
+    edges.sorted = false;
+    return edges;
+  }
+
+  /**
+   * Adds an edge to the list.
+   * @param a the first node
+   * @param b the second node
+   * @param weight the edge weight
+   */
+  public void add(int a, int b, float weight) {
+    if (size == weights.length) {
+      grow();
+    }
+    this.a[size] = a;
+    this.b[size] = b;
+    this.weights[size] = weight;
+    size++;
+    sorted = false;
+  }
+
+  /**
+   * Replaces an edge in the list. Different edges may be set from different threads.
+   * @param i the edge
+   * @param a the first node
+   * @param b the second node
+   * @param weight the edge weight
+   */
+  void set(int i, int a, int b, float weight) {
+    this.a[i] = a;
+    this.b[i] = b;
+    this.weights[i] = weight;
+  }
+
+  /**
+   * @return the number of edges
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param i the edge
+   * @return the first node of the edge
+   */
+  @Override
+  public int getA(int i) {
+    return a[i];
+  }
+
+  /**
+   * @param i the edge
+   * @return the second node of the edge
+   */
+  @Override
+  public int getB(int i) {
+    return b[i];
+  }
+
+  /**
+   * @param i the edge
+   * @return the weight of the edge
+   */
+  public float getWeight(int i) {
+    return weights[i];
+  }
+
+  /**
+   * @param i the edge
+   * @return the edge as an ImageSegmentEdge, with the weight widened to a double
+   */
+  @Override
+  public ImageSegmentEdge getEdge(int i) {
+    return new ImageSegmentEdge(a[i], b[i], weights[i]);
+  }
+
+  /**
+   * Sorts the edges by increasing weight, breaking ties by the larger node and then the smaller,
+   * with the same in-place MSD radix sort as {@link EdgeList#sort()} over the 32-bit patterns of
+   * the weights and then the nodes. Besides two count tables per key byte it allocates nothing, so
+   * sorting takes no heap beyond the list itself.
+   */
+  @Override
+  public void sort() {
+    if (sorted) {
+      return;
+    }
+    sort(0, size, 0, new int[KEY_BYTES][RADIX], new int[KEY_BYTES][RADIX]);
+    sorted = true;
+  }
+
+  /**
+   * Sorts a range of the edges whose keys all share the bytes above the given one.
+   * @param from the first edge of the range
+   * @param to the end of the range
+   * @param level the key byte to sort by, counting from the most significant
+   * @param heads the next free position of every bucket, one table per key byte
+   * @param ends the end of every bucket, one table per key byte
+   */
+  private void sort(int from, int to, int level, int[][] heads, int[][] ends) {
+    while (to - from > INSERTION_SORT_SIZE && level < KEY_BYTES) {
+      int[] head = heads[level];
+      int[] end = ends[level];
+      Arrays.fill(end, 0);
+      for (int i = from; i < to; i++) {
+        end[digit(i, level)]++;
+      }
+      if (end[digit(from, level)] == to - from) {
+        level++;
+        continue;
+      }
+
+      for (int bucket = 0, offset = from; bucket < RADIX; bucket++) {
+        head[bucket] = offset;
+        offset += end[bucket];
+        end[bucket] = offset;
+      }
+      for (int bucket = 0; bucket < RADIX; bucket++) {
+        while (head[bucket] < end[bucket]) {
+          int digit = digit(head[bucket], level);
+          if (digit == bucket) {
+            head[bucket]++;
+          }
+          else {
+            swap(head[bucket], head[digit]++);
+          }
+        }
+      }
+      for (int bucket = 0, start = from; bucket < RADIX; bucket++) {
+        sort(start, end[bucket], level + 1, heads, ends);
+        start = end[bucket];
+      }
+      return;
+    }
+
+    for (int i = from + 1; i < to; i++) {
+      for (int j = i; j > from && precedes(j, j - 1); j--) {
+        swap(j, j - 1);
+      }
+    }
+  }
+
+  /**
+   * Finds one byte of the sort key of an edge: the sortable bits of its weight followed by its
+   * larger and then its smaller node.
+   * @param i the edge
+   * @param level the key byte, counting from the most significant
+   * @return the byte
+   */
+  private int digit(int i, int level) {
+    if (level < Integer.BYTES) {
+      return (toSortableBits(weights[i]) >>> (Integer.SIZE - RADIX_BITS * (level + 1)))
+             & (RADIX - 1);
+    }
+    long nodes = (long) Math.max(a[i], b[i]) << Integer.SIZE | Math.min(a[i], b[i]);
+    return (int) (nodes >>> (Long.SIZE - RADIX_BITS * (level - Integer.BYTES + 1))) & (RADIX - 1);
+  }
+
+  /**
+   * @param i the first edge
+   * @param j the second edge
+   * @return true if the first edge comes before the second in sorted order
+   */
+  private boolean precedes(int i, int j) {
+    int order = Integer.compareUnsigned(toSortableBits(weights[i]), toSortableBits(weights[j]));
+    if (order == 0) {
+      order = Integer.compare(Math.max(a[i], b[i]), Math.max(a[j], b[j]));
+    }
+    if (order == 0) {
+      order = Integer.compare(Math.min(a[i], b[i]), Math.min(a[j], b[j]));
+    }
+    return order < 0;
+  }
+
+  /**
+   * Exchanges two edges.
+   * @param i the first edge
+   * @param j the second edge
+   */
+  private void swap(int i, int j) {
+    int node = a[i];
+    a[i] = a[j];
+    a[j] = node;
+    node = b[i];
+    b[i] = b[j];
+    b[j] = node;
+    float weight = weights[i];
+    weights[i] = weights[j];
+    weights[j] = weight;
+  }
+
+  /**
+   * Converts a float into an int whose unsigned order matches the order of the floats. Positive
+   * numbers have their sign bit flipped and negative numbers have every bit flipped.
+   * @param value the float
+   * @return the sortable bits
+   */
+  private static int toSortableBits(float value) {
+    int bits = Float.floatToRawIntBits(value);
+    return bits ^ ((bits >> 31) | Integer.MIN_VALUE);
+  }
+
+  /**
+   * Doubles the capacity of the list.
+   */
+  private void grow() {
+    int capacity = Math.max(16, weights.length * 2);
+    a = Arrays.copyOf(a, capacity);
+    b = Arrays.copyOf(b, capacity);
+    weights = Arrays.copyOf(weights, capacity);
+  }
+
+  public String toString() {
+    return "FloatEdgeList{size=" + size + '}';
+  }
+}
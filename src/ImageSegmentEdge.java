@@ -1,8 +1,20 @@
+import java.util.Comparator;
+
 /**
  * An 'edge' between two image segments
  * @author Kurt Marcinkiewicz
  */
 public class ImageSegmentEdge implements Comparable<ImageSegmentEdge> {
+  /**
+   * Orders edges by weight, then by their larger node, then by their smaller node: the order in
+   * which Kruskal's algorithm sees the edges of a complete graph, so edges of equal weight are
+   * always taken in the same order whichever engine found them.
+   */
+  public static final Comparator<ImageSegmentEdge> KRUSKAL_ORDER =
+      Comparator.comparingDouble(ImageSegmentEdge::getWeight)
+          .thenComparingInt(edge -> Math.max(edge.getA(), edge.getB()))
+          .thenComparingInt(edge -> Math.min(edge.getA(), edge.getB()));
+
   private final int a;
   private final int b;
   private final double weight;
@@ -7,12 +7,24 @@ import java.util.ArrayList;
 public class ImageSegmentGraph {
   private ArrayList<ImageSegmentNode> imageSegmentNodes = new ArrayList<>();
   private ArrayList<ImageSegmentEdge> imageSegmentEdges = new ArrayList<>();
+  private final boolean materializeEdges;
 
-  public ImageSegmentGraph() { }
+  public ImageSegmentGraph() {
+    this(true);
+  }
+
+  /**
+   * @param materializeEdges whether or not to build the complete edge list as nodes are added. Pass
+   *                         false when the MST is computed directly from the nodes, such as with
+   *                         {@link Algorithms#primMst(ArrayList)}
+   */
+  public ImageSegmentGraph(boolean materializeEdges) {
+    this.materializeEdges = materializeEdges;
+  }
 
   /**
    * Adds a node to the graph. Creates an edge between every the new node and every existing node
-   * in the graph.
+   * in the graph, unless the graph was created without materialized edges.
    * @param node the node to be added
    * @return true if the node is added successfully
    */
@@ -20,10 +32,13 @@ public class ImageSegmentGraph {
     if (!imageSegmentNodes.add(node)) {
       return false;
     }
+    else if (!materializeEdges) {
+      return true;
+    }
     else {
       for (int i = 0; i < imageSegmentNodes.size() - 1; i++) {
         ImageSegmentEdge edge = new ImageSegmentEdge(imageSegmentNodes.size() - 1, i,
-                                                     setWeight(node, imageSegmentNodes.get(i)));
+                                                     distance(node, imageSegmentNodes.get(i)));
         if (!addImageSegmentEdge(edge)) {
           return false;
         }
@@ -66,7 +81,7 @@ public class ImageSegmentGraph {
    * @param b the second node
    * @return the weight of the edge
    */
-  private double setWeight(ImageSegmentNode a, ImageSegmentNode b) {
+  static double distance(ImageSegmentNode a, ImageSegmentNode b) {
     return Math.sqrt(
         Math.pow(a.getRegionCentroidCol() - b.getRegionCentroidCol(), 2) +
         Math.pow(a.getRegionCentroidRow() - b.getRegionCentroidRow(), 2) +
@@ -5,6 +5,16 @@ import java.util.HashMap;
  * @author Kurt Marcinkiewicz
  */
 public class ImageSegmentNode {
+  /**
+   * the names of the attributes in the order they appear in the .arff file
+   */
+  public static final String[] ATTRIBUTES = {
+      "region-centroid-col", "region-centroid-row", "region-pixel-count", "short-line-density-5",
+      "short-line-density-2", "vedge-mean", "vegde-sd", "hedge-mean", "hedge-sd", "intensity-mean",
+      "rawred-mean", "rawblue-mean", "rawgreen-mean", "exred-mean", "exblue-mean", "exgreen-mean",
+      "value-mean", "saturation-mean", "hue-mean"
+  };
+
   private final double regionCentroidCol;
   private final double regionCentroidRow;
   private final double regionPixelCount;
@@ -226,6 +236,18 @@ public class ImageSegmentNode {
     return segmentClass;
   }
 
+  /**
+   * @return every attribute of the image segment, in the order of {@link #ATTRIBUTES}
+   */
+  public double[] getFeatures() {
+    return new double[] {
+        regionCentroidCol, regionCentroidRow, regionPixelCount, shortLineDensity5,
+        shortLineDensity2, vEdgeMean, vEdgeSd, hedgeMean, hedgeSd, intensityMean, rawRedMean,
+        rawBlueMean, rawGreenMean, exRedMean, exBlueMean, exGreenMean, valueMean, saturationMean,
+        hueMean
+    };
+  }
+
   @Override
   public String toString() {
     return "ImageSegment{" +
@@ -278,5 +300,12 @@ public class ImageSegmentNode {
     public static SegmentClass get(String value) {
       return lookup.get(value);
     }
+
+    /**
+     * @return the name of the class as it appears in the .arff file
+     */
+    public String getValue() {
+      return value;
+    }
   }
 }
@@ -0,0 +1,298 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Keeps the MST of a growing dataset current as rows arrive one at a time, so clusters can be
+ * queried between inserts without clustering everything again.
+ *
+ * The MST after inserting a row lies within the old MST plus the edges from the new row to every
+ * other row, so each insert only has to pick n of those 2n - 1 edges. That is done in O(n) time by
+ * walking the old tree from the leaves up. Every subtree keeps one undecided edge to the new row,
+ * its exit, along with the heaviest tree edge on the path from the exit up to the root of the
+ * subtree. Joining a child to its parent closes a cycle through both exits, and the heaviest edge
+ * of that cycle is dropped. Edges are ordered by weight, then by their larger node, then by their
+ * smaller node, so the tree is always the one Kruskal's algorithm would find.
+ *
+ * All methods are synchronized, so queries from other threads see the tree between inserts.
+ * @author Kurt Marcinkiewicz
+ */
+public class IncrementalMst {
+  private static final int NONE = -1;
+
+  private final FeatureMatrix.Builder rows;
+  private final DistanceMetric metric;
+  private final int dimensions;
+  private int[] edgesA = new int[16];
+  private int[] edgesB = new int[16];
+  private double[] weights = new double[16];
+  private Dendrogram dendrogram;
+
+  /**
+   * Creates an empty tree.
+   * @param features the names of the features
+   * @param classes the possible classes of a row
+   * @param metric the distance metric
+   * @throws IllegalArgumentException if the metric cannot measure rows of the features
+   */
+  public IncrementalMst(String[] features, String[] classes, DistanceMetric metric) {
+    metric.checkDimensions(features.length);
+    this.rows = new FeatureMatrix.Builder(features, classes);
+    this.metric = metric;
+    this.dimensions = features.length;
+  }
+
+  /**
+   * Creates a tree from a dataset that has already been clustered.
+   * @param matrix the feature matrix
+   * @param mst the edges of the MST of the matrix, found with the same metric
+   * @param metric the distance metric
+   * @throws IllegalArgumentException if the MST does not span the matrix
+   */
+  public IncrementalMst(FeatureMatrix matrix, ArrayList<ImageSegmentEdge> mst,
+                        DistanceMetric metric) {
+    this(matrix.getFeatures(), matrix.getClasses(), metric);
+    if (mst.size() != Math.max(matrix.getRows() - 1, 0)) {
+      throw new IllegalArgumentException("Expected " + Math.max(matrix.getRows() - 1, 0)
+                                         + " MST edges but found " + mst.size());
+    }
+    double[] values = new double[dimensions];
+    for (int i = 0; i < matrix.getRows(); i++) {
+      System.arraycopy(matrix.getData(), i * dimensions, values, 0, dimensions);
+      rows.addRow(values, matrix.getLabel(i));
+    }
+    ensureCapacity(mst.size());
+    for (int i = 0; i < mst.size(); i++) {
+      edgesA[i] = mst.get(i).getA();
+      edgesB[i] = mst.get(i).getB();
+      weights[i] = mst.get(i).getWeight();
+    }
+  }
+
+  /**
+   * Creates an empty tree for image segment nodes, using the attribute names and class order of the
+   * UCI segment data.
+   * @param metric the distance metric
+   * @return the tree
+   */
+  public static IncrementalMst forImageSegments(DistanceMetric metric) {
+    ImageSegmentNode.SegmentClass[] segmentClasses = ImageSegmentNode.SegmentClass.values();
+    String[] classes = new String[segmentClasses.length];
+    for (int i = 0; i < classes.length; i++) {
+      classes[i] = segmentClasses[i].getValue();
+    }
+    return new IncrementalMst(ImageSegmentNode.ATTRIBUTES, classes, metric);
+  }
+
+  /**
+   * Adds an image segment node and updates the MST.
+   * @param node the node
+   * @return the index of the new node
+   */
+  public int insert(ImageSegmentNode node) {
+    return insert(node.getFeatures(), node.getSegmentClass().ordinal());
+  }
+
+  /**
+   * Adds a row and updates the MST in O(n) time.
+   * @param values the features of the row
+   * @param label the index of the class of the row, or -1 if it is unknown
+   * @return the index of the new row
+   */
+  public synchronized int insert(double[] values, int label) {
+    if (values.length != dimensions) {
+      throw new IllegalArgumentException("Expected " + dimensions + " features but found "
+                                         + values.length);
+    }
+    int x = rows.getRows();
+    rows.addRow(values, label);
+    dendrogram = null;
+    if (x == 0) {
+      return x;
+    }
+
+    double[] data = rows.getData();
+    double[] distances = new double[x];
+    for (int u = 0; u < x; u++) {
+      distances[u] = metric.distance(data, x * dimensions, data, u * dimensions, dimensions);
+    }
+
+    int[] offsets = new int[x + 1];
+    int[] adjacent = new int[2 * (x - 1)];
+    int[] adjacentEdges = new int[2 * (x - 1)];
+    for (int e = 0; e < x - 1; e++) {
+      offsets[edgesA[e] + 1]++;
+      offsets[edgesB[e] + 1]++;
+    }
+    for (int v = 0; v < x; v++) {
+      offsets[v + 1] += offsets[v];
+    }
+    int[] next = Arrays.copyOf(offsets, x);
+    for (int e = 0; e < x - 1; e++) {
+      adjacent[next[edgesA[e]]] = edgesB[e];
+      adjacentEdges[next[edgesA[e]]++] = e;
+      adjacent[next[edgesB[e]]] = edgesA[e];
+      adjacentEdges[next[edgesB[e]]++] = e;
+    }
+
+    int[] order = new int[x];
+    int[] parents = new int[x];
+    int[] parentEdges = new int[x];
+    parents[0] = NONE;
+    int visited = 1;
+    for (int i = 0; i < visited; i++) {
+      int v = order[i];
+      for (int j = offsets[v]; j < offsets[v + 1]; j++) {
+        if (adjacent[j] != parents[v]) {
+          order[visited] = adjacent[j];
+          parents[adjacent[j]] = v;
+          parentEdges[adjacent[j]] = adjacentEdges[j];
+          visited++;
+        }
+      }
+    }
+
+    int[] exits = new int[x];
+    int[] pathMaxima = new int[x];
+    for (int v = 0; v < x; v++) {
+      exits[v] = v;
+      pathMaxima[v] = NONE;
+    }
+    boolean[] dropped = new boolean[x - 1];
+    int[] newA = new int[x];
+    int[] newB = new int[x];
+    double[] newWeights = new double[x];
+    int count = 0;
+
+    for (int i = x - 1; i > 0; i--) {
+      int child = order[i];
+      int parent = parents[child];
+      int e = parentEdges[child];
+      int exitChild = exits[child];
+      int exitParent = exits[parent];
+
+      // the cycle runs from the new row to the exit of the child, up to the child, across e, down
+      // to the exit of the parent and back, and only its heaviest edge can be dropped.
+      int maxChild = heavier(pathMaxima[child], e);
+      boolean childExitHeavier = isHeavier(distances[exitChild], x, exitChild, maxChild);
+      boolean parentExitHeavier = isHeavier(distances[exitParent], x, exitParent,
+                                            pathMaxima[parent]);
+      double heaviestChild = childExitHeavier ? distances[exitChild] : weights[maxChild];
+      double heaviestParent = parentExitHeavier ? distances[exitParent]
+                                                : weights[pathMaxima[parent]];
+      boolean childSideHeavier = BoruvkaMst.isCheaper(
+          heaviestParent, parentExitHeavier ? x : edgesA[pathMaxima[parent]],
+          parentExitHeavier ? exitParent : edgesB[pathMaxima[parent]],
+          heaviestChild, childExitHeavier ? x : edgesA[maxChild],
+          childExitHeavier ? exitChild : edgesB[maxChild]);
+
+      if (childSideHeavier) {
+        if (!childExitHeavier) {
+          dropped[maxChild] = true;
+          newA[count] = x;
+          newB[count] = exitChild;
+          newWeights[count++] = distances[exitChild];
+        }
+      }
+      else {
+        if (!parentExitHeavier) {
+          dropped[pathMaxima[parent]] = true;
+          newA[count] = x;
+          newB[count] = exitParent;
+          newWeights[count++] = distances[exitParent];
+        }
+        exits[parent] = exitChild;
+        pathMaxima[parent] = maxChild;
+      }
+    }
+    newA[count] = x;
+    newB[count] = exits[0];
+    newWeights[count++] = distances[exits[0]];
+    for (int e = 0; e < x - 1; e++) {
+      if (!dropped[e]) {
+        newA[count] = edgesA[e];
+        newB[count] = edgesB[e];
+        newWeights[count++] = weights[e];
+      }
+    }
+
+    edgesA = newA;
+    edgesB = newB;
+    weights = newWeights;
+    return x;
+  }
+
+  /**
+   * @return the number of rows inserted so far
+   */
+  public synchronized int getNodeCount() {
+    return rows.getRows();
+  }
+
+  /**
+   * @return a copy of the edges of the current MST
+   */
+  public synchronized ArrayList<ImageSegmentEdge> getMst() {
+    int count = Math.max(rows.getRows() - 1, 0);
+    ArrayList<ImageSegmentEdge> mst = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      mst.add(new ImageSegmentEdge(edgesA[i], edgesB[i], weights[i]));
+    }
+    return mst;
+  }
+
+  /**
+   * @return the rows inserted so far
+   */
+  public synchronized FeatureMatrix getMatrix() {
+    return rows.build();
+  }
+
+  /**
+   * @return the dendrogram of the current MST, built on the first query after an insert
+   */
+  public synchronized Dendrogram getDendrogram() {
+    if (dendrogram == null) {
+      dendrogram = new Dendrogram(getMst(), rows.getRows());
+    }
+    return dendrogram;
+  }
+
+  /**
+   * Cuts the current MST into k clusters.
+   * @param k the desired number of clusters
+   * @return the cluster labels
+   */
+  public synchronized ClusterLabels labels(int k) {
+    return getDendrogram().labels(k);
+  }
+
+  /**
+   * @return whichever of two tree edges is heavier, where NONE is lighter than any edge
+   */
+  private int heavier(int e1, int e2) {
+    if (e1 == NONE) {
+      return e2;
+    }
+    if (e2 == NONE) {
+      return e1;
+    }
+    return BoruvkaMst.isCheaper(weights[e1], edgesA[e1], edgesB[e1], weights[e2], edgesA[e2],
+                                edgesB[e2]) ? e2 : e1;
+  }
+
+  /**
+   * @return true if the edge (a, b) is heavier than the tree edge e, where NONE is lighter than
+   * any edge
+   */
+  private boolean isHeavier(double weight, int a, int b, int e) {
+    return e == NONE || BoruvkaMst.isCheaper(weights[e], edgesA[e], edgesB[e], weight, a, b);
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > edgesA.length) {
+      edgesA = Arrays.copyOf(edgesA, capacity);
+      edgesB = Arrays.copyOf(edgesB, capacity);
+      weights = Arrays.copyOf(weights, capacity);
+    }
+  }
+}
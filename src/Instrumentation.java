@@ -0,0 +1,423 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records how long each stage of a run takes and what it costs, so a slow run can be attributed to
+ * parsing, edge building, sorting, union-find or cluster extraction without attaching a profiler.
+ * Stages are wrapped in phases:
+ *
+ * <pre>
+ * try (Instrumentation.Phase phase = Instrumentation.start("sort")) {
+ *   edges.sort();
+ *   phase.count("edges", edges.size());
+ * }
+ * </pre>
+ *
+ * Recording is off unless {@link #enable()} is called or the clustering.instrument system property
+ * is true. While it is off, starting a phase returns a shared phase that does nothing, so library
+ * code can be wrapped in phases at no measurable cost.
+ *
+ * Every phase records its wall time, the CPU time of the whole process, the bytes allocated by the
+ * thread running it, the peak heap, and any counters it was given, and emits a {@link PhaseEvent}
+ * for JFR. Phases may be nested; a phase records its depth and includes the cost of the phases
+ * within it. The recorded phases can be printed, or exported as JSON or CSV. Only the most recent
+ * 10000 phases are kept.
+ *
+ * Peak heap is the sum of the peak usage of every heap memory pool since the phase started, which
+ * may exceed the true peak since the pools need not peak at the same time. The CPU time and peak
+ * heap are process wide, so they are only recorded for phases that ran while no other thread had a
+ * phase open; the others record -1 for both.
+ * @author Kurt Marcinkiewicz
+ */
+public class Instrumentation {
+  private static final int MAX_PHASES = 10000;
+  private static final ArrayDeque<Phase> PHASES = new ArrayDeque<>();
+  private static final ThreadLocal<ArrayDeque<Phase>> OPEN =
+      ThreadLocal.withInitial(ArrayDeque::new);
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+  private static final OperatingSystemMXBean OS = ManagementFactory.getOperatingSystemMXBean();
+  private static final List<MemoryPoolMXBean> HEAP_POOLS = new ArrayList<>();
+  /** the number of threads with a phase open */
+  private static final AtomicInteger ACTIVE_THREADS = new AtomicInteger();
+  /** the number of times a thread opened a phase while another thread had one open */
+  private static final AtomicLong OVERLAPS = new AtomicLong();
+  /** the phase returned while recording is off */
+  private static final Phase DISABLED = new Phase();
+  private static volatile boolean enabled = Boolean.getBoolean("clustering.instrument");
+
+  static {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        HEAP_POOLS.add(pool);
+      }
+    }
+  }
+
+  private Instrumentation() { }
+
+  /**
+   * Starts recording the phases started from now on.
+   */
+  public static void enable() {
+    enabled = true;
+  }
+
+  /**
+   * Stops recording phases. Phases already started are still recorded when they close.
+   */
+  public static void disable() {
+    enabled = false;
+  }
+
+  /**
+   * @return true if phases are being recorded
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Starts a phase on the current thread. The phase must be closed on the same thread.
+   * @param name the name of the phase
+   * @return the phase, or a phase that records nothing if recording is off
+   */
+  public static Phase start(String name) {
+    if (!enabled) {
+      return DISABLED;
+    }
+    ArrayDeque<Phase> open = OPEN.get();
+    if (open.isEmpty() && ACTIVE_THREADS.incrementAndGet() > 1) {
+      OVERLAPS.incrementAndGet();
+    }
+    Phase phase = new Phase(name, open.size());
+    open.push(phase);
+    phase.begin();
+    return phase;
+  }
+
+  /**
+   * @return every phase recorded so far, in the order they were started
+   */
+  public static List<Phase> getPhases() {
+    synchronized (PHASES) {
+      ArrayList<Phase> phases = new ArrayList<>(PHASES);
+      phases.sort((a, b) -> Long.compare(a.startNanos, b.startNanos));
+      return phases;
+    }
+  }
+
+  /**
+   * Forgets every phase recorded so far.
+   */
+  public static void reset() {
+    synchronized (PHASES) {
+      PHASES.clear();
+    }
+  }
+
+  /**
+   * @return every recorded phase as a table, one line per phase, indented by depth
+   */
+  public static String summary() {
+    StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                                                       "%-28s %10s %10s %12s %12s  %s%n", "PHASE",
+                                                       "WALL ms", "CPU ms", "ALLOC MB", "PEAK MB",
+                                                       "COUNTERS"));
+    for (Phase phase : getPhases()) {
+      String name = "  ".repeat(phase.depth) + phase.name;
+      sb.append(String.format(Locale.ROOT, "%-28s %10.1f %10s %12.1f %12s  %s%n", name,
+                              phase.wallNanos / 1e6, shared(phase.cpuNanos / 1e6),
+                              phase.allocatedBytes / 1048576.0,
+                              shared(phase.peakHeapBytes / 1048576.0), phase.countersToString()));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return every recorded phase as a JSON array of objects
+   */
+  public static String toJson() {
+    StringBuilder sb = new StringBuilder("[");
+    List<Phase> phases = getPhases();
+    for (int i = 0; i < phases.size(); i++) {
+      Phase phase = phases.get(i);
+      sb.append(i == 0 ? "\n" : ",\n");
+      sb.append("  {\"phase\": ").append(Quoting.jsonString(phase.name))
+          .append(", \"depth\": ").append(phase.depth)
+          .append(", \"thread\": ").append(Quoting.jsonString(phase.thread))
+          .append(", \"wallNanos\": ").append(phase.wallNanos)
+          .append(", \"cpuNanos\": ").append(phase.cpuNanos)
+          .append(", \"allocatedBytes\": ").append(phase.allocatedBytes)
+          .append(", \"peakHeapBytes\": ").append(phase.peakHeapBytes)
+          .append(", \"counters\": {");
+      boolean first = true;
+      for (Map.Entry<String, Long> counter : phase.counters.entrySet()) {
+        sb.append(first ? "" : ", ").append(Quoting.jsonString(counter.getKey())).append(": ")
+            .append(counter.getValue());
+        first = false;
+      }
+      sb.append("}}");
+    }
+    return sb.append(phases.isEmpty() ? "]\n" : "\n]\n").toString();
+  }
+
+  /**
+   * @return every recorded phase as CSV with a header line. Counters are written as
+   * name=value pairs separated by semicolons in the last column
+   */
+  public static String toCsv() {
+    StringBuilder sb = new StringBuilder("phase,depth,thread,wall_nanos,cpu_nanos,allocated_bytes,"
+                                         + "peak_heap_bytes,counters\n");
+    for (Phase phase : getPhases()) {
+      sb.append(Quoting.csvString(phase.name)).append(',').append(phase.depth).append(',')
+          .append(Quoting.csvString(phase.thread)).append(',').append(phase.wallNanos).append(',')
+          .append(phase.cpuNanos).append(',').append(phase.allocatedBytes).append(',')
+          .append(phase.peakHeapBytes).append(',')
+          .append(Quoting.csvString(phase.countersToString())).append('\n');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Writes every recorded phase to a file, as CSV if its name ends in .csv and as JSON otherwise.
+   * @param file the file
+   * @throws IOException if the file cannot be written
+   */
+  public static void export(File file) throws IOException {
+    String content = file.getName().toLowerCase(Locale.ROOT).endsWith(".csv") ? toCsv() : toJson();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Formats a process-wide measurement, which is negative if other phases ran at the same time.
+   */
+  private static String shared(double value) {
+    return value < 0 ? "-" : String.format(Locale.ROOT, "%.1f", value);
+  }
+
+  /**
+   * @return the CPU time used by the process so far, or by the current thread if the platform
+   * does not report it
+   */
+  private static long cpuTime() {
+    if (OS instanceof com.sun.management.OperatingSystemMXBean) {
+      long time = ((com.sun.management.OperatingSystemMXBean) OS).getProcessCpuTime();
+      if (time >= 0) {
+        return time;
+      }
+    }
+    return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+  }
+
+  /**
+   * @return the bytes allocated so far by the current thread, or 0 if the platform does not report
+   * it
+   */
+  private static long allocatedBytes() {
+    if (THREADS instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+      if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+        return Math.max(0, threads.getCurrentThreadAllocatedBytes());
+      }
+    }
+    return 0;
+  }
+
+  private static long peakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : HEAP_POOLS) {
+      peak += pool.getPeakUsage().getUsed();
+    }
+    return peak;
+  }
+
+  /**
+   * A stage of a run being measured. Closing the phase records it.
+   */
+  public static final class Phase implements AutoCloseable {
+    private final String name;
+    private final int depth;
+    private final String thread;
+    private final LinkedHashMap<String, Long> counters = new LinkedHashMap<>();
+    private final PhaseEvent event = new PhaseEvent();
+    private long startNanos;
+    private long startCpu;
+    private long startAllocated;
+    private long startOverlaps;
+    private boolean shared;
+    private long childPeak;
+    private long wallNanos;
+    private long cpuNanos;
+    private long allocatedBytes;
+    private long peakHeapBytes;
+    private boolean closed;
+
+    /**
+     * Creates the phase returned while recording is off, which is always closed.
+     */
+    private Phase() {
+      this.name = "";
+      this.depth = 0;
+      this.thread = "";
+      this.closed = true;
+    }
+
+    private Phase(String name, int depth) {
+      this.name = name;
+      this.depth = depth;
+      this.thread = Thread.currentThread().getName();
+    }
+
+    private void begin() {
+      startOverlaps = OVERLAPS.get();
+      shared = ACTIVE_THREADS.get() > 1;
+      if (!shared) {
+        for (MemoryPoolMXBean pool : HEAP_POOLS) {
+          pool.resetPeakUsage();
+        }
+      }
+      startAllocated = allocatedBytes();
+      startCpu = cpuTime();
+      event.begin();
+      startNanos = System.nanoTime();
+    }
+
+    /**
+     * Adds to a counter of the phase, such as the number of edges or unions.
+     * @param counter the name of the counter
+     * @param amount the amount to add
+     * @return this phase
+     */
+    public Phase count(String counter, long amount) {
+      if (closed) {
+        return this;
+      }
+      counters.merge(counter, amount, Long::sum);
+      return this;
+    }
+
+    /**
+     * Finishes the phase and records it.
+     */
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      wallNanos = System.nanoTime() - startNanos;
+      event.end();
+      allocatedBytes = allocatedBytes() - startAllocated;
+      shared |= OVERLAPS.get() != startOverlaps;
+      cpuNanos = shared ? -1 : cpuTime() - startCpu;
+      peakHeapBytes = shared ? -1 : Math.max(peakHeap(), childPeak);
+
+      ArrayDeque<Phase> open = OPEN.get();
+      open.remove(this);
+      Phase parent = open.peek();
+      if (parent != null) {
+        parent.childPeak = Math.max(parent.childPeak, peakHeapBytes);
+      }
+      else {
+        ACTIVE_THREADS.decrementAndGet();
+      }
+
+      if (event.shouldCommit()) {
+        event.phase = name;
+        event.shared = shared;
+        if (!shared) {
+          event.cpuTime = cpuNanos;
+        }
+        event.allocated = allocatedBytes;
+        event.counters = countersToString();
+        event.commit();
+      }
+      synchronized (PHASES) {
+        if (PHASES.size() == MAX_PHASES) {
+          PHASES.removeFirst();
+        }
+        PHASES.addLast(this);
+      }
+    }
+
+    /**
+     * @return the name of the phase
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the number of phases this phase was started within
+     */
+    public int getDepth() {
+      return depth;
+    }
+
+    /**
+     * @return the wall time of the phase in nanoseconds
+     */
+    public long getWallNanos() {
+      return wallNanos;
+    }
+
+    /**
+     * @return the CPU time used by the process during the phase in nanoseconds, or -1 if another
+     * thread had a phase open at the same time
+     */
+    public long getCpuNanos() {
+      return cpuNanos;
+    }
+
+    /**
+     * @return the bytes allocated by the thread running the phase during the phase
+     */
+    public long getAllocatedBytes() {
+      return allocatedBytes;
+    }
+
+    /**
+     * @return the peak heap usage during the phase in bytes, or -1 if another thread had a phase
+     * open at the same time
+     */
+    public long getPeakHeapBytes() {
+      return peakHeapBytes;
+    }
+
+    /**
+     * @param counter the name of a counter
+     * @return the value of the counter, or 0 if it was never counted
+     */
+    public long getCounter(String counter) {
+      return counters.getOrDefault(counter, 0L);
+    }
+
+    private String countersToString() {
+      StringBuilder sb = new StringBuilder();
+      for (Map.Entry<String, Long> counter : counters.entrySet()) {
+        sb.append(sb.length() == 0 ? "" : ";").append(counter.getKey()).append('=')
+            .append(counter.getValue());
+      }
+      return sb.toString();
+    }
+
+    public String toString() {
+      return "Phase{" + name + ", " + wallNanos / 1000000 + " ms}";
+    }
+  }
+}
@@ -0,0 +1,307 @@
+import java.util.Arrays;
+
+/**
+ * A k-d tree over the rows of a feature matrix. Every node covers a contiguous range of rows, kept
+ * in tree order in a copy of the features so that leaves are scanned from contiguous memory, and
+ * stores the bounding box of its rows for pruning. Nodes are split at the median of their widest
+ * feature.
+ *
+ * Pruning needs a lower bound on the distance from a point to a box, so only the Euclidean,
+ * squared Euclidean, Manhattan and Chebyshev metrics are supported.
+ * @author Kurt Marcinkiewicz
+ */
+public class KdTree {
+  static final int NONE = -1;
+  private static final int LEAF_SIZE = 16;
+
+  private final int dimensions;
+  private final int[] rows;
+  private final double[] points;
+  private int[] starts;
+  private int[] ends;
+  private int[] lefts;
+  private int[] rights;
+  private double[] lower;
+  private double[] upper;
+  private int nodes;
+
+  /**
+   * Builds the tree.
+   * @param matrix the feature matrix
+   */
+  public KdTree(FeatureMatrix matrix) {
+    int n = matrix.getRows();
+    this.dimensions = matrix.getDimensions();
+    this.rows = new int[n];
+    for (int i = 0; i < n; i++) {
+      rows[i] = i;
+    }
+
+    int capacity = Math.max(1, 4 * (n / LEAF_SIZE + 1));
+    starts = new int[capacity];
+    ends = new int[capacity];
+    lefts = new int[capacity];
+    rights = new int[capacity];
+    lower = new double[capacity * dimensions];
+    upper = new double[capacity * dimensions];
+
+    build(matrix.getData(), 0, n);
+
+    this.points = new double[n * dimensions];
+    for (int i = 0; i < n; i++) {
+      System.arraycopy(matrix.getData(), rows[i] * dimensions, points, i * dimensions, dimensions);
+    }
+  }
+
+  /**
+   * Finds the row nearest to a query point. Of rows at the same distance, the one with the smallest
+   * index is returned.
+   * @param query the array holding the query point
+   * @param offset the start of the query point within the array
+   * @param metric the distance metric
+   * @return the nearest row, or -1 if the tree is empty
+   */
+  public int nearest(double[] query, int offset, DistanceMetric metric) {
+    Bound bound = Bound.of(metric);
+    if (nodes == 0 || starts[0] == ends[0]) {
+      return NONE;
+    }
+    double[] best = {Double.POSITIVE_INFINITY};
+    int[] bestRow = {NONE};
+    nearest(0, query, offset, metric, bound, best, bestRow);
+    return bestRow[0];
+  }
+
+  private void nearest(int node, double[] query, int offset, DistanceMetric metric, Bound bound,
+                       double[] best, int[] bestRow) {
+    if (bound.minimum(query, offset, lower, upper, node * dimensions, dimensions) > best[0]) {
+      return;
+    }
+    if (lefts[node] == NONE) {
+      for (int i = starts[node]; i < ends[node]; i++) {
+        double distance = metric.distance(query, offset, points, i * dimensions, dimensions);
+        if (distance < best[0] || distance == best[0] && rows[i] < bestRow[0]) {
+          best[0] = distance;
+          bestRow[0] = rows[i];
+        }
+      }
+      return;
+    }
+
+    int first = lefts[node];
+    int second = rights[node];
+    if (bound.minimum(query, offset, lower, upper, second * dimensions, dimensions)
+        < bound.minimum(query, offset, lower, upper, first * dimensions, dimensions)) {
+      first = rights[node];
+      second = lefts[node];
+    }
+    nearest(first, query, offset, metric, bound, best, bestRow);
+    nearest(second, query, offset, metric, bound, best, bestRow);
+  }
+
+  /**
+   * @param metric a distance metric
+   * @return true if the tree can search with the metric
+   */
+  public static boolean supports(DistanceMetric metric) {
+    return metric instanceof DistanceMetrics.Euclidean
+           || metric instanceof DistanceMetrics.SquaredEuclidean
+           || metric instanceof DistanceMetrics.Manhattan
+           || metric instanceof DistanceMetrics.Chebyshev;
+  }
+
+  /**
+   * @return the number of features in every row
+   */
+  public int getDimensions() {
+    return dimensions;
+  }
+
+  int getNodeCount() {
+    return nodes;
+  }
+
+  int getStart(int node) {
+    return starts[node];
+  }
+
+  int getEnd(int node) {
+    return ends[node];
+  }
+
+  int getLeft(int node) {
+    return lefts[node];
+  }
+
+  int getRight(int node) {
+    return rights[node];
+  }
+
+  /**
+   * @param position a position in tree order
+   * @return the row stored at the position
+   */
+  int getRow(int position) {
+    return rows[position];
+  }
+
+  /**
+   * @return the features of every row in tree order
+   */
+  double[] getPoints() {
+    return points;
+  }
+
+  double[] getLower() {
+    return lower;
+  }
+
+  double[] getUpper() {
+    return upper;
+  }
+
+  /**
+   * Builds the node covering a range of rows, and its children. Children are always numbered after
+   * their parent.
+   * @return the node
+   */
+  private int build(double[] data, int start, int end) {
+    int node = newNode();
+    starts[node] = start;
+    ends[node] = end;
+    lefts[node] = NONE;
+    rights[node] = NONE;
+
+    int box = node * dimensions;
+    Arrays.fill(lower, box, box + dimensions, Double.POSITIVE_INFINITY);
+    Arrays.fill(upper, box, box + dimensions, Double.NEGATIVE_INFINITY);
+    for (int i = start; i < end; i++) {
+      int offset = rows[i] * dimensions;
+      for (int d = 0; d < dimensions; d++) {
+        lower[box + d] = Math.min(lower[box + d], data[offset + d]);
+        upper[box + d] = Math.max(upper[box + d], data[offset + d]);
+      }
+    }
+
+    int widest = 0;
+    for (int d = 1; d < dimensions; d++) {
+      if (upper[box + d] - lower[box + d] > upper[box + widest] - lower[box + widest]) {
+        widest = d;
+      }
+    }
+    if (end - start <= LEAF_SIZE || !(upper[box + widest] > lower[box + widest])) {
+      return node;
+    }
+
+    int middle = (start + end) >>> 1;
+    select(data, start, end, middle, widest);
+    int left = build(data, start, middle);
+    int right = build(data, middle, end);
+    lefts[node] = left;
+    rights[node] = right;
+    return node;
+  }
+
+  /**
+   * Reorders a range of rows so the row at position k is the one that would be there if the range
+   * were sorted by the given feature, with smaller rows before it and larger rows after.
+   */
+  private void select(double[] data, int start, int end, int k, int feature) {
+    int low = start;
+    int high = end - 1;
+    while (low < high) {
+      double pivot = data[rows[(low + high) >>> 1] * dimensions + feature];
+      int i = low;
+      int j = high;
+      while (i <= j) {
+        while (data[rows[i] * dimensions + feature] < pivot) {
+          i++;
+        }
+        while (data[rows[j] * dimensions + feature] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          int swap = rows[i];
+          rows[i++] = rows[j];
+          rows[j--] = swap;
+        }
+      }
+      if (k <= j) {
+        high = j;
+      }
+      else if (k >= i) {
+        low = i;
+      }
+      else {
+        return;
+      }
+    }
+  }
+
+  private int newNode() {
+    if (nodes == starts.length) {
+      int capacity = nodes * 2;
+      starts = Arrays.copyOf(starts, capacity);
+      ends = Arrays.copyOf(ends, capacity);
+      lefts = Arrays.copyOf(lefts, capacity);
+      rights = Arrays.copyOf(rights, capacity);
+      lower = Arrays.copyOf(lower, capacity * dimensions);
+      upper = Arrays.copyOf(upper, capacity * dimensions);
+    }
+    return nodes++;
+  }
+
+  /**
+   * Lower bounds on the distance from a point to any point in a box, one per supported metric. Each
+   * bound is computed from the per-feature gaps in the same order as the metric itself, so it never
+   * exceeds the distance the metric computes, even after rounding.
+   */
+  enum Bound {
+    EUCLIDEAN, SQUARED_EUCLIDEAN, MANHATTAN, CHEBYSHEV;
+
+    /**
+     * @param metric the distance metric
+     * @return the bound for the metric
+     * @throws IllegalArgumentException if the metric cannot be bounded by a box
+     */
+    static Bound of(DistanceMetric metric) {
+      if (metric instanceof DistanceMetrics.Euclidean) {
+        return EUCLIDEAN;
+      }
+      else if (metric instanceof DistanceMetrics.SquaredEuclidean) {
+        return SQUARED_EUCLIDEAN;
+      }
+      else if (metric instanceof DistanceMetrics.Manhattan) {
+        return MANHATTAN;
+      }
+      else if (metric instanceof DistanceMetrics.Chebyshev) {
+        return CHEBYSHEV;
+      }
+      throw new IllegalArgumentException("A k-d tree cannot be used with the " + metric.getName()
+                                         + " metric");
+    }
+
+    /**
+     * @return the smallest distance from the point to any point in the box
+     */
+    double minimum(double[] point, int offset, double[] lower, double[] upper, int box,
+                   int dimensions) {
+      double sum = 0;
+      for (int d = 0; d < dimensions; d++) {
+        double value = point[offset + d];
+        double gap = Math.max(0, Math.max(lower[box + d] - value, value - upper[box + d]));
+        switch (this) {
+          case MANHATTAN:
+            sum += gap;
+            break;
+          case CHEBYSHEV:
+            sum = Math.max(sum, gap);
+            break;
+          default:
+            sum += gap * gap;
+        }
+      }
+      return this == EUCLIDEAN ? Math.sqrt(sum) : sum;
+    }
+  }
+}
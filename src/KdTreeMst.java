@@ -0,0 +1,179 @@
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the MST of the complete graph over the rows of a feature matrix with Boruvka's algorithm,
+ * answering the nearest-neighbor queries of every round with a {@link KdTree} instead of O(n)
+ * scans, so for low-dimensional data each round takes about O(n log n) rather than O(n^2).
+ *
+ * Two kinds of pruning keep the queries cheap. Every round each tree node records the component
+ * all of its rows belong to, if there is one, and a query skips the nodes lying entirely inside its
+ * own component. A query is also bounded by the cheapest edge found so far for its whole component
+ * rather than only for its own row, since an edge that cannot beat that one is never chosen. Edges
+ * and ties are ordered as in {@link BoruvkaMst}, so the MST is the same one Kruskal's algorithm
+ * finds.
+ * @author Kurt Marcinkiewicz
+ */
+public class KdTreeMst {
+  private static final int NONE = -1;
+  private static final int MIXED = -2;
+
+  private final FeatureMatrix matrix;
+  private final DistanceMetric metric;
+  private final KdTree.Bound bound;
+  private final KdTree tree;
+  private final int[] components;
+  private final int[] nodeComponents;
+  private final int[] nearest;
+  private final double[] nearestDistances;
+  private final AtomicIntegerArray cheapest;
+
+  private KdTreeMst(FeatureMatrix matrix, DistanceMetric metric) {
+    int n = matrix.getRows();
+    this.matrix = matrix;
+    this.metric = metric;
+    this.bound = KdTree.Bound.of(metric);
+    this.tree = new KdTree(matrix);
+    this.components = new int[n];
+    this.nodeComponents = new int[tree.getNodeCount()];
+    this.nearest = new int[n];
+    this.nearestDistances = new double[n];
+    this.cheapest = new AtomicIntegerArray(n);
+  }
+
+  /**
+   * Finds the MST of the complete graph over the rows of a feature matrix.
+   * @param matrix the feature matrix
+   * @param metric the distance metric, which must be supported by {@link KdTree}
+   * @return the edges of the MST
+   * @throws IllegalArgumentException if the metric is not supported
+   */
+  public static ArrayList<ImageSegmentEdge> minimumSpanningTree(FeatureMatrix matrix,
+                                                                DistanceMetric metric) {
+    return new KdTreeMst(matrix, metric).run();
+  }
+
+  private ArrayList<ImageSegmentEdge> run() {
+    int n = matrix.getRows();
+    ConcurrentUnionFind uf = new ConcurrentUnionFind(n);
+    ArrayList<ImageSegmentEdge> mst = new ArrayList<>(Math.max(n - 1, 0));
+
+    while (mst.size() < n - 1) {
+      for (int i = 0; i < n; i++) {
+        cheapest.set(i, NONE);
+      }
+      IntStream.range(0, n).parallel().forEach(v -> components[v] = uf.find(v));
+      labelNodes();
+
+      IntStream.range(0, n).parallel().forEach(this::findNearest);
+
+      int before = mst.size();
+      mst.addAll(IntStream.range(0, n).parallel()
+                     .map(cheapest::get)
+                     .filter(v -> v != NONE && uf.union(v, nearest[v]))
+                     .mapToObj(v -> new ImageSegmentEdge(Math.max(v, nearest[v]),
+                                                         Math.min(v, nearest[v]),
+                                                         nearestDistances[v]))
+                     .collect(Collectors.toList()));
+      if (mst.size() == before) {
+        break;
+      }
+    }
+    return mst;
+  }
+
+  /**
+   * Records the component every tree node lies in, or MIXED if its rows span several. Children are
+   * numbered after their parents, so walking the nodes backwards visits children first.
+   */
+  private void labelNodes() {
+    for (int node = tree.getNodeCount() - 1; node >= 0; node--) {
+      int left = tree.getLeft(node);
+      if (left != KdTree.NONE) {
+        int component = nodeComponents[left];
+        nodeComponents[node] = component == nodeComponents[tree.getRight(node)] ? component : MIXED;
+        continue;
+      }
+
+      int component = components[tree.getRow(tree.getStart(node))];
+      for (int i = tree.getStart(node) + 1; i < tree.getEnd(node); i++) {
+        if (components[tree.getRow(i)] != component) {
+          component = MIXED;
+          break;
+        }
+      }
+      nodeComponents[node] = component;
+    }
+  }
+
+  /**
+   * Finds the nearest row to v outside its component that could be the cheapest edge leaving the
+   * component, and offers it as that edge.
+   */
+  private void findNearest(int v) {
+    nearest[v] = NONE;
+    nearestDistances[v] = Double.POSITIVE_INFINITY;
+    search(0, v);
+    BoruvkaMst.offerNode(nearest, nearestDistances, cheapest, components[v], v);
+  }
+
+  private void search(int node, int v) {
+    int component = components[v];
+    if (nodeComponents[node] == component) {
+      return;
+    }
+    double[] data = matrix.getData();
+    int dimensions = tree.getDimensions();
+    int offset = v * dimensions;
+    if (bound.minimum(data, offset, tree.getLower(), tree.getUpper(), node * dimensions,
+                      dimensions) > limit(v, component)) {
+      return;
+    }
+
+    int left = tree.getLeft(node);
+    if (left == KdTree.NONE) {
+      double[] points = tree.getPoints();
+      for (int i = tree.getStart(node); i < tree.getEnd(node); i++) {
+        int u = tree.getRow(i);
+        if (components[u] == component) {
+          continue;
+        }
+        double distance = metric.distance(data, offset, points, i * dimensions, dimensions);
+        if (nearest[v] == NONE
+            || BoruvkaMst.isCheaper(distance, v, u, nearestDistances[v], v, nearest[v])) {
+          nearest[v] = u;
+          nearestDistances[v] = distance;
+        }
+      }
+      return;
+    }
+
+    int right = tree.getRight(node);
+    double leftDistance = bound.minimum(data, offset, tree.getLower(), tree.getUpper(),
+                                        left * dimensions, dimensions);
+    double rightDistance = bound.minimum(data, offset, tree.getLower(), tree.getUpper(),
+                                         right * dimensions, dimensions);
+    if (rightDistance < leftDistance) {
+      search(right, v);
+      search(left, v);
+    }
+    else {
+      search(left, v);
+      search(right, v);
+    }
+  }
+
+  /**
+   * @return the weight no edge from v may exceed and still be the cheapest leaving its component
+   */
+  private double limit(int v, int component) {
+    double limit = nearestDistances[v];
+    int current = cheapest.get(component);
+    if (current != NONE) {
+      limit = Math.min(limit, nearestDistances[current]);
+    }
+    return limit;
+  }
+}
@@ -1,12 +1,16 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Scanner;
 
 public class Main {
 
   public static void main(String[] args) {
+    if (args.length > 0) {
+      ClusterCli.main(args);
+      return;
+    }
+
     Scanner sc = new Scanner(System.in);
     int step = 100000000;
     int k;
@@ -21,37 +25,88 @@ public class Main {
       k = getClusterNumber(sc);
     }
 
-    boolean printClusters = promptUser(sc, "Do you wish to print the clusters (WARNING: THIS COULD "
-                                           + "GET BIG!)?");
-    boolean printPurity = promptUser(sc, "Do you wish to print the cluster purity?");
+    File clustersFile = null;
+    boolean includeClass = false;
+    boolean includeMedoid = false;
+    if (promptUser(sc, "Do you wish to export the cluster of every row to a file?")) {
+      clustersFile = getClustersFile(sc);
+      if (ClusterWriter.Format.forFile(clustersFile) != ClusterWriter.Format.BINARY) {
+        includeClass = promptUser(sc, "Do you wish to include the class of every row?");
+        includeMedoid = promptUser(sc, "Do you wish to include the distance from every row to "
+                                       + "the medoid of its cluster?");
+      }
+    }
+    boolean printPurity = promptUser(sc, "Do you wish to print the cluster purity, adjusted Rand "
+                                         + "index and NMI?");
+    MstEngine engine = chooseMstEngine(sc);
+    DistanceMetric metric = chooseDistanceMetric(sc);
+    Normalization normalization = chooseNormalization(sc);
+    boolean printMetrics = promptUser(sc, "Do you wish to print the time and memory used by each "
+                                          + "phase?");
+    File metricsFile = null;
+    if (promptUser(sc, "Do you wish to export the phase metrics to a file?")) {
+      metricsFile = getMetricsFile(sc);
+    }
+    if (printMetrics || metricsFile != null) {
+      Instrumentation.enable();
+    }
 
-    ImageSegmentGraph graph;
+    FeatureMatrix matrix;
 
     try {
-      ArffFileReader arffFileReader = new ArffFileReader(file);
-      graph = arffFileReader.processLineByLine();
+      matrix = normalization.apply(DatasetSnapshot.load(file));
 
-      System.out.println(graph);
+      System.out.println(matrix);
     }
     catch(IOException e) {
       System.out.println("Could not parse file.");
       e.printStackTrace();
       return;
     }
-    for (; k <= graph.getImageSegmentNodes().size(); k+= step) {
-      ArrayList<ImageSegmentEdge> mst = Algorithms
-          .singleLinkCluster(graph.getImageSegmentEdges(), graph.getImageSegmentNodes().size(), k);
 
-      ArrayList<HashSet<Integer>> clusters = Algorithms.clustersFromEdges(graph.getImageSegmentNodes(),
-                                                                          mst, k);
+    int nodes = matrix.getRows();
+    ArrayList<ImageSegmentEdge> mst = engine.minimumSpanningTree(matrix, metric);
+    Dendrogram dendrogram = new Dendrogram(mst, nodes);
 
-      if (printClusters) {
-        printClusters(clusters, graph.getImageSegmentNodes());
+    int[] ks = new int[k > nodes ? 0 : (nodes - k) / step + 1];
+    for (int i = 0; i < ks.length; i++) {
+      ks[i] = k + i * step;
+    }
+    ClusterEvaluation[] evaluations = printPurity ? ContingencyTable.sweep(dendrogram, matrix, ks)
+                                                  : null;
+
+    for (int i = 0; i < ks.length; i++) {
+      if (clustersFile != null) {
+        File cutFile = ks.length > 1 ? fileForK(clustersFile, ks[i]) : clustersFile;
+        try {
+          ClusterWriter.write(cutFile, dendrogram.labels(ks[i]), matrix, includeClass,
+                              includeMedoid ? metric : null);
+        }
+        catch (IOException e) {
+          System.out.println("Could not write the clusters to " + cutFile + ".");
+          e.printStackTrace();
+          clustersFile = null;
+        }
       }
 
       if (printPurity) {
-        System.out.println(k + ", " +
-                           Algorithms.purityFromClusters(clusters, graph.getImageSegmentNodes()));
+        ClusterEvaluation evaluation = evaluations[i];
+        System.out.println(ks[i] + ", " + evaluation.getPurity() + ", "
+                           + evaluation.getAdjustedRandIndex() + ", "
+                           + evaluation.getNormalizedMutualInformation());
+      }
+    }
+
+    if (printMetrics) {
+      System.out.print(Instrumentation.summary());
+    }
+    if (metricsFile != null) {
+      try {
+        Instrumentation.export(metricsFile);
+      }
+      catch (IOException e) {
+        System.out.println("Could not write the phase metrics.");
+        e.printStackTrace();
       }
     }
   }
@@ -110,6 +165,72 @@ public class Main {
     return step;
   }
 
+  /**
+   * Prompt the user for the MST engine to use.
+   * @param sc the scanner to use
+   * @return the MST engine
+   */
+  private static MstEngine chooseMstEngine(Scanner sc) {
+    MstEngine[] engines = MstEngine.values();
+    String[] descriptions = new String[engines.length];
+    for (int i = 0; i < engines.length; i++) {
+      descriptions[i] = engines[i].getDescription();
+    }
+    return engines[chooseOption(sc, "Please choose an MST engine: ", descriptions)];
+  }
+
+  /**
+   * Prompt the user for the distance metric to use.
+   * @param sc the scanner to use
+   * @return the distance metric
+   */
+  private static DistanceMetric chooseDistanceMetric(Scanner sc) {
+    DistanceMetric[] metrics = DistanceMetrics.values();
+    String[] names = new String[metrics.length];
+    for (int i = 0; i < metrics.length; i++) {
+      names[i] = metrics[i].getName();
+    }
+    return metrics[chooseOption(sc, "Please choose a distance metric: ", names)];
+  }
+
+  /**
+   * Prompt the user for the normalization to apply to the features.
+   * @param sc the scanner to use
+   * @return the normalization
+   */
+  private static Normalization chooseNormalization(Scanner sc) {
+    Normalization[] normalizations = Normalization.values();
+    String[] names = new String[normalizations.length];
+    for (int i = 0; i < normalizations.length; i++) {
+      names[i] = normalizations[i].getValue();
+    }
+    return normalizations[chooseOption(sc, "Please choose how to normalize the features: ",
+                                       names)];
+  }
+
+  /**
+   * Prompt the user to choose one of a numbered list of options.
+   * @param sc the scanner to use
+   * @param question the question to ask the user
+   * @param options the options to choose from
+   * @return the index of the chosen option
+   */
+  private static int chooseOption(Scanner sc, String question, String[] options) {
+    int choice;
+    do {
+      System.out.println(question);
+      for (int i = 0; i < options.length; i++) {
+        System.out.println((i + 1) + ". " + options[i]);
+      }
+      while (!sc.hasNextInt()) {
+        System.out.println("That's not a number!");
+        sc.next();
+      }
+      choice = sc.nextInt();
+    } while (choice <= 0 || choice > options.length);
+    return choice - 1;
+  }
+
   /**
    * Prompt the user for the .arff file to use.
    * @param sc the scanner to use
@@ -131,17 +252,39 @@ public class Main {
   }
 
   /**
-   * Print the clusters in friendly format to the console
-   * @param clusters the list of clusters
-   * @param nodes the nodes in the graph
+   * Prompt the user for the file to export the phase metrics to.
+   * @param sc the scanner to use
+   * @return the file, written as CSV if its name ends in .csv and as JSON otherwise
    */
-  private static void printClusters(ArrayList<HashSet<Integer>> clusters,
-                             ArrayList<ImageSegmentNode> nodes) {
-    for (int i = 0; i < clusters.size(); i++) {
-      System.out.println("CLUSTER " + (i + 1) + ":");
-      for (Integer nodeIndex : clusters.get(i)) {
-        System.out.println(nodes.get(nodeIndex));
-      }
-    }
+  private static File getMetricsFile(Scanner sc) {
+    System.out.println("Please enter the path of the .json or .csv file to write the metrics "
+                       + "to: ");
+    return new File(sc.next());
+  }
+
+  /**
+   * Prompt the user for the file to export the cluster of every row to.
+   * @param sc the scanner to use
+   * @return the file, written as CSV if its name ends in .csv, as ARFF if it ends in .arff and as
+   * binary labels otherwise
+   */
+  private static File getClustersFile(Scanner sc) {
+    System.out.println("Please enter the path of the .csv, .arff or binary (.bin) file to write "
+                       + "the clusters to: ");
+    return new File(sc.next());
+  }
+
+  /**
+   * Names the file of one k of a loop over cluster sizes by adding k before its extension.
+   * @param file the file the user chose
+   * @param k the number of clusters
+   * @return the file for k
+   */
+  private static File fileForK(File file, int k) {
+    String name = file.getName();
+    int dot = name.lastIndexOf('.');
+    String stem = dot > 0 ? name.substring(0, dot) : name;
+    String extension = dot > 0 ? name.substring(dot) : "";
+    return new File(file.getParentFile(), stem + "-k" + k + extension);
   }
 }
@@ -0,0 +1,192 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.ToLongFunction;
+
+/**
+ * A least-recently-used cache of expensive values, such as parsed datasets and their dendrograms,
+ * bounded by the estimated number of bytes the values take up rather than by their count. When a
+ * new value would push the total over the budget the least recently used values are evicted first,
+ * and a value larger than the whole budget is returned without being cached.
+ *
+ * A value is computed at most once at a time: threads asking for a key that is being computed wait
+ * for that computation instead of starting their own. The value is cached, or passed over as too
+ * large, in the same step that ends the computation, so no request can slip in between and start
+ * it again.
+ * @author Kurt Marcinkiewicz
+ */
+public class ModelCache {
+  private final long budget;
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final HashMap<String, FutureTask<Object>> loading = new HashMap<>();
+  private long used;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * @param budget the number of bytes the cached values may take up
+   * @throws IllegalArgumentException if the budget is negative
+   */
+  public ModelCache(long budget) {
+    if (budget < 0) {
+      throw new IllegalArgumentException("The budget must not be negative");
+    }
+    this.budget = budget;
+  }
+
+  /**
+   * Returns the value cached under a key, computing and caching it if there is none.
+   * @param key the key
+   * @param loader computes the value
+   * @param sizer estimates the number of bytes the value takes up
+   * @param <T> the type of the value
+   * @return the value
+   * @throws Exception whatever the loader throws. Failures are not cached
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(String key, Callable<T> loader, ToLongFunction<T> sizer) throws Exception {
+    FutureTask<Object> task;
+    boolean owner = false;
+    synchronized (this) {
+      Entry entry = entries.get(key);
+      if (entry != null) {
+        hits++;
+        return (T) entry.value;
+      }
+      task = loading.get(key);
+      if (task == null) {
+        misses++;
+        task = new FutureTask<>(loader::call);
+        loading.put(key, task);
+        owner = true;
+      }
+    }
+
+    if (!owner) {
+      return result(task);
+    }
+    T value = null;
+    long bytes = 0;
+    boolean loaded = false;
+    try {
+      task.run();
+      value = result(task);
+      bytes = sizer.applyAsLong(value);
+      loaded = true;
+      return value;
+    }
+    finally {
+      synchronized (this) {
+        loading.remove(key);
+        if (loaded) {
+          put(key, value, bytes);
+        }
+      }
+    }
+  }
+
+  /**
+   * Waits for a value to be computed.
+   * @param task the computation
+   * @param <T> the type of the value
+   * @return the value
+   * @throws Exception whatever the computation threw
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> T result(FutureTask<Object> task) throws Exception {
+    try {
+      return (T) task.get();
+    }
+    catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    }
+  }
+
+  /**
+   * @param key the key
+   * @return true if a value is cached under the key
+   */
+  public synchronized boolean contains(String key) {
+    return entries.containsKey(key);
+  }
+
+  /**
+   * Evicts every cached value.
+   */
+  public synchronized void clear() {
+    evictions += entries.size();
+    entries.clear();
+    used = 0;
+  }
+
+  /**
+   * @return the number of cached values
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return the estimated number of bytes taken up by the cached values
+   */
+  public synchronized long getUsedBytes() {
+    return used;
+  }
+
+  /**
+   * @return the number of bytes the cached values may take up
+   */
+  public long getBudget() {
+    return budget;
+  }
+
+  /**
+   * @return the number of lookups that found a cached value
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return the number of lookups that had to compute the value
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return the number of values evicted to stay within the budget, or cleared
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  private synchronized void put(String key, Object value, long bytes) {
+    if (bytes > budget) {
+      return;
+    }
+    Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+    while (used + bytes > budget && eldest.hasNext()) {
+      used -= eldest.next().getValue().bytes;
+      eldest.remove();
+      evictions++;
+    }
+    entries.put(key, new Entry(value, bytes));
+    used += bytes;
+  }
+
+  private static final class Entry {
+    private final Object value;
+    private final long bytes;
+
+    Entry(Object value, long bytes) {
+      this.value = value;
+      this.bytes = bytes;
+    }
+  }
+}
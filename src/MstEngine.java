@@ -0,0 +1,206 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * The algorithms available for finding the MST that the single-link clusters are cut from
+ * @author Kurt Marcinkiewicz
+ */
+public enum MstEngine {
+  KRUSKAL("Kruskal over the complete edge list"),
+  PRIMITIVE_KRUSKAL("Kruskal over a compact, radix sorted edge list"),
+  SINGLE_PRECISION_KRUSKAL("Kruskal over a radix sorted edge list of 32-bit floats (less memory)"),
+  FILTER_KRUSKAL("Filter-Kruskal over a compact edge list, sorting only the edges it needs"),
+  EXTERNAL_KRUSKAL("Kruskal over sorted runs spilled to disk (bounded heap)"),
+  PRIM("Dense Prim, computing distances on the fly (linear memory)"),
+  BORUVKA("Parallel Boruvka, computing distances on the fly (linear memory)"),
+  KD_TREE_BORUVKA("Parallel Boruvka with k-d tree nearest-neighbor search (low dimensions)"),
+  APPROXIMATE("Kruskal over an NN-Descent k-nearest-neighbor graph (approximate, large inputs)");
+
+  private final String description;
+
+  MstEngine(String description) {
+    this.description = description;
+  }
+
+  /**
+   * @return a short description of the engine
+   */
+  public String getDescription() {
+    return description;
+  }
+
+  /**
+   * @return true if the engine finds the same MST as Kruskal's algorithm over the complete graph,
+   * false for APPROXIMATE, which searches a k-nearest-neighbor graph, and SINGLE_PRECISION_KRUSKAL,
+   * which rounds the weights
+   */
+  public boolean isExact() {
+    return this != APPROXIMATE && this != SINGLE_PRECISION_KRUSKAL;
+  }
+
+  /**
+   * Looks up an engine by name, ignoring case and treating dashes as underscores.
+   * @param name the name of the engine, such as kd-tree-boruvka
+   * @return the engine
+   * @throws IllegalArgumentException if there is no engine with the name
+   */
+  public static MstEngine forName(String name) {
+    String upper = name.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+    for (MstEngine engine : values()) {
+      if (engine.name().equals(upper)) {
+        return engine;
+      }
+    }
+    throw new IllegalArgumentException("Unknown MST engine: " + name);
+  }
+
+  /**
+   * Estimates the most heap the engine needs to find an MST, with EXTERNAL_KRUSKAL given the
+   * default memory budget.
+   * @param rows the number of rows
+   * @param dimensions the number of features in every row
+   * @return the estimated number of bytes
+   * @see #estimateMemory(int, int, long)
+   */
+  public long estimateMemory(int rows, int dimensions) {
+    return estimateMemory(rows, dimensions, ExternalKruskal.DEFAULT_MEMORY_BUDGET);
+  }
+
+  /**
+   * Estimates the most heap the engine needs to find an MST, beyond the feature matrix itself. The
+   * complete-graph engines need their edge list and any index into it, EXTERNAL_KRUSKAL no more
+   * than its memory budget, and the others memory linear in the rows, and every engine holds the
+   * MST and dendrogram it builds.
+   * @param rows the number of rows
+   * @param dimensions the number of features in every row
+   * @param externalBudget the memory budget EXTERNAL_KRUSKAL is run with
+   * @return the estimated number of bytes
+   */
+  public long estimateMemory(int rows, int dimensions, long externalBudget) {
+    long edges = (long) rows * (rows - 1) / 2;
+    long linear = (long) rows * (dimensions * Double.BYTES + 64);
+    long result = (long) rows * 96;
+    switch (this) {
+      case KRUSKAL:
+        return result + edges * 48;
+      case PRIMITIVE_KRUSKAL:
+        return result + edges * 16;
+      case FILTER_KRUSKAL:
+        return result + edges * 20;
+      case SINGLE_PRECISION_KRUSKAL:
+        return result + edges * 12 + (long) rows * dimensions * Float.BYTES;
+      case EXTERNAL_KRUSKAL:
+        return result + Math.min(externalBudget, edges * 16);
+      case APPROXIMATE:
+        return result + linear + (long) rows * ApproximateMst.DEFAULT_NEIGHBORS * 64;
+      default:
+        return result + linear;
+    }
+  }
+
+  /**
+   * Finds the MST of the complete graph over the rows of a feature matrix.
+   * @param matrix the feature matrix
+   * @return the edges of the MST
+   */
+  public ArrayList<ImageSegmentEdge> minimumSpanningTree(FeatureMatrix matrix) {
+    return minimumSpanningTree(matrix, DistanceMetrics.EUCLIDEAN);
+  }
+
+  /**
+   * Finds the MST of the complete graph over the rows of a feature matrix with the given distance
+   * metric, with EXTERNAL_KRUSKAL given the default memory budget.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @return the edges of the MST
+   * @throws UncheckedIOException if EXTERNAL_KRUSKAL cannot spill its runs
+   * @see #minimumSpanningTree(FeatureMatrix, DistanceMetric, long)
+   */
+  public ArrayList<ImageSegmentEdge> minimumSpanningTree(FeatureMatrix matrix,
+                                                         DistanceMetric metric) {
+    return minimumSpanningTree(matrix, metric, ExternalKruskal.DEFAULT_MEMORY_BUDGET);
+  }
+
+  /**
+   * Finds the MST of the complete graph over the rows of a feature matrix with the given distance
+   * metric. EXTERNAL_KRUSKAL spills to the default temporary directory once its edges outgrow the
+   * memory budget, SINGLE_PRECISION_KRUSKAL narrows the features and distances to floats, and
+   * KD_TREE_BORUVKA falls back to BORUVKA for metrics a k-d tree cannot search with.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @param externalBudget the number of bytes of heap the edges of EXTERNAL_KRUSKAL may take up at
+   * once, which the other engines ignore
+   * @return the edges of the MST
+   * @throws UncheckedIOException if EXTERNAL_KRUSKAL cannot spill its runs
+   * @throws IllegalArgumentException if EXTERNAL_KRUSKAL is given a budget below 1 MB, or the
+   * metric cannot measure the rows
+   */
+  public ArrayList<ImageSegmentEdge> minimumSpanningTree(FeatureMatrix matrix,
+                                                         DistanceMetric metric,
+                                                         long externalBudget) {
+    metric.checkDimensions(matrix.getDimensions());
+    String name = "mst " + name().toLowerCase(Locale.ROOT);
+    try (Instrumentation.Phase phase = Instrumentation.start(name)) {
+      ArrayList<ImageSegmentEdge> mst = run(matrix, metric, externalBudget);
+      phase.count("rows", matrix.getRows()).count("edges", mst.size());
+      return mst;
+    }
+  }
+
+  private ArrayList<ImageSegmentEdge> run(FeatureMatrix matrix, DistanceMetric metric,
+                                          long externalBudget) {
+    switch (this) {
+      case KRUSKAL:
+        return Algorithms.singleLinkCluster(completeGraph(matrix, metric), matrix.getRows(), 1);
+      case PRIMITIVE_KRUSKAL:
+        return Algorithms.singleLinkCluster(EdgeList.completeGraph(matrix, metric),
+                                            matrix.getRows(), 1);
+      case SINGLE_PRECISION_KRUSKAL:
+        return Algorithms.singleLinkCluster(FloatEdgeList.completeGraph(matrix, metric),
+                                            matrix.getRows(), 1);
+      case FILTER_KRUSKAL:
+        return FilterKruskal.singleLinkCluster(EdgeList.completeGraph(matrix, metric),
+                                               matrix.getRows(), 1);
+      case EXTERNAL_KRUSKAL:
+        try {
+          return new ExternalKruskal(externalBudget, null)
+              .singleLinkCluster(matrix, metric, 1);
+        }
+        catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      case BORUVKA:
+        return BoruvkaMst.minimumSpanningTree(matrix, metric);
+      case KD_TREE_BORUVKA:
+        if (KdTree.supports(metric)) {
+          return KdTreeMst.minimumSpanningTree(matrix, metric);
+        }
+        return BoruvkaMst.minimumSpanningTree(matrix, metric);
+      case APPROXIMATE:
+        return ApproximateMst.minimumSpanningTree(matrix, metric);
+      default:
+        return Algorithms.primMst(matrix, metric);
+    }
+  }
+
+  /**
+   * Builds the complete list of ImageSegmentEdges between the rows of a feature matrix, as
+   * {@link ImageSegmentGraph} does for image segment nodes.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @return the edges
+   */
+  private static ArrayList<ImageSegmentEdge> completeGraph(FeatureMatrix matrix,
+                                                           DistanceMetric metric) {
+    ArrayList<ImageSegmentEdge> edges = new ArrayList<>(EdgeList.completeGraphSize(matrix.getRows()));
+
+    for (int i = 1; i < matrix.getRows(); i++) {
+      for (int j = 0; j < i; j++) {
+        edges.add(new ImageSegmentEdge(i, j, matrix.distance(i, j, metric)));
+      }
+    }
+    return edges;
+  }
+}
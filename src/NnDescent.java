@@ -0,0 +1,231 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Builds an approximate k-nearest-neighbor graph with NN-Descent: every row starts with random
+ * neighbors, then repeatedly looks for closer ones among the neighbors of its neighbors, following
+ * edges both ways, until hardly any lists change. Each pass only joins through pairs where at least
+ * one of the two hops was found in the previous pass.
+ *
+ * Passes are parallel over rows. A row only ever writes its own neighbor list, reading the lists of
+ * the previous pass, and the random start of every row depends only on the seed and the row, so the
+ * graph is the same on any number of cores.
+ * @author Kurt Marcinkiewicz
+ */
+public class NnDescent {
+  private static final int NONE = -1;
+  private static final int MAX_ITERATIONS = 30;
+  private static final double DELTA = 0.001;
+
+  private final FeatureMatrix matrix;
+  private final DistanceMetric metric;
+  private final int rows;
+  private final int neighbors;
+  private int[] ids;
+  private double[] distances;
+  private boolean[] fresh;
+  private int[] reverseCounts;
+  private int[] reverseIds;
+  private boolean[] reverseFresh;
+
+  private NnDescent(FeatureMatrix matrix, DistanceMetric metric, int neighbors) {
+    this.matrix = matrix;
+    this.metric = metric;
+    this.rows = matrix.getRows();
+    this.neighbors = Math.min(neighbors, Math.max(rows - 1, 0));
+    this.ids = new int[rows * this.neighbors];
+    this.distances = new double[rows * this.neighbors];
+    this.fresh = new boolean[rows * this.neighbors];
+    this.reverseCounts = new int[rows];
+    this.reverseIds = new int[rows * this.neighbors];
+    this.reverseFresh = new boolean[rows * this.neighbors];
+  }
+
+  /**
+   * Builds the approximate k-nearest-neighbor graph of the rows of a feature matrix. A pair of rows
+   * that appear in each other's lists is only added once.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @param neighbors the number of neighbors to find for every row
+   * @param seed the seed of the random starting neighbors
+   * @return the edges of the graph
+   * @throws IllegalArgumentException if neighbors is not positive
+   */
+  public static EdgeList graph(FeatureMatrix matrix, DistanceMetric metric, int neighbors,
+                               long seed) {
+    if (neighbors < 1) {
+      throw new IllegalArgumentException("The number of neighbors must be positive");
+    }
+    NnDescent descent = new NnDescent(matrix, metric, neighbors);
+    if (descent.neighbors > 0) {
+      IntStream.range(0, descent.rows).parallel().forEach(v -> descent.initialize(v, seed));
+      for (int i = 0; i < MAX_ITERATIONS; i++) {
+        if (descent.iterate() <= DELTA * descent.rows * descent.neighbors) {
+          break;
+        }
+      }
+    }
+    return descent.toEdgeList();
+  }
+
+  /**
+   * Fills the list of a row with distinct random rows.
+   */
+  private void initialize(int v, long seed) {
+    Random random = new Random(seed ^ v * 0x9E3779B97F4A7C15L);
+    int offset = v * neighbors;
+    Arrays.fill(ids, offset, offset + neighbors, NONE);
+    Arrays.fill(distances, offset, offset + neighbors, Double.POSITIVE_INFINITY);
+    int found = 0;
+    while (found < neighbors) {
+      int u = random.nextInt(rows);
+      if (u != v && insert(ids, distances, fresh, offset, u, matrix.distance(v, u, metric))) {
+        found++;
+      }
+    }
+  }
+
+  /**
+   * Runs one pass of NN-Descent.
+   * @return the number of neighbor list entries that changed
+   */
+  private long iterate() {
+    buildReverseLists();
+    int[] oldIds = ids;
+    boolean[] oldFresh = fresh;
+    int[] newIds = ids.clone();
+    double[] newDistances = distances.clone();
+    boolean[] newFresh = new boolean[fresh.length];
+
+    long updates = IntStream.range(0, rows).parallel()
+        .mapToLong(v -> join(v, oldIds, oldFresh, newIds, newDistances, newFresh))
+        .sum();
+
+    ids = newIds;
+    distances = newDistances;
+    fresh = newFresh;
+    return updates;
+  }
+
+  /**
+   * Records, for every row, up to as many of the rows that list it as it has neighbors, in order of
+   * the listing row.
+   */
+  private void buildReverseLists() {
+    Arrays.fill(reverseCounts, 0);
+    for (int v = 0; v < rows; v++) {
+      for (int j = v * neighbors; j < (v + 1) * neighbors; j++) {
+        int u = ids[j];
+        if (reverseCounts[u] < neighbors) {
+          reverseIds[u * neighbors + reverseCounts[u]] = v;
+          reverseFresh[u * neighbors + reverseCounts[u]++] = fresh[j];
+        }
+      }
+    }
+  }
+
+  /**
+   * Looks for closer neighbors of v among the neighbors of its neighbors.
+   * @return the number of entries of the list of v that changed
+   */
+  private long join(int v, int[] oldIds, boolean[] oldFresh, int[] newIds,
+                    double[] newDistances, boolean[] newFresh) {
+    long updates = 0;
+    int offset = v * neighbors;
+    for (int first = 0; first < 2 * neighbors; first++) {
+      int u;
+      boolean freshU;
+      if (first < neighbors) {
+        u = oldIds[offset + first];
+        freshU = oldFresh[offset + first];
+      }
+      else if (first - neighbors < reverseCounts[v]) {
+        u = reverseIds[offset + first - neighbors];
+        freshU = reverseFresh[offset + first - neighbors];
+      }
+      else {
+        break;
+      }
+
+      for (int second = 0; second < 2 * neighbors; second++) {
+        int w;
+        boolean freshW;
+        if (second < neighbors) {
+          w = oldIds[u * neighbors + second];
+          freshW = oldFresh[u * neighbors + second];
+        }
+        else if (second - neighbors < reverseCounts[u]) {
+          w = reverseIds[u * neighbors + second - neighbors];
+          freshW = reverseFresh[u * neighbors + second - neighbors];
+        }
+        else {
+          break;
+        }
+
+        if (w == v || !(freshU || freshW) || contains(newIds, offset, w)) {
+          continue;
+        }
+        double distance = matrix.distance(v, w, metric);
+        if (insert(newIds, newDistances, newFresh, offset, w, distance)) {
+          updates++;
+        }
+      }
+    }
+    return updates;
+  }
+
+  private boolean contains(int[] list, int offset, int u) {
+    for (int j = offset; j < offset + neighbors; j++) {
+      if (list[j] == u) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Inserts a row into a neighbor list kept sorted by distance, then by row, if it is closer than
+   * the farthest entry, marking it as fresh.
+   * @return true if the row was inserted
+   */
+  private boolean insert(int[] list, double[] listDistances, boolean[] listFresh, int offset, int u,
+                         double distance) {
+    int last = offset + neighbors - 1;
+    if (!isCloser(distance, u, listDistances[last], list[last]) || contains(list, offset, u)) {
+      return false;
+    }
+
+    int j = last;
+    while (j > offset && isCloser(distance, u, listDistances[j - 1], list[j - 1])) {
+      list[j] = list[j - 1];
+      listDistances[j] = listDistances[j - 1];
+      listFresh[j] = listFresh[j - 1];
+      j--;
+    }
+    list[j] = u;
+    listDistances[j] = distance;
+    listFresh[j] = true;
+    return true;
+  }
+
+  private static boolean isCloser(double distance1, int u1, double distance2, int u2) {
+    return distance1 < distance2 || distance1 == distance2 && u1 < u2;
+  }
+
+  /**
+   * @return the edges of the graph, each stored as (larger row, smaller row)
+   */
+  private EdgeList toEdgeList() {
+    EdgeList edges = new EdgeList(rows * neighbors);
+    for (int v = 0; v < rows; v++) {
+      for (int j = v * neighbors; j < (v + 1) * neighbors; j++) {
+        int u = ids[j];
+        if (v > u || !contains(ids, u * neighbors, v)) {
+          edges.add(Math.max(u, v), Math.min(u, v), distances[j]);
+        }
+      }
+    }
+    return edges;
+  }
+}
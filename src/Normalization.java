@@ -0,0 +1,100 @@
+import java.util.Arrays;
+
+/**
+ * Ways to rescale the features of a matrix before clustering, so that features with large ranges
+ * do not dominate the distance. The statistics are computed in one pass beforehand, leaving the
+ * distance kernels free of any per-feature work.
+ * @author Kurt Marcinkiewicz
+ */
+public enum Normalization {
+  NONE("none"), Z_SCORE("zscore"), MIN_MAX("minmax");
+
+  private final String value;
+
+  Normalization(String value) {
+    this.value = value;
+  }
+
+  /**
+   * @return the name of the normalization
+   */
+  public String getValue() {
+    return value;
+  }
+
+  /**
+   * Looks up a normalization by name.
+   * @param value the name of the normalization
+   * @return the normalization
+   * @throws IllegalArgumentException if there is no normalization with the name
+   */
+  public static Normalization get(String value) {
+    for (Normalization normalization : values()) {
+      if (normalization.value.equalsIgnoreCase(value.trim())) {
+        return normalization;
+      }
+    }
+    throw new IllegalArgumentException("Unknown normalization: " + value);
+  }
+
+  /**
+   * Rescales every feature of a matrix. Z-scores subtract the mean and divide by the standard
+   * deviation; min-max maps the smallest value to 0 and the largest to 1. A feature that never
+   * changes, such as region-pixel-count, becomes 0 everywhere.
+   * @param matrix the feature matrix
+   * @return a new, rescaled matrix, or the same matrix if the normalization is NONE
+   */
+  public FeatureMatrix apply(FeatureMatrix matrix) {
+    if (this == NONE) {
+      return matrix;
+    }
+
+    int rows = matrix.getRows();
+    int dimensions = matrix.getDimensions();
+    double[] data = matrix.getData();
+    double[] shifts = new double[dimensions];
+    double[] scales = new double[dimensions];
+
+    if (this == Z_SCORE) {
+      double[] sums = new double[dimensions];
+      double[] squares = new double[dimensions];
+      for (int i = 0; i < data.length; i++) {
+        sums[i % dimensions] += data[i];
+      }
+      for (int d = 0; d < dimensions; d++) {
+        shifts[d] = sums[d] / rows;
+      }
+      for (int i = 0; i < data.length; i++) {
+        double difference = data[i] - shifts[i % dimensions];
+        squares[i % dimensions] += difference * difference;
+      }
+      for (int d = 0; d < dimensions; d++) {
+        double deviation = Math.sqrt(squares[d] / rows);
+        scales[d] = deviation == 0 ? 0 : 1 / deviation;
+      }
+    }
+    else {
+      double[] max = new double[dimensions];
+      Arrays.fill(shifts, Double.POSITIVE_INFINITY);
+      Arrays.fill(max, Double.NEGATIVE_INFINITY);
+      for (int i = 0; i < data.length; i++) {
+        shifts[i % dimensions] = Math.min(shifts[i % dimensions], data[i]);
+        max[i % dimensions] = Math.max(max[i % dimensions], data[i]);
+      }
+      for (int d = 0; d < dimensions; d++) {
+        double range = max[d] - shifts[d];
+        scales[d] = range == 0 ? 0 : 1 / range;
+      }
+    }
+
+    double[] scaled = new double[data.length];
+    for (int i = 0, d = 0; i < data.length; i++) {
+      scaled[i] = (data[i] - shifts[d]) * scales[d];
+      if (++d == dimensions) {
+        d = 0;
+      }
+    }
+    return new FeatureMatrix(matrix.getFeatures(), matrix.getClasses(), scaled,
+                             matrix.getLabels().clone());
+  }
+}
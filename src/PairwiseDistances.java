@@ -0,0 +1,203 @@
+import java.util.stream.IntStream;
+
+/**
+ * Computes the distance between every pair of rows of a feature matrix in parallel. The lower
+ * triangle of the distance matrix is split into square tiles small enough that the rows of both
+ * sides of a tile stay in cache, and the tiles are spread over every core by the fork-join pool.
+ * Distances come from the specialized kernel of a {@link DistanceMetric}, which sums each pair in
+ * the same order as computing it alone, so the weights are identical to the sequential ones.
+ * @author Kurt Marcinkiewicz
+ */
+public class PairwiseDistances {
+  private static final int TILE_BYTES = 32 * 1024;
+
+  private PairwiseDistances() { }
+
+  /**
+   * Builds the complete edge list between every pair of rows of a feature matrix, using the
+   * Euclidean distance.
+   * @param matrix the feature matrix
+   * @return the edge list
+   * @see #completeGraph(FeatureMatrix, DistanceMetric)
+   */
+  public static EdgeList completeGraph(FeatureMatrix matrix) {
+    return completeGraph(matrix, DistanceMetrics.EUCLIDEAN);
+  }
+
+  /**
+   * Builds the complete edge list between every pair of rows of a feature matrix. Edge (i, j) with
+   * j &lt; i is stored at index i(i-1)/2 + j, the same order the sequential builders add them in.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @return the edge list
+   */
+  public static EdgeList completeGraph(FeatureMatrix matrix, DistanceMetric metric) {
+    try (Instrumentation.Phase phase = Instrumentation.start("edges")) {
+      int rows = matrix.getRows();
+      EdgeList edges = EdgeList.ofSize(EdgeList.completeGraphSize(rows));
+      int tile = tileRows(matrix.getDimensions(), Double.BYTES);
+      forEachTile(rows, tile, (startI, endI, startJ, endJ) ->
+          computeTile(matrix, metric, edges, new double[tile], startI, endI, startJ, endJ));
+      phase.count("edges", edges.size());
+      return edges;
+    }
+  }
+
+  /**
+   * Builds the complete edge list between every pair of rows of a feature matrix in single
+   * precision. The features are narrowed to floats once, and every distance is computed and stored
+   * as a float, in the same order as {@link #completeGraph(FeatureMatrix, DistanceMetric)}.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @return the edge list
+   */
+  public static FloatEdgeList completeFloatGraph(FeatureMatrix matrix, DistanceMetric metric) {
+    try (Instrumentation.Phase phase = Instrumentation.start("edges")) {
+      int rows = matrix.getRows();
+      int dimensions = matrix.getDimensions();
+      double[] values = matrix.getData();
+      float[] data = new float[rows * dimensions];
+      for (int i = 0; i < data.length; i++) {
+        data[i] = (float) values[i];
+      }
+
+      FloatEdgeList edges = FloatEdgeList.ofSize(EdgeList.completeGraphSize(rows));
+      int tile = tileRows(dimensions, Float.BYTES);
+      forEachTile(rows, tile, (startI, endI, startJ, endJ) ->
+          computeFloatTile(data, dimensions, metric, edges, new float[tile], startI, endI, startJ,
+                           endJ));
+      phase.count("edges", edges.size());
+      return edges;
+    }
+  }
+
+  /**
+   * Splits the lower triangle of the distance matrix into square tiles, numbered row by row, and
+   * computes them in parallel.
+   * @param rows the number of rows
+   * @param tile the number of rows along each side of a tile
+   * @param task computes a tile
+   */
+  private static void forEachTile(int rows, int tile, TileTask task) {
+    int blocks = (rows + tile - 1) / tile;
+    int tiles = blocks * (blocks + 1) / 2;
+
+    IntStream.range(0, tiles).parallel().forEach(t -> {
+      int blockI = tileBlock(t);
+      int blockJ = t - blockI * (blockI + 1) / 2;
+      task.compute(blockI * tile, Math.min(rows, (blockI + 1) * tile), blockJ * tile,
+                   Math.min(rows, (blockJ + 1) * tile));
+    });
+  }
+
+  /**
+   * Finds the block row of a tile of the lower triangle, whose tiles are numbered row by row.
+   * @param tile the tile
+   * @return the block row
+   */
+  private static int tileBlock(int tile) {
+    int block = (int) ((Math.sqrt(8.0 * tile + 1) - 1) / 2);
+    while (block * (block + 1) / 2 > tile) {
+      block--;
+    }
+    while ((block + 1) * (block + 2) / 2 <= tile) {
+      block++;
+    }
+    return block;
+  }
+
+  /**
+   * Finds how many rows go along each side of a tile so that both sides fit in the tile budget.
+   * @param dimensions the number of features in every row
+   * @param featureBytes the bytes of a feature: 8 for doubles, 4 for floats
+   * @return the number of rows
+   */
+  static int tileRows(int dimensions, int featureBytes) {
+    return Math.max(8, TILE_BYTES / (2 * featureBytes * dimensions));
+  }
+
+  /**
+   * Finds where the edges from a row to every earlier row start in the complete edge list.
+   * @param i the row
+   * @return the index of edge (i, 0)
+   */
+  private static int rowStart(int i) {
+    return (int) ((long) i * (i - 1) / 2);
+  }
+
+  /**
+   * Computes the distances of a tile of the lower triangle, one row of the tile at a time through
+   * the specialized kernel of the metric.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @param edges the edge list to store the distances in
+   * @param distances a buffer with room for a row of the tile
+   * @param startI the first row of the tile
+   * @param endI the end of the rows of the tile
+   * @param startJ the first column of the tile
+   * @param endJ the end of the columns of the tile
+   */
+  private static void computeTile(FeatureMatrix matrix, DistanceMetric metric, EdgeList edges,
+                                  double[] distances, int startI, int endI, int startJ,
+                                  int endJ) {
+    double[] data = matrix.getData();
+    int dimensions = matrix.getDimensions();
+
+    for (int i = startI; i < endI; i++) {
+      int end = Math.min(endJ, i);
+      if (end <= startJ) {
+        continue;
+      }
+      int index = rowStart(i);
+
+      metric.distances(data, dimensions, i, startJ, end, distances);
+      for (int j = startJ; j < end; j++) {
+        edges.set(index + j, i, j, distances[j - startJ]);
+      }
+    }
+  }
+
+  /**
+   * Computes the single-precision distances of a tile of the lower triangle, as
+   * {@link #computeTile(FeatureMatrix, DistanceMetric, EdgeList, double[], int, int, int, int)}
+   * does in double precision.
+   * @param data the features narrowed to floats, one row after another
+   * @param dimensions the number of features in every row
+   * @param metric the distance metric
+   * @param edges the edge list to store the distances in
+   * @param distances a buffer with room for a row of the tile
+   * @param startI the first row of the tile
+   * @param endI the end of the rows of the tile
+   * @param startJ the first column of the tile
+   * @param endJ the end of the columns of the tile
+   */
+  private static void computeFloatTile(float[] data, int dimensions, DistanceMetric metric,
+                                       FloatEdgeList edges, float[] distances, int startI,
+                                       int endI, int startJ, int endJ) {
+    for (int i = startI; i < endI; i++) {
+      int end = Math.min(endJ, i);
+      if (end <= startJ) {
+        continue;
+      }
+      int index = rowStart(i);
+
+      metric.distances(data, dimensions, i, startJ, end, distances);
+      for (int j = startJ; j < end; j++) {
+        edges.set(index + j, i, j, distances[j - startJ]);
+      }
+    }
+  }
+
+  /**
+   * Computes one tile of the lower triangle.
+   */
+  private interface TileTask {
+    /**
+     * @param startI the first row of the tile
+     * @param endI the end of the rows of the tile
+     * @param startJ the first column of the tile
+     * @param endJ the end of the columns of the tile
+     */
+    void compute(int startI, int endI, int startJ, int endJ);
+  }
+}
@@ -0,0 +1,39 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A JFR event recorded around every {@link Instrumentation.Phase}, so the phases of a run show up
+ * on the timeline of a flight recording (java -XX:StartFlightRecording ...) next to GC and
+ * allocation events. The event costs next to nothing when no recording is running.
+ * @author Kurt Marcinkiewicz
+ */
+@Name("clustering.Phase")
+@Label("Clustering Phase")
+@Category("Clustering")
+@Description("A stage of loading or clustering a dataset")
+class PhaseEvent extends Event {
+  @Label("Phase")
+  String phase;
+
+  @Label("CPU Time")
+  @Description("CPU time used by the whole process during the phase, left unset if it was shared")
+  @Timespan(Timespan.NANOSECONDS)
+  long cpuTime;
+
+  @Label("Shared")
+  @Description("Whether other phases ran at the same time, so the CPU time is not the phase's own")
+  boolean shared;
+
+  @Label("Allocated")
+  @Description("Bytes allocated by the thread running the phase, not by its worker threads")
+  @DataAmount(DataAmount.BYTES)
+  long allocated;
+
+  @Label("Counters")
+  String counters;
+}
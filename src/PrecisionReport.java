@@ -0,0 +1,106 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Checks whether clustering in single precision changes the result. The MST of a dataset is found
+ * by {@link MstEngine#PRIMITIVE_KRUSKAL} with double-precision features and weights, and by
+ * {@link MstEngine#SINGLE_PRECISION_KRUSKAL} with 32-bit floats, and the two are compared.
+ *
+ * Usage: java PrecisionReport [file] [k,...] [metric ...]
+ *
+ * The file defaults to segment-full.arff, the cluster counts to 7,50,500 and the metrics to every
+ * named metric. For every metric it prints the time taken and edge list bytes used by each
+ * precision, the number of MST edges that differ, the relative difference of the total weights,
+ * and for every cluster count whether the clusters are identical or else how many rows moved to a
+ * different cluster.
+ * @author Kurt Marcinkiewicz
+ */
+public class PrecisionReport {
+  /** the bytes of an edge list entry in double precision: two int nodes and a double weight */
+  private static final long DOUBLE_EDGE_BYTES = 2 * Integer.BYTES + Double.BYTES;
+  /** the bytes of an edge list entry in single precision: two int nodes and a float weight */
+  private static final long FLOAT_EDGE_BYTES = 2 * Integer.BYTES + Float.BYTES;
+
+  public static void main(String[] args) throws IOException {
+    File file = new File(args.length > 0 ? args[0] : "segment-full.arff");
+    String countList = args.length > 1 ? args[1] : "7,50,500";
+    DistanceMetric[] metrics = Reports.metrics(args, 2);
+
+    FeatureMatrix matrix = DatasetSnapshot.load(file);
+    int n = matrix.getRows();
+    long edges = EdgeList.completeGraphSize(n);
+    System.out.println(matrix + ", " + edges + " edges");
+    System.out.println("edge list bytes: " + edges * DOUBLE_EDGE_BYTES + " double, "
+                       + edges * FLOAT_EDGE_BYTES + " float");
+    System.out.println("metric, double ms, float ms, differing edges, weight difference, "
+                       + "clusters");
+
+    for (DistanceMetric metric : metrics) {
+      long start = System.nanoTime();
+      ArrayList<ImageSegmentEdge> exact =
+          MstEngine.PRIMITIVE_KRUSKAL.minimumSpanningTree(matrix, metric);
+      long doubleNanos = System.nanoTime() - start;
+      start = System.nanoTime();
+      ArrayList<ImageSegmentEdge> compact =
+          MstEngine.SINGLE_PRECISION_KRUSKAL.minimumSpanningTree(matrix, metric);
+      long floatNanos = System.nanoTime() - start;
+
+      int differing = Reports.missingEdges(compact, Reports.edgeKeys(exact, n), n);
+      double exactWeight = Reports.totalWeight(exact);
+      double weightDifference = exactWeight == 0 ? 0
+                                : (Reports.totalWeight(compact) - exactWeight) / exactWeight;
+
+      Dendrogram exactDendrogram = new Dendrogram(exact, n);
+      Dendrogram compactDendrogram = new Dendrogram(compact, n);
+      StringBuilder clusters = new StringBuilder();
+      for (String value : countList.split(",")) {
+        int k = Integer.parseInt(value.trim());
+        if (k < 1 || k > n) {
+          continue;
+        }
+        int moved = movedRows(exactDendrogram.labels(k), compactDendrogram.labels(k));
+        clusters.append(clusters.length() == 0 ? "" : " ").append(k).append(':')
+            .append(moved == 0 ? "IDENTICAL" : moved + " moved");
+      }
+
+      System.out.printf(Locale.ROOT, "%s, %.1f, %.1f, %d, %.3e, %s%n", metric.getName(),
+                        doubleNanos / 1e6, floatNanos / 1e6, differing, weightDifference, clusters);
+    }
+  }
+
+  /**
+   * Counts the rows that would have to move for one clustering to match another. Every cluster of
+   * the first is matched with the cluster of the second it shares the most rows with, and the rows
+   * outside that cluster are counted as moved.
+   * @param first the first clustering
+   * @param second the second clustering
+   * @return the number of rows moved, which is 0 only if the clusterings are the same
+   */
+  private static int movedRows(ClusterLabels first, ClusterLabels second) {
+    int[] a = first.getLabels();
+    int[] b = second.getLabels();
+    int[][] overlaps = new int[first.getClusterCount()][second.getClusterCount()];
+    for (int i = 0; i < a.length; i++) {
+      overlaps[a[i]][b[i]]++;
+    }
+
+    int kept = 0;
+    boolean[] claimed = new boolean[second.getClusterCount()];
+    for (int[] overlap : overlaps) {
+      int best = -1;
+      for (int cluster = 0; cluster < overlap.length; cluster++) {
+        if (!claimed[cluster] && (best < 0 || overlap[cluster] > overlap[best])) {
+          best = cluster;
+        }
+      }
+      if (best >= 0) {
+        claimed[best] = true;
+        kept += overlap[best];
+      }
+    }
+    return a.length - kept;
+  }
+
+}
@@ -0,0 +1,43 @@
+import java.util.Locale;
+
+/**
+ * Quotes strings for the JSON and CSV the tools write.
+ * @author Kurt Marcinkiewicz
+ */
+final class Quoting {
+  private Quoting() { }
+
+  /**
+   * @param value the string
+   * @return the string as a JSON string literal, quoted and with quotes, backslashes and control
+   * characters escaped
+   */
+  static String jsonString(String value) {
+    StringBuilder sb = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      }
+      else if (c < 0x20) {
+        sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+      }
+      else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  /**
+   * @param value the string
+   * @return the string as a CSV field: unchanged unless it holds a comma, quote or newline, in
+   * which case it is quoted with its quotes doubled
+   */
+  static String csvString(String value) {
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+      return value;
+    }
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+}
@@ -0,0 +1,79 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * The argument parsing and MST comparisons shared by the report tools.
+ * @author Kurt Marcinkiewicz
+ */
+final class Reports {
+  private Reports() { }
+
+  /**
+   * Looks up the metrics named by the trailing arguments of a report.
+   * @param args the command line arguments
+   * @param first the index of the first metric argument
+   * @return the named metrics, or every named metric if there are no metric arguments
+   * @throws IllegalArgumentException if a metric is unknown
+   */
+  static DistanceMetric[] metrics(String[] args, int first) {
+    if (args.length <= first) {
+      return DistanceMetrics.values();
+    }
+    DistanceMetric[] metrics = new DistanceMetric[args.length - first];
+    for (int i = first; i < args.length; i++) {
+      metrics[i - first] = DistanceMetrics.forName(args[i]);
+    }
+    return metrics;
+  }
+
+  /**
+   * @param a one node of the edge
+   * @param b the other node of the edge
+   * @param nodes the number of nodes in the graph
+   * @return a key that is the same for both directions of the edge
+   */
+  static long edgeKey(int a, int b, int nodes) {
+    return (long) Math.max(a, b) * nodes + Math.min(a, b);
+  }
+
+  /**
+   * @param edges the edges
+   * @param nodes the number of nodes in the graph
+   * @return the key of every edge
+   */
+  static HashSet<Long> edgeKeys(ArrayList<ImageSegmentEdge> edges, int nodes) {
+    HashSet<Long> keys = new HashSet<>();
+    for (ImageSegmentEdge edge : edges) {
+      keys.add(edgeKey(edge.getA(), edge.getB(), nodes));
+    }
+    return keys;
+  }
+
+  /**
+   * @param edges the edges
+   * @param reference the keys of the reference edges
+   * @param nodes the number of nodes in the graph
+   * @return the number of edges missing from the reference
+   */
+  static int missingEdges(ArrayList<ImageSegmentEdge> edges, HashSet<Long> reference, int nodes) {
+    int missing = 0;
+    for (ImageSegmentEdge edge : edges) {
+      if (!reference.contains(edgeKey(edge.getA(), edge.getB(), nodes))) {
+        missing++;
+      }
+    }
+    return missing;
+  }
+
+  /**
+   * @param edges the edges
+   * @return the sum of their weights
+   */
+  static double totalWeight(ArrayList<ImageSegmentEdge> edges) {
+    double total = 0;
+    for (ImageSegmentEdge edge : edges) {
+      total += edge.getWeight();
+    }
+    return total;
+  }
+}
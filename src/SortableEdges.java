@@ -0,0 +1,35 @@
+/**
+ * An edge list that Kruskal's algorithm can sort and then scan in order, such as {@link EdgeList}
+ * and {@link FloatEdgeList}.
+ * @author Kurt Marcinkiewicz
+ */
+interface SortableEdges {
+
+  /**
+   * Sorts the edges by increasing weight, breaking ties by the larger node and then the smaller.
+   */
+  void sort();
+
+  /**
+   * @return the number of edges
+   */
+  int size();
+
+  /**
+   * @param i the edge
+   * @return the first node of the edge
+   */
+  int getA(int i);
+
+  /**
+   * @param i the edge
+   * @return the second node of the edge
+   */
+  int getB(int i);
+
+  /**
+   * @param i the edge
+   * @return the edge as an ImageSegmentEdge
+   */
+  ImageSegmentEdge getEdge(int i);
+}
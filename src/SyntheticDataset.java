@@ -0,0 +1,127 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Generates seeded synthetic datasets of Gaussian clusters, for measuring how the clustering scales
+ * with the number of rows and features. Cluster centers are drawn uniformly from [0, 10) in every
+ * feature and each row is drawn around the center of its cluster with the given standard deviation,
+ * so the spread controls how well separated the clusters are. The same arguments always give the
+ * same dataset.
+ *
+ * Usage: java SyntheticDataset rows dimensions clusters spread seed output.arff
+ * @author Kurt Marcinkiewicz
+ */
+public class SyntheticDataset {
+  private static final double CENTER_RANGE = 10;
+
+  private SyntheticDataset() { }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 6) {
+      System.out.println("Usage: java SyntheticDataset rows dimensions clusters spread seed "
+                         + "output.arff");
+      return;
+    }
+    FeatureMatrix matrix = generate(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                                    Integer.parseInt(args[2]), Double.parseDouble(args[3]),
+                                    Long.parseLong(args[4]));
+    writeArff(matrix, new File(args[5]));
+    System.out.println(matrix);
+  }
+
+  /**
+   * Generates a dataset. Rows are assigned to clusters in turn, so the clusters differ in size by
+   * at most one row.
+   * @param rows the number of rows
+   * @param dimensions the number of features in every row
+   * @param clusters the number of clusters, which become the classes of the rows
+   * @param spread the standard deviation of every feature around the center of its cluster
+   * @param seed the random seed
+   * @return the dataset
+   * @throws IllegalArgumentException if any count is not positive or the spread is negative
+   */
+  public static FeatureMatrix generate(int rows, int dimensions, int clusters, double spread,
+                                       long seed) {
+    if (rows < 1 || dimensions < 1 || clusters < 1 || !(spread >= 0)) {
+      throw new IllegalArgumentException("rows, dimensions and clusters must be positive and the "
+                                         + "spread must not be negative");
+    }
+    String[] features = new String[dimensions];
+    for (int i = 0; i < dimensions; i++) {
+      features[i] = "f" + i;
+    }
+    String[] classes = new String[clusters];
+    for (int i = 0; i < clusters; i++) {
+      classes[i] = "c" + i;
+    }
+
+    Random random = new Random(seed);
+    double[] centers = new double[clusters * dimensions];
+    for (int i = 0; i < centers.length; i++) {
+      centers[i] = random.nextDouble() * CENTER_RANGE;
+    }
+
+    double[] data = new double[Math.multiplyExact(rows, dimensions)];
+    int[] labels = new int[rows];
+    for (int row = 0; row < rows; row++) {
+      int cluster = row % clusters;
+      labels[row] = cluster;
+      for (int i = 0; i < dimensions; i++) {
+        data[row * dimensions + i] = centers[cluster * dimensions + i]
+                                     + random.nextGaussian() * spread;
+      }
+    }
+    return new FeatureMatrix(features, classes, data, labels);
+  }
+
+  /**
+   * Generates a random spanning tree over the given number of nodes, joining every node to a random
+   * earlier node with a random weight in [0, 1). Useful for measuring the steps that follow the MST
+   * on inputs too large to find the MST of quickly.
+   * @param nodes the number of nodes
+   * @param seed the random seed
+   * @return the edges of the tree
+   */
+  public static ArrayList<ImageSegmentEdge> randomSpanningTree(int nodes, long seed) {
+    Random random = new Random(seed);
+    ArrayList<ImageSegmentEdge> edges = new ArrayList<>(Math.max(nodes - 1, 0));
+    for (int i = 1; i < nodes; i++) {
+      edges.add(new ImageSegmentEdge(i, random.nextInt(i), random.nextDouble()));
+    }
+    return edges;
+  }
+
+  /**
+   * Writes a dataset as an .arff file with a numeric attribute per feature and a nominal class
+   * attribute, readable by {@link ArffByteParser}.
+   * @param matrix the dataset
+   * @param file the file to write
+   * @throws IOException if the file cannot be written
+   */
+  public static void writeArff(FeatureMatrix matrix, File file) throws IOException {
+    String[] features = matrix.getFeatures();
+    String[] classes = matrix.getClasses();
+    try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      writer.write("@relation synthetic\n\n");
+      for (String feature : features) {
+        writer.write("@attribute " + feature + " real\n");
+      }
+      writer.write("@attribute class {" + String.join(",", classes) + "}\n\n@data\n");
+
+      StringBuilder line = new StringBuilder();
+      for (int row = 0; row < matrix.getRows(); row++) {
+        line.setLength(0);
+        for (int i = 0; i < features.length; i++) {
+          line.append(matrix.get(row, i)).append(',');
+        }
+        line.append(matrix.getLabel(row) < 0 ? "?" : classes[matrix.getLabel(row)]).append('\n');
+        writer.write(line.toString());
+      }
+    }
+  }
+}
@@ -1,30 +1,43 @@
-import java.util.HashMap;
-import java.util.ArrayList;
-import java.util.stream.IntStream;
-
 /**
- * A representation of a union-find data structure for use with Kruskal's algorithm
+ * A representation of a union-find data structure for use with Kruskal's algorithm. Components are
+ * stored as a forest in a primitive parent array, using path compression and union by size so every
+ * operation is near-constant time and allocation free.
  * @author Kurt Marcinkiewicz
  */
 public class UnionFind {
-  private HashMap<Integer, ArrayList<Integer>> items;
-  private int[] setsArray;
+  private final int[] parents;
+  private final int[] sizes;
+  private int components;
 
   /**
    * @param items the array of 'items,' to be managed by Union-Find, represented by ints
    */
   public UnionFind(int[] items) {
-    this.items = generateHashMap(items);
-    this.setsArray = generateSetsArray(items);
+    this(items.length);
+  }
+
+  /**
+   * @param size the number of 'items' to be managed by Union-Find, represented by the ints 0 to
+   *             size - 1
+   */
+  public UnionFind(int size) {
+    this.parents = generateParentsArray(size);
+    this.sizes = generateSizesArray(size);
+    this.components = size;
   }
 
   /**
-   * Retrieves the parent of the given item.
-   * @param i the item to retrieve the parent of.
-   * @return the parent of the given item
+   * Retrieves the root of the component the given item belongs to. Halves the path to the root as
+   * it goes, so later lookups are faster.
+   * @param i the item to retrieve the root of.
+   * @return the root of the given item
    */
   public int find(int i) {
-    return setsArray[i];
+    while (parents[i] != i) {
+      parents[i] = parents[parents[i]];
+      i = parents[i];
+    }
+    return i;
   }
 
   /**
@@ -35,72 +48,82 @@ public class UnionFind {
    * @return true if the items are not in the same component and the union is successful
    */
   public boolean union(int a, int b) {
-    if (inSameComponent(a, b)) {
+    int componentA = find(a);
+    int componentB = find(b);
+
+    if (componentA == componentB) {
       return false;
     }
+    else if (sizes[componentA] >= sizes[componentB]) {
+      return appendTo(componentA, componentB);
+    }
     else {
-      int componentA = find(a);
-      int componentB = find(b);
-
-      if(items.get(componentA).size() >= items.get(componentB).size()) {
-        return appendTo(componentA, componentB);
-      }
-      else {
-        return appendTo(componentB, componentA);
-      }
+      return appendTo(componentB, componentA);
     }
   }
 
   /**
-   * Appends one component to another. Updates the parent of every item in the first component to be
-   * the parent of the second component and adds all the members of the second component to the
-   * first component in the hash map.
-   * @param to the component to receive the new members
-   * @param from the component to be usurped
-   * @return true if the appending was successful
+   * Determines whether or not two 'items' are in the same component by comparing their roots.
+   * @param a the first item
+   * @param b the second item
+   * @return true if both items are in the same component
    */
-  private boolean appendTo(int to, int from) {
-    for(int item : items.get(from)) {
-      setsArray[item] = to;
-    }
-    items.get(to).addAll(0, items.get(from));
-    items.remove(from);
-    return true;
+  public boolean inSameComponent(int a, int b) {
+    return find(a) == find(b);
   }
 
   /**
-   * Determines whether or not two 'items' are in the same component by comparing their parents.
-   * @param a the first item
-   * @param b the second item
-   * @return true if both items are in the same component
+   * @param i the item
+   * @return the number of items in the component the item belongs to
    */
-  private boolean inSameComponent(int a, int b) {
-    return setsArray[a] == setsArray[b];
+  public int componentSize(int i) {
+    return sizes[find(i)];
   }
 
   /**
-   * Generates the initialized HashMap, used to determine the 'items' in each 'component' in
-   * constant time. Initially, each item points to a list consisting of just itself.
-   * @param items the array of 'items' managed by Union-Find
-   * @return the initialized hash map
+   * @return the number of components
    */
-  private HashMap<Integer, ArrayList<Integer>> generateHashMap(int[] items) {
-    HashMap<Integer, ArrayList<Integer>> map = new HashMap<>(items.length);
+  public int getComponents() {
+    return components;
+  }
 
-    for(int i = 0; i < items.length; i++) {
-      map.put(i, new ArrayList<>());
-      map.get(i).add(i);
+  /**
+   * Appends one component to another by making the root of the first component the parent of the
+   * root of the second.
+   * @param to the root of the component to receive the new members
+   * @param from the root of the component to be usurped
+   * @return true if the appending was successful
+   */
+  private boolean appendTo(int to, int from) {
+    parents[from] = to;
+    sizes[to] += sizes[from];
+    components--;
+    return true;
+  }
+
+  /**
+   * Generates the initialized parents array. Initially, the parent of every item is just itself.
+   * @param size the number of 'items' managed by Union-Find
+   * @return the initialized array
+   */
+  private int[] generateParentsArray(int size) {
+    int[] array = new int[size];
+    for (int i = 0; i < size; i++) {
+      array[i] = i;
     }
-    return map;
+    return array;
   }
 
   /**
-   * Generates the initialized setsArray, used to determine the 'parent' of every 'item' in constant
-   * time. Initially, the parent of every item is just itself.
-   * @param items the array of 'items' managed by Union-Find
+   * Generates the initialized sizes array. Initially, every component consists of just one item.
+   * @param size the number of 'items' managed by Union-Find
    * @return the initialized array
    */
-  private int[] generateSetsArray(int[] items) {
-    return IntStream.range(0, items.length).toArray();
+  private int[] generateSizesArray(int size) {
+    int[] array = new int[size];
+    for (int i = 0; i < size; i++) {
+      array[i] = 1;
+    }
+    return array;
   }
 }
@@ -0,0 +1,230 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A vantage-point tree over the rows of a feature matrix, for nearest-neighbor search with any
+ * distance metric that obeys the triangle inequality. Every inner node holds a vantage row and the
+ * median distance from it to the other rows of the node: rows within that radius go to the inside
+ * child and the rest to the outside child, so a search can skip a child whenever the triangle
+ * inequality shows it is too far away. As in {@link KdTree}, every node covers a contiguous range
+ * of rows kept in tree order in a copy of the features, and small ranges are scanned as leaves.
+ *
+ * Squared Euclidean and cosine distances do not obey the triangle inequality, so a tree cannot
+ * search with them; see {@link #supports(DistanceMetric)}.
+ * @author Kurt Marcinkiewicz
+ */
+public class VpTree {
+  static final int NONE = -1;
+  private static final int LEAF_SIZE = 16;
+  private static final long SEED = 42;
+  /**
+   * the relative slack allowed on the triangle inequality bounds, so a row tied with the best one
+   * is never pruned by rounding and ties still go to the smallest row
+   */
+  private static final double SLACK = 1e-9;
+
+  private final DistanceMetric metric;
+  private final int dimensions;
+  private final int[] rows;
+  private final double[] points;
+  private int[] starts;
+  private int[] ends;
+  private int[] insides;
+  private int[] outsides;
+  private double[] radii;
+  private int nodes;
+
+  /**
+   * Builds the tree. Vantage rows are picked at random with a fixed seed, so the same matrix always
+   * gives the same tree.
+   * @param matrix the feature matrix
+   * @param metric the distance metric
+   * @throws IllegalArgumentException if the tree cannot search with the metric, or the metric
+   * cannot measure the rows
+   */
+  public VpTree(FeatureMatrix matrix, DistanceMetric metric) {
+    if (!supports(metric)) {
+      throw new IllegalArgumentException("A vantage-point tree cannot search with "
+                                         + metric.getName() + " distances");
+    }
+    metric.checkDimensions(matrix.getDimensions());
+    int n = matrix.getRows();
+    this.metric = metric;
+    this.dimensions = matrix.getDimensions();
+    this.rows = new int[n];
+    for (int i = 0; i < n; i++) {
+      rows[i] = i;
+    }
+
+    int capacity = Math.max(1, 4 * (n / LEAF_SIZE + 1));
+    starts = new int[capacity];
+    ends = new int[capacity];
+    insides = new int[capacity];
+    outsides = new int[capacity];
+    radii = new double[capacity];
+
+    double[] data = matrix.getData();
+    build(data, 0, n, new double[n], new Random(SEED));
+
+    this.points = new double[n * dimensions];
+    for (int i = 0; i < n; i++) {
+      System.arraycopy(data, rows[i] * dimensions, points, i * dimensions, dimensions);
+    }
+  }
+
+  /**
+   * Finds the row nearest to a query point. Of rows at the same distance, the one with the smallest
+   * index is returned.
+   * @param query the array holding the query point
+   * @param offset the start of the query point within the array
+   * @return the nearest row, or -1 if the tree is empty
+   */
+  public int nearest(double[] query, int offset) {
+    if (rows.length == 0) {
+      return NONE;
+    }
+    double[] best = {Double.POSITIVE_INFINITY};
+    int[] bestRow = {NONE};
+    nearest(0, query, offset, best, bestRow);
+    return bestRow[0];
+  }
+
+  private void nearest(int node, double[] query, int offset, double[] best, int[] bestRow) {
+    int start = starts[node];
+    if (insides[node] == NONE) {
+      for (int i = start; i < ends[node]; i++) {
+        visit(i, metric.distance(query, offset, points, i * dimensions, dimensions), best, bestRow);
+      }
+      return;
+    }
+
+    double distance = metric.distance(query, offset, points, start * dimensions, dimensions);
+    visit(start, distance, best, bestRow);
+    double radius = radii[node];
+    double slack = SLACK * (radius + distance);
+    if (distance < radius) {
+      nearest(insides[node], query, offset, best, bestRow);
+      if (radius - distance <= best[0] + slack) {
+        nearest(outsides[node], query, offset, best, bestRow);
+      }
+    }
+    else {
+      nearest(outsides[node], query, offset, best, bestRow);
+      if (distance - radius <= best[0] + slack) {
+        nearest(insides[node], query, offset, best, bestRow);
+      }
+    }
+  }
+
+  private void visit(int position, double distance, double[] best, int[] bestRow) {
+    if (distance < best[0] || distance == best[0] && rows[position] < bestRow[0]) {
+      best[0] = distance;
+      bestRow[0] = rows[position];
+    }
+  }
+
+  /**
+   * @param metric a distance metric
+   * @return true if the tree can search with the metric, which is every metric except the squared
+   * Euclidean and cosine distances
+   */
+  public static boolean supports(DistanceMetric metric) {
+    return !(metric instanceof DistanceMetrics.SquaredEuclidean)
+           && !(metric instanceof DistanceMetrics.Cosine);
+  }
+
+  /**
+   * @return the number of features in every row
+   */
+  public int getDimensions() {
+    return dimensions;
+  }
+
+  /**
+   * Builds the node covering a range of rows, and its children. The vantage row of an inner node is
+   * moved to the start of its range, followed by the inside rows and then the outside rows.
+   * @param distances scratch space for the distances from the vantage row, indexed by position
+   * @return the node
+   */
+  private int build(double[] data, int start, int end, double[] distances, Random random) {
+    int node = newNode();
+    starts[node] = start;
+    ends[node] = end;
+    insides[node] = NONE;
+    outsides[node] = NONE;
+    if (end - start <= LEAF_SIZE) {
+      return node;
+    }
+
+    swap(start, start + random.nextInt(end - start));
+    int vantage = rows[start] * dimensions;
+    for (int i = start + 1; i < end; i++) {
+      distances[i] = metric.distance(data, vantage, data, rows[i] * dimensions, dimensions);
+    }
+    int middle = (start + 1 + end) >>> 1;
+    select(distances, start + 1, end, middle);
+    radii[node] = distances[middle];
+
+    int inside = build(data, start + 1, middle, distances, random);
+    int outside = build(data, middle, end, distances, random);
+    insides[node] = inside;
+    outsides[node] = outside;
+    return node;
+  }
+
+  /**
+   * Reorders a range of rows, and their distances, so the row at position k is the one that would
+   * be there if the range were sorted by distance, with nearer rows before it and farther rows
+   * after.
+   */
+  private void select(double[] distances, int start, int end, int k) {
+    int low = start;
+    int high = end - 1;
+    while (low < high) {
+      double pivot = distances[(low + high) >>> 1];
+      int i = low;
+      int j = high;
+      while (i <= j) {
+        while (distances[i] < pivot) {
+          i++;
+        }
+        while (distances[j] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          double distance = distances[i];
+          distances[i] = distances[j];
+          distances[j] = distance;
+          swap(i++, j--);
+        }
+      }
+      if (k <= j) {
+        high = j;
+      }
+      else if (k >= i) {
+        low = i;
+      }
+      else {
+        return;
+      }
+    }
+  }
+
+  private void swap(int i, int j) {
+    int row = rows[i];
+    rows[i] = rows[j];
+    rows[j] = row;
+  }
+
+  private int newNode() {
+    if (nodes == starts.length) {
+      int capacity = nodes * 2;
+      starts = Arrays.copyOf(starts, capacity);
+      ends = Arrays.copyOf(ends, capacity);
+      insides = Arrays.copyOf(insides, capacity);
+      outsides = Arrays.copyOf(outsides, capacity);
+      radii = Arrays.copyOf(radii, capacity);
+    }
+    return nodes++;
+  }
+}